@@ -0,0 +1,100 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.QueryTreeNode;
+
+/**
+ * Conjunctions and disjunctions of matchers which learn a cheap evaluation order. Like Hamcrest's allOf and anyOf they stop at the
+ * first submatcher that settles the outcome, but rather than always trying the submatchers in the order they were declared, they
+ * observe each one's cost and how often it settles the outcome, and periodically put the cheapest, most decisive ones first. The
+ * outcome is the same whatever the order. An evaluation keeps the order it started with, so that replays over capture bindings
+ * retrace the attempts they replay.
+ *
+ * For example, assertThat(query, hasInQuery(allOf(where(column("tenant_id").equalToLiteral(5)), groupBy(), result(column("x")))));
+ *
+ * @see AdaptiveOrder
+ */
+public class AdaptiveMatcher extends QueryTreeNodeMatcher {
+
+    private final List<Matcher<QueryTreeNode>> submatchers;
+    private final boolean conjunction;
+    private final AdaptiveOrder order;
+
+    public AdaptiveMatcher(List<Matcher<QueryTreeNode>> submatchers, boolean conjunction) {
+        this.submatchers = new ArrayList<Matcher<QueryTreeNode>>(submatchers);
+        this.conjunction = conjunction;
+        this.order = new AdaptiveOrder(submatchers.size());
+    }
+
+    AdaptiveOrder getOrder() {
+        return order;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { submatchers, conjunction };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("(");
+        for (int i = 0; i < submatchers.size(); i++) {
+            if (i > 0) {
+                description.appendText(conjunction ? " and " : " or ");
+            }
+            description.appendText(descriptionOf(submatchers.get(i)));
+        }
+        description.appendText(")");
+    }
+
+    @Override
+    protected boolean matchesNode(final QueryTreeNode item) {
+        if (conjunction) {
+            return order.allMatch(i -> evaluate(submatchers.get(i), item));
+        }
+        return order.anyMatch(i -> evaluate(submatchers.get(i), item));
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(query, hasInQuery(allOf(where(column("a").equalToLiteral(1)), groupBy())));
+     */
+    @SafeVarargs
+    @Factory
+    public static Matcher<QueryTreeNode> allOf(Matcher<QueryTreeNode>... submatchers) {
+        return new AdaptiveMatcher(listOf(submatchers), true);
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(query, hasInQuery(anyOf(column("a"), column("b"))));
+     */
+    @SafeVarargs
+    @Factory
+    public static Matcher<QueryTreeNode> anyOf(Matcher<QueryTreeNode>... submatchers) {
+        return new AdaptiveMatcher(listOf(submatchers), false);
+    }
+}
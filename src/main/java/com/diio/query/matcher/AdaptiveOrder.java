@@ -0,0 +1,140 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntPredicate;
+
+/**
+ * Decides the order in which the parts of a conjunction or disjunction are evaluated, the way a query optimizer orders predicates.
+ * One evaluation in SAMPLE_MASK + 1 is sampled: each part's cost is timed and the fraction of evaluations in which it settled the
+ * outcome (false for a conjunction, true for a disjunction) is counted. Every REORDER_SAMPLES samples the parts are re-sorted by
+ * expected cost per decision, cost / P(decisive), which for independent parts minimizes the expected cost of the whole.
+ *
+ * The outcome doesn't depend on the order, only the work done to reach it, provided that an evaluation which captures nodes
+ * keeps one order throughout: its replays over other bindings must retrace the attempt they replay. So within an
+ * EvaluationContext each AdaptiveOrder uses the order it first used, however often it is re-sorted meanwhile.
+ *
+ * Statistics are kept in atomics so that a matcher can be shared between threads, and the order is swapped in whole. The count
+ * of calls that picks the samples is a plain field: an update lost to a race only shifts which call is sampled.
+ */
+final class AdaptiveOrder {
+    private static final int SAMPLE_MASK = 15;
+    private static final int REORDER_SAMPLES = 16;
+
+    private int calls;
+    private final AtomicLong sampledCalls = new AtomicLong();
+    private final AtomicLongArray evaluations;
+    private final AtomicLongArray decisions;
+    private final AtomicLongArray sampledNanos;
+    private volatile int[] order;
+
+    AdaptiveOrder(int parts) {
+        evaluations = new AtomicLongArray(parts);
+        decisions = new AtomicLongArray(parts);
+        sampledNanos = new AtomicLongArray(parts);
+        order = new int[parts];
+        for (int i = 0; i < parts; i++) {
+            order[i] = i;
+        }
+    }
+
+    /**
+     * Whether every part matches, evaluating parts by their declared index in the current order.
+     */
+    boolean allMatch(IntPredicate part) {
+        return evaluate(part, false);
+    }
+
+    /**
+     * Whether any part matches, evaluating parts by their declared index in the current order.
+     */
+    boolean anyMatch(IntPredicate part) {
+        return evaluate(part, true);
+    }
+
+    int[] currentOrder() {
+        return order.clone();
+    }
+
+    /**
+     * The current order itself, which is never modified once it is in place.
+     */
+    int[] snapshot() {
+        return order;
+    }
+
+    /**
+     * Puts the given order in place, as re-sorting would.
+     */
+    void setOrder(int[] order) {
+        this.order = order.clone();
+    }
+
+    private boolean evaluate(IntPredicate part, boolean decisive) {
+        final boolean sampled = (++calls & SAMPLE_MASK) == 0;
+        final EvaluationContext context = EvaluationContext.current();
+        boolean outcome = !decisive;
+        for (int index : context != null ? context.orderOf(this) : order) {
+            final long start = sampled ? System.nanoTime() : 0L;
+            final boolean result = part.test(index);
+            if (sampled) {
+                sampledNanos.addAndGet(index, System.nanoTime() - start);
+                evaluations.incrementAndGet(index);
+            }
+            if (result == decisive) {
+                if (sampled) {
+                    decisions.incrementAndGet(index);
+                }
+                outcome = decisive;
+                break;
+            }
+        }
+        if (sampled && sampledCalls.incrementAndGet() % REORDER_SAMPLES == 0) {
+            reorder();
+        }
+        return outcome;
+    }
+
+    /**
+     * Sorts by sampled mean cost over the smoothed probability of being decisive; ties keep the declared order.
+     */
+    private void reorder() {
+        final int parts = evaluations.length();
+        final double[] rank = new double[parts];
+        final Integer[] sorted = new Integer[parts];
+        for (int i = 0; i < parts; i++) {
+            final double cost = evaluations.get(i) == 0 ? 0.0 : (double) sampledNanos.get(i) / evaluations.get(i);
+            final double decisive = (decisions.get(i) + 1.0) / (evaluations.get(i) + 2.0);
+            rank[i] = cost / decisive;
+            sorted[i] = i;
+        }
+        Arrays.sort(sorted, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return Double.compare(rank[a], rank[b]);
+            }
+        });
+        final int[] reordered = new int[parts];
+        for (int i = 0; i < parts; i++) {
+            reordered[i] = sorted[i];
+        }
+        order = reordered;
+    }
+}
@@ -38,20 +38,25 @@ public class AggregateMatcher extends QueryTreeNodeMatcher {
         submatcher = expressionMatcher;
     }
     
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { aggregationType, submatcher };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("an aggregated ").
             appendText(aggregationType).
             appendText(" column with ").
-            appendDescriptionOf(submatcher);
+            appendText(descriptionOf(submatcher));
     }
     
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof AggregateNode) {
             AggregateNode node = (AggregateNode) item;
             if (aggregationType.equalsIgnoreCase(node.getAggregateName())) {
-                return submatcher.matches(node.getOperand());
+                return evaluate(submatcher, node.getOperand());
             }
         }
         return false;
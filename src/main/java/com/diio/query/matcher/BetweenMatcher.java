@@ -41,22 +41,32 @@ public class BetweenMatcher extends QueryTreeNodeMatcher {
         this.upper = upperBoundMatcher;
     }
 
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { left, lower, upper };
+    }
+
     @Override
     public void describeTo(Description description) {
-        description.appendDescriptionOf(left).
+        description.appendText(descriptionOf(left)).
             appendText("BETWEEN ").
-            appendDescriptionOf(lower).
+            appendText(descriptionOf(lower)).
             appendText(" and ").
-            appendDescriptionOf(upper);
+            appendText(descriptionOf(upper));
     }
     
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof BetweenOperatorNode) {
             BetweenOperatorNode node = (BetweenOperatorNode) item;
-            return left.matches(node.getLeftOperand()) &&
-                    lower.matches(node.getRightOperandList().get(0)) &&
-                    upper.matches(node.getRightOperandList().get(1));
+            final EvaluationContext scoring = EvaluationContext.scoring();
+            if (scoring != null) {
+                return scoring.score(node, this, evaluate(left, node.getLeftOperand()),
+                        evaluate(lower, node.getRightOperandList().get(0)), evaluate(upper, node.getRightOperandList().get(1)));
+            }
+            return evaluate(left, node.getLeftOperand()) &&
+                    evaluate(lower, node.getRightOperandList().get(0)) &&
+                    evaluate(upper, node.getRightOperandList().get(1));
         }
         return false;
     }
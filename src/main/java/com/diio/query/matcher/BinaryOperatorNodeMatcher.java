@@ -41,6 +41,7 @@ public class BinaryOperatorNodeMatcher extends QueryTreeNodeMatcher {
     private final String operation;
     private final Matcher<QueryTreeNode> left;
     private final Matcher<QueryTreeNode> right;
+    private final AdaptiveOrder operands = new AdaptiveOrder(2);
 
     public BinaryOperatorNodeMatcher(Matcher<QueryTreeNode> leftMatcher, 
             String operation, 
@@ -50,21 +51,42 @@ public class BinaryOperatorNodeMatcher extends QueryTreeNodeMatcher {
         this.right = rightMatcher;
     }
     
+    String getOperation() {
+        return operation;
+    }
+
+    Matcher<QueryTreeNode> getLeft() {
+        return left;
+    }
+
+    Matcher<QueryTreeNode> getRight() {
+        return right;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { operation, left, right };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("a relational expression of ").
-            appendDescriptionOf(left).
+            appendText(descriptionOf(left)).
             appendText(" " + operation + " ").
-            appendDescriptionOf(right);
+            appendText(descriptionOf(right));
     }
     
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof BinaryOperatorNode) {
-            BinaryOperatorNode node = (BinaryOperatorNode) item;
+            final BinaryOperatorNode node = (BinaryOperatorNode) item;
+            final EvaluationContext scoring = EvaluationContext.scoring();
+            if (scoring != null) {
+                return scoring.score(node, this, operation.equalsIgnoreCase(node.getOperator()),
+                        evaluate(left, node.getLeftOperand()), evaluate(right, node.getRightOperand()));
+            }
             if (operation.equalsIgnoreCase(node.getOperator())) {
-                return left.matches(node.getLeftOperand()) &&
-                        right.matches(node.getRightOperand());
+                return operands.allMatch(i -> i == 0 ? evaluate(left, node.getLeftOperand()) : evaluate(right, node.getRightOperand()));
             }
         }
         return false;
@@ -0,0 +1,91 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * A limit on the work one evaluation may do, in node visits, wall-clock time or both. Every node a traversal visits and every
+ * nested matcher evaluated counts as a visit; the clock is read every few hundred visits. An evaluation that runs out stops where
+ * it is and reports its outcome as UNDECIDED, which bounds the latency of rules run inline against arbitrary statements.
+ *
+ * For example, hasInQuery(column("tenant_id")).withBudget(Budget.nodeVisits(100000).withTime(50, TimeUnit.MILLISECONDS))
+ */
+public final class Budget {
+    private final long maxVisits;
+    private final long maxNanos;
+
+    private Budget(long maxVisits, long maxNanos) {
+        this.maxVisits = maxVisits;
+        this.maxNanos = maxNanos;
+    }
+
+    public static Budget nodeVisits(long maxVisits) {
+        return new Budget(positive(maxVisits), Long.MAX_VALUE);
+    }
+
+    public static Budget time(long timeout, TimeUnit unit) {
+        return new Budget(Long.MAX_VALUE, positive(unit.toNanos(timeout)));
+    }
+
+    public Budget withNodeVisits(long maxVisits) {
+        return new Budget(positive(maxVisits), maxNanos);
+    }
+
+    public Budget withTime(long timeout, TimeUnit unit) {
+        return new Budget(maxVisits, positive(unit.toNanos(timeout)));
+    }
+
+    long getMaxVisits() {
+        return maxVisits;
+    }
+
+    /**
+     * The deadline, in System.nanoTime terms, of an evaluation starting now; Long.MAX_VALUE if there is no time limit.
+     */
+    long deadlineFromNow() {
+        return maxNanos == Long.MAX_VALUE ? Long.MAX_VALUE : System.nanoTime() + maxNanos;
+    }
+
+    private static long positive(long limit) {
+        if (limit <= 0) {
+            throw new IllegalArgumentException("Budget limits must be positive, was " + limit);
+        }
+        return limit;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Budget && maxVisits == ((Budget) other).maxVisits && maxNanos == ((Budget) other).maxNanos;
+    }
+
+    @Override
+    public int hashCode() {
+        return Long.hashCode(maxVisits) * 31 + Long.hashCode(maxNanos);
+    }
+
+    @Override
+    public String toString() {
+        final StringBuilder text = new StringBuilder("a budget of");
+        if (maxVisits != Long.MAX_VALUE) {
+            text.append(' ').append(maxVisits).append(" node visits");
+        }
+        if (maxNanos != Long.MAX_VALUE) {
+            text.append(maxVisits != Long.MAX_VALUE ? " and " : " ").append(TimeUnit.NANOSECONDS.toMillis(maxNanos)).append(" ms");
+        }
+        return text.toString();
+    }
+}
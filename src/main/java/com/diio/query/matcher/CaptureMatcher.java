@@ -0,0 +1,148 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.List;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.QueryTreeNode;
+
+/**
+ * Binds a name to the node it matches, so that the same thing can be required elsewhere in the pattern. The first capture of a
+ * name to match binds it; every other capture or sameAs of that name only matches a node which is the same as the bound one.
+ * Columns are the same if their names agree, ignoring case, and so do their table names where both are given; anything else is
+ * compared with equivalentTo's structural equivalence.
+ *
+ * For example, a column which is both filtered on and grouped by:
+ * assertThat(query, hasInQuery(allOf(where(capture("c", anyColumn())), hasInQuery(groupBy(sameAs("c"))))));
+ *
+ * Captures only work inside hasInQuery, which backtracks over the bindings when the rest of the pattern fails, and reports the
+ * bindings of a successful match in its MatchResult.
+ *
+ * @see EvaluationContext
+ */
+public class CaptureMatcher extends QueryTreeNodeMatcher {
+
+    private final String name;
+    private final Matcher<QueryTreeNode> submatcher;
+
+    /**
+     * @param submatcher what the node must match before it can be bound; null to accept anything
+     */
+    public CaptureMatcher(String name, Matcher<QueryTreeNode> submatcher) {
+        this.name = name;
+        this.submatcher = submatcher;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { name, submatcher };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        if (submatcher == null) {
+            description.appendText("the same as ").appendText(name);
+        } else {
+            description.appendText(descriptionOf(submatcher)).appendText(" captured as ").appendText(name);
+        }
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        final EvaluationContext context = EvaluationContext.current();
+        if (context == null) {
+            throw new IllegalStateException("Capture " + name + " can only be matched inside hasInQuery");
+        }
+        if (submatcher != null && !evaluate(submatcher, item)) {
+            return false;
+        }
+        if (context.isBound(name)) {
+            return same(context.bound(name), item);
+        }
+        return context.bind(name, item);
+    }
+
+    /**
+     * Whether a capture or sameAs is nested within the component, a matcher or what a matcher was built from, as far as the
+     * matchers of this library tell.
+     */
+    static boolean within(Object component) {
+        if (component instanceof Object[]) {
+            for (Object element : (Object[]) component) {
+                if (within(element)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (component instanceof List) {
+            return within(((List<?>) component).toArray());
+        }
+        if (component instanceof CaseBranchMatcher.Branch) {
+            return within(((CaseBranchMatcher.Branch) component).valueComponents());
+        }
+        if (component instanceof CaptureMatcher) {
+            return true;
+        }
+        if (component instanceof QueryTreeNodeMatcher) {
+            return within(((QueryTreeNodeMatcher) component).valueComponents());
+        }
+        if (component instanceof QueryHasMatcher) {
+            return within(((QueryHasMatcher) component).getSubMatcher());
+        }
+        return false;
+    }
+
+    static boolean same(QueryTreeNode bound, QueryTreeNode node) {
+        if (bound == node) {
+            return true;
+        }
+        if (bound instanceof ColumnReference && node instanceof ColumnReference) {
+            final ColumnReference a = (ColumnReference) bound;
+            final ColumnReference b = (ColumnReference) node;
+            if (a.getTableName() != null && b.getTableName() != null && !a.getTableName().equalsIgnoreCase(b.getTableName())) {
+                return false;
+            }
+            return a.getColumnName().equalsIgnoreCase(b.getColumnName());
+        }
+        return StructuralHash.of(bound) == StructuralHash.of(node) && StructuralHash.equivalent(bound, node);
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(query, hasInQuery(where(capture("c", anyColumn()))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> capture(String name, Matcher<QueryTreeNode> matcher) {
+        return new CaptureMatcher(name, matcher);
+    }
+
+    /**
+     * Syntactic sugar! Matches whatever is the same as the node bound to the name, binding it if nothing is bound yet.
+     *
+     * For example, assertThat(query, hasInQuery(allOf(where(capture("c", anyColumn())), hasInQuery(groupBy(sameAs("c"))))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> sameAs(String name) {
+        return new CaptureMatcher(name, null);
+    }
+}
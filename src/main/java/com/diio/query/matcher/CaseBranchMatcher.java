@@ -0,0 +1,396 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+import org.hamcrest.SelfDescribing;
+
+import com.akiban.sql.parser.BinaryOperatorNode;
+import com.akiban.sql.parser.ConditionalNode;
+import com.akiban.sql.parser.ConstantNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SimpleCaseNode;
+import com.akiban.sql.parser.ValueNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.primitives.Ints;
+
+/**
+ * Matches the branches of CASE statements with any number of WHEN... THEN... branches, such as
+ *
+ * CASE WHEN fare_class = 'F' THEN 3 WHEN fare_class = 'J' THEN 2 ELSE 1 END
+ *
+ * The parser nests each further WHEN of a searched CASE in the ELSE of the previous one. The nesting is flattened once per CASE
+ * statement into an array of branches, and the branches whose WHEN is an equality against a literal are indexed by that literal. Looking
+ * for a branch whose WHEN matcher is itself an equality against a literal, e.g. column("fare_class").equalToLiteral("J"), is then a hash
+ * lookup rather than a walk down the nesting. Simple CASE statements (CASE fare_class WHEN 'F' THEN ...) are supported too; there the
+ * WHEN matcher is applied to the value after WHEN.
+ *
+ * A nested CASE within the ELSE of another is treated as the CASE made of the remaining branches.
+ *
+ * @see CaseStatementMatcher
+ */
+public class CaseBranchMatcher extends QueryTreeNodeMatcher {
+    public enum MatchType {
+        HAS_BRANCH("a CASE statement with a branch "),
+        EXACT_BRANCHES("a CASE statement with exactly the branches "),
+        ELSE("a CASE statement with ELSE ");
+
+        private final String descr;
+
+        private MatchType(String descriptionPrefix) {
+            this.descr = descriptionPrefix;
+        }
+    }
+
+    private static final Cache<QueryTreeNode, Branches> FLATTENED = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final Branch[] branches;
+    private final Matcher<QueryTreeNode> elseMatcher;
+    private final MatchType matchType;
+
+    public CaseBranchMatcher(Branch[] branches, Matcher<QueryTreeNode> elseMatcher, MatchType howToMatch) {
+        this.branches = branches;
+        this.elseMatcher = elseMatcher;
+        this.matchType = howToMatch;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { branches, elseMatcher, matchType };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText(matchType.descr);
+        if (matchType == MatchType.ELSE) {
+            description.appendText(descriptionOf(elseMatcher));
+        } else {
+            description.appendList("[", ", ", "]", Arrays.asList(branches));
+        }
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        final Branches flattened = flatten(item);
+        if (flattened == null) {
+            return false;
+        }
+
+        switch (matchType) {
+        case HAS_BRANCH:
+            return flattened.hasBranch(branches[0]);
+        case EXACT_BRANCHES:
+            if (flattened.size() != branches.length) {
+                return false;
+            }
+            for (int i = 0; i < branches.length; i++) {
+                if (!flattened.branchMatches(i, branches[i])) {
+                    return false;
+                }
+            }
+            return true;
+        case ELSE:
+            return evaluate(elseMatcher, flattened.getElse());
+        }
+        return false;
+    }
+
+    /**
+     * Returns the branches of the CASE statement at the given node, or null if it isn't one. Flattening a searched CASE also records the
+     * branches for each of its nested CASE nodes, so that hasInQuery's visit of each of them is a lookup.
+     */
+    static Branches flatten(QueryTreeNode node) {
+        if (node instanceof SimpleCaseNode) {
+            Branches flattened = FLATTENED.getIfPresent(node);
+            if (flattened == null) {
+                final SimpleCaseNode caseNode = (SimpleCaseNode) node;
+                final int count = caseNode.getNumberOfCases();
+                final ValueNode[] whens = new ValueNode[count];
+                final ValueNode[] thens = new ValueNode[count];
+                for (int i = 0; i < count; i++) {
+                    whens[i] = caseNode.getCaseOperand(i);
+                    thens[i] = caseNode.getResultValue(i);
+                }
+                flattened = new Branches(new CaseChain(whens, thens, caseNode.getElseValue()), 0);
+                FLATTENED.put(node, flattened);
+            }
+            return flattened;
+        } else if (isSearchedCase(node)) {
+            Branches flattened = FLATTENED.getIfPresent(node);
+            if (flattened == null) {
+                final List<ConditionalNode> links = new ArrayList<ConditionalNode>();
+                ValueNode rest = (ValueNode) node;
+                while (isSearchedCase(rest)) {
+                    links.add((ConditionalNode) rest);
+                    rest = ((ConditionalNode) rest).getElseNode();
+                }
+                final ValueNode[] whens = new ValueNode[links.size()];
+                final ValueNode[] thens = new ValueNode[links.size()];
+                for (int i = 0; i < whens.length; i++) {
+                    whens[i] = links.get(i).getTestCondition();
+                    thens[i] = links.get(i).getThenNode();
+                }
+                final CaseChain chain = new CaseChain(whens, thens, rest);
+                for (int i = 0; i < whens.length; i++) {
+                    FLATTENED.put(links.get(i), new Branches(chain, i));
+                }
+                flattened = FLATTENED.getIfPresent(node);
+            }
+            return flattened;
+        }
+        return null;
+    }
+
+    private static boolean isSearchedCase(QueryTreeNode node) {
+        return node instanceof ConditionalNode && !((ConditionalNode) node).isNullIfNode();
+    }
+
+    /**
+     * The key a literal is indexed under. Numbers are compared by their double value, just as LiteralMatcher compares them.
+     */
+    private static Object literalKey(Object value) {
+        if (value instanceof Number) {
+            return ((Number) value).doubleValue() + 0.0;
+        }
+        return value;
+    }
+
+    private static Object literalKeyOf(QueryTreeNode node) {
+        return node instanceof ConstantNode ? literalKey(((ConstantNode) node).getValue()) : null;
+    }
+
+    /**
+     * The literal that any WHEN matched by the given matcher must be compared against (or be, for a simple CASE), if that can be told
+     * from the matcher; null otherwise.
+     */
+    private static Object dispatchKeyOf(Matcher<QueryTreeNode> whenMatcher) {
+        if (whenMatcher instanceof LiteralMatcher) {
+            final Object literal = ((LiteralMatcher<?>) whenMatcher).getLiteral();
+            return literal == null ? null : literalKey(literal);
+        }
+        if (whenMatcher instanceof BinaryOperatorNodeMatcher && "=".equals(((BinaryOperatorNodeMatcher) whenMatcher).getOperation())) {
+            final BinaryOperatorNodeMatcher equality = (BinaryOperatorNodeMatcher) whenMatcher;
+            final Object right = dispatchKeyOf(equality.getRight());
+            return right != null ? right : dispatchKeyOf(equality.getLeft());
+        }
+        return null;
+    }
+
+    /**
+     * All the branches of a CASE statement, with the branches indexed by the literals their WHENs compare against.
+     */
+    private static class CaseChain {
+        private final ValueNode[] whens;
+        private final ValueNode[] thens;
+        private final ValueNode elseNode;
+        private final Map<Object, int[]> byLiteral = new HashMap<Object, int[]>();
+        private final int[] unindexed;
+
+        CaseChain(ValueNode[] whens, ValueNode[] thens, ValueNode elseNode) {
+            this.whens = whens;
+            this.thens = thens;
+            this.elseNode = elseNode;
+
+            final Map<Object, List<Integer>> indexed = new HashMap<Object, List<Integer>>();
+            final List<Integer> notIndexed = new ArrayList<Integer>();
+            for (int i = 0; i < whens.length; i++) {
+                final List<Object> keys = keysOf(whens[i]);
+                if (keys.isEmpty()) {
+                    notIndexed.add(i);
+                }
+                for (Object key : keys) {
+                    List<Integer> forKey = indexed.get(key);
+                    if (forKey == null) {
+                        forKey = new ArrayList<Integer>();
+                        indexed.put(key, forKey);
+                    }
+                    if (forKey.isEmpty() || forKey.get(forKey.size() - 1) != i) {
+                        forKey.add(i);
+                    }
+                }
+            }
+            for (Map.Entry<Object, List<Integer>> entry : indexed.entrySet()) {
+                byLiteral.put(entry.getKey(), Ints.toArray(entry.getValue()));
+            }
+            unindexed = Ints.toArray(notIndexed);
+        }
+
+        /**
+         * The literals a WHEN is indexed under: the literal itself for a simple CASE, or every literal side of an equality.
+         */
+        private static List<Object> keysOf(ValueNode when) {
+            final Object key = literalKeyOf(when);
+            if (key != null) {
+                return Collections.singletonList(key);
+            }
+            if (when instanceof BinaryOperatorNode && "=".equals(((BinaryOperatorNode) when).getOperator())) {
+                final BinaryOperatorNode equality = (BinaryOperatorNode) when;
+                final List<Object> keys = new ArrayList<Object>(2);
+                final Object left = literalKeyOf(equality.getLeftOperand());
+                final Object right = literalKeyOf(equality.getRightOperand());
+                if (left != null) {
+                    keys.add(left);
+                }
+                if (right != null) {
+                    keys.add(right);
+                }
+                return keys;
+            }
+            return Collections.emptyList();
+        }
+    }
+
+    /**
+     * The branches of a CASE statement from a given branch onwards.
+     */
+    static class Branches {
+        private final CaseChain chain;
+        private final int offset;
+
+        Branches(CaseChain chain, int offset) {
+            this.chain = chain;
+            this.offset = offset;
+        }
+
+        int size() {
+            return chain.whens.length - offset;
+        }
+
+        ValueNode getWhen(int index) {
+            return chain.whens[offset + index];
+        }
+
+        ValueNode getThen(int index) {
+            return chain.thens[offset + index];
+        }
+
+        ValueNode getElse() {
+            return chain.elseNode;
+        }
+
+        boolean branchMatches(int index, Branch branch) {
+            return evaluate(branch.whenMatcher, getWhen(index)) && evaluate(branch.thenMatcher, getThen(index));
+        }
+
+        boolean hasBranch(Branch branch) {
+            final Object key = dispatchKeyOf(branch.whenMatcher);
+            if (key == null) {
+                for (int i = 0; i < size(); i++) {
+                    if (branchMatches(i, branch)) {
+                        return true;
+                    }
+                }
+                return false;
+            }
+            final int[] indexed = chain.byLiteral.get(key);
+            return anyMatches(indexed, branch) || anyMatches(chain.unindexed, branch);
+        }
+
+        private boolean anyMatches(int[] chainIndexes, Branch branch) {
+            if (chainIndexes != null) {
+                for (int chainIndex : chainIndexes) {
+                    if (chainIndex >= offset && branchMatches(chainIndex - offset, branch)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+    }
+
+    /**
+     * A WHEN... THEN... pair of matchers.
+     */
+    public static class Branch implements SelfDescribing {
+        private final Matcher<QueryTreeNode> whenMatcher;
+        private final Matcher<QueryTreeNode> thenMatcher;
+
+        public Branch(Matcher<QueryTreeNode> whenMatcher, Matcher<QueryTreeNode> thenMatcher) {
+            this.whenMatcher = whenMatcher;
+            this.thenMatcher = thenMatcher;
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendText("WHEN ").
+                appendText(descriptionOf(whenMatcher)).
+                appendText(" THEN ").
+                appendText(descriptionOf(thenMatcher));
+        }
+
+        Object[] valueComponents() {
+            return new Object[] { whenMatcher, thenMatcher };
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            return other instanceof Branch && same(valueComponents(), ((Branch) other).valueComponents());
+        }
+
+        @Override
+        public int hashCode() {
+            return hash(valueComponents());
+        }
+    }
+
+    /**
+     * Syntactic sugar for a WHEN... THEN... pair, for use with caseBranches().
+     */
+    public static Branch branch(Matcher<QueryTreeNode> whenMatcher, Matcher<QueryTreeNode> thenMatcher) {
+        return new Branch(whenMatcher, thenMatcher);
+    }
+
+    /**
+     * Syntactic sugar! Matches a CASE statement having any branch with a matching WHEN and THEN.
+     *
+     * For example, assertThat(query, hasInQuery(caseHasBranch(column("fare_class").equalToLiteral("J"), literal(2))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> caseHasBranch(Matcher<QueryTreeNode> whenMatcher, Matcher<QueryTreeNode> thenMatcher) {
+        return new CaseBranchMatcher(new Branch[] {branch(whenMatcher, thenMatcher)}, null, MatchType.HAS_BRANCH);
+    }
+
+    /**
+     * Syntactic sugar! Matches a CASE statement having exactly the given branches, in order.
+     *
+     * For example, assertThat(query, hasInQuery(caseBranches(branch(column("c").equalToLiteral("F"), literal(3)),
+     *     branch(column("c").equalToLiteral("J"), literal(2)))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> caseBranches(Branch... branches) {
+        return new CaseBranchMatcher(branches, null, MatchType.EXACT_BRANCHES);
+    }
+
+    /**
+     * Syntactic sugar! Matches a CASE statement whose final ELSE matches.
+     *
+     * For example, assertThat(query, hasInQuery(caseElse(literal(1))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> caseElse(Matcher<QueryTreeNode> elseMatcher) {
+        return new CaseBranchMatcher(new Branch[0], elseMatcher, MatchType.ELSE);
+    }
+}
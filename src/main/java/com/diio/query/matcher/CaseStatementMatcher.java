@@ -26,16 +26,19 @@ import com.akiban.sql.parser.QueryTreeNode;
 /**
  * Matches CASE statements, such as CASE WHEN my_col='a value' THEN 33 ELSE 34 END
  * 
- * TODO: support matching multiple WHEN... THEN... ELSE conditions for a single CASE statement
+ * Only the first WHEN... THEN... of a CASE statement is looked at, with the rest of the statement being the ELSE. To match any of the
+ * branches of a CASE statement with many WHEN... THEN... branches, see CaseBranchMatcher.
  * 
  * @author kkoster
  *
+ * @see CaseBranchMatcher
  */
 public class CaseStatementMatcher extends QueryTreeNodeMatcher {
 
     private final Matcher<QueryTreeNode> whenMatcher;
     private final Matcher<QueryTreeNode> thenMatcher;
     private final Matcher<QueryTreeNode> elseMatcher;
+    private final AdaptiveOrder clauses = new AdaptiveOrder(3);
 
     public CaseStatementMatcher(Matcher<QueryTreeNode> whenMatcher, Matcher<QueryTreeNode> thenMatcher, Matcher<QueryTreeNode> elseMatcher) {
         this.whenMatcher = whenMatcher;
@@ -43,23 +46,35 @@ public class CaseStatementMatcher extends QueryTreeNodeMatcher {
         this.elseMatcher = elseMatcher;
     }
     
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { whenMatcher, thenMatcher, elseMatcher };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("a CASE statement clause of ").
-            appendDescriptionOf(whenMatcher).
+            appendText(descriptionOf(whenMatcher)).
             appendText(" THEN ").
-            appendDescriptionOf(thenMatcher).
+            appendText(descriptionOf(thenMatcher)).
             appendText(" ELSE ").
-            appendDescriptionOf(elseMatcher);
+            appendText(descriptionOf(elseMatcher));
     }
     
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof ConditionalNode) {
-            ConditionalNode caseNode = (ConditionalNode) item;
-            return whenMatcher.matches(caseNode.getTestCondition()) 
-                    && thenMatcher.matches(caseNode.getThenNode()) 
-                    && elseMatcher.matches(caseNode.getElseNode());
+            final ConditionalNode caseNode = (ConditionalNode) item;
+            return clauses.allMatch(i -> {
+                switch (i) {
+                case 0:
+                    return evaluate(whenMatcher, caseNode.getTestCondition());
+                case 1:
+                    return evaluate(thenMatcher, caseNode.getThenNode());
+                default:
+                    return evaluate(elseMatcher, caseNode.getElseNode());
+                }
+            });
         }
         return false;
     }
@@ -42,21 +42,26 @@ public class CastMatcher extends QueryTreeNodeMatcher {
         this.typeMatcher = destTypeMatcher;
     }
     
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { operandMatcher, typeMatcher };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("CAST of ").
-            appendDescriptionOf(operandMatcher).
+            appendText(descriptionOf(operandMatcher)).
             appendText(" to type ").
-            appendDescriptionOf(typeMatcher);
+            appendText(descriptionOf(typeMatcher));
     }
     
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof CastNode) {
             CastNode node = (CastNode) item;
             try {
-                return operandMatcher.matches(node.getCastOperand()) &&
-                        typeMatcher.matches(node.getTypeId());
+                return evaluate(operandMatcher, node.getCastOperand()) &&
+                        evaluate(typeMatcher, node.getTypeId());
             } catch (StandardException e) {
                 throw new RuntimeException(e);
             }
@@ -22,40 +22,86 @@ import org.hamcrest.Factory;
 import org.hamcrest.Matcher;
 
 import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.FromTable;
 import com.akiban.sql.parser.QueryTreeNode;
 
 /**
- * Matches a reference to a column, which may optionally be qualified by a table name. E.g.
- * both "my_table.my_column" and "my_column" can be matched.
+ * Matches a reference to a column, which may optionally be qualified by a table name and a schema. E.g.
+ * "my_schema.my_table.my_column", "my_table.my_column" and "my_column" can all be matched.
  * 
- * TODO: does not match column names which are qualified by both a schema and a table name.
+ * A qualified name matches a reference written with that qualifier, and also a reference to a column of that table under
+ * another name: "orders.id" matches o.id when orders is aliased o, and an unqualified id when orders is the only table in
+ * scope. References are resolved through the SymbolTable of the statement; with a Schema, see using(), an unqualified
+ * column is attributed to whichever table of its query block has it.
  * 
  * @author kkoster
  *
+ * @see SymbolTable
  */
 public class ColumnMatcher extends QueryTreeNodeMatcher {
 
     private final String columnName;
     private final String tableName;
+    private final String schemaName;
+    private final Schema schema;
 
     public ColumnMatcher(String name) {
-        if (name.contains(".")) {
-            String parts[] = name.split("\\.");
-            if (parts.length != 2) {
-                //TODO support schemas (2 periods present)
-                throw new RuntimeException("More than 1 period found in column name " + name);
-            }
-            tableName = parts[0];
-            columnName = parts[1];
-        } else {
-            columnName = name;
-            tableName = null;
+        String parts[] = name.split("\\.");
+        if (parts.length > 3) {
+            throw new RuntimeException("More than 2 periods found in column name " + name);
         }
+        columnName = parts[parts.length - 1];
+        tableName = parts.length > 1 ? parts[parts.length - 2] : null;
+        schemaName = parts.length > 2 ? parts[0] : null;
+        schema = null;
     }
     
+    /**
+     * Matches any column reference.
+     */
+    private ColumnMatcher() {
+        columnName = null;
+        tableName = null;
+        schemaName = null;
+        schema = null;
+    }
+
+    private ColumnMatcher(ColumnMatcher matcher, Schema schema) {
+        columnName = matcher.columnName;
+        tableName = matcher.tableName;
+        schemaName = matcher.schemaName;
+        this.schema = schema;
+    }
+
+    /**
+     * Returns a copy of this matcher which uses the schema to tell which table an unqualified column belongs to.
+     */
+    public ColumnMatcher using(Schema schema) {
+        return new ColumnMatcher(this, schema);
+    }
+
+    /**
+     * The name of the column, without qualifiers; null if any column matches.
+     */
+    String getColumnName() {
+        return columnName;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { columnName, tableName, schemaName, schema };
+    }
+
     @Override
     public void describeTo(Description description) {
+        if (columnName == null) {
+            description.appendText("any column");
+            return;
+        }
         description.appendText("a column with name ");
+        if (schemaName != null) {
+            description.appendText(schemaName).appendText(".");
+        }
         if (tableName != null) {
             description.appendText(tableName).appendText(".");
         }
@@ -63,13 +109,26 @@ public class ColumnMatcher extends QueryTreeNodeMatcher {
     }
 
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof ColumnReference) {
             ColumnReference col = (ColumnReference) item;
-            if (tableName != null && !tableName.equalsIgnoreCase(col.getTableName())) {
+            if (columnName == null) {
+                return true;
+            }
+            if (!columnName.equalsIgnoreCase(col.getColumnName())) {
                 return false;
             }
-            return columnName.equalsIgnoreCase(col.getColumnName());
+            if (tableName == null) {
+                return true;
+            }
+            if (tableName.equalsIgnoreCase(col.getTableName())
+                    && (schemaName == null || schemaName.equalsIgnoreCase(col.getSchemaName()))) {
+                return true;
+            }
+            final SymbolTable symbols = SymbolTable.containing(col);
+            final FromTable table = symbols == null ? null : symbols.resolve(col, schema);
+            return table != null && tableName.equalsIgnoreCase(SymbolTable.baseNameOf(table))
+                    && (schemaName == null || schemaName.equalsIgnoreCase(SymbolTable.schemaOf(table)));
         }
         return false;
     }
@@ -78,12 +137,27 @@ public class ColumnMatcher extends QueryTreeNodeMatcher {
      * Syntactic sugar!
      *
      * For example, assertThat(query, column("my_id")));
+     *
+     * A qualified name is resolved against the statement being evaluated, which is the node the outermost matcher was applied
+     * to. So "orders.id" matches the unqualified id of SELECT id FROM orders within hasInQuery or assertThat on the statement,
+     * but not when column("orders.id") is applied directly to the ColumnReference, which is then a statement of its own with no
+     * FROM list to resolve it by.
      */
     @Factory
     public static ColumnMatcher column(String name) {
         return new ColumnMatcher(name);
     }
 
+    /**
+     * Syntactic sugar! Mostly useful for capturing whichever column appears in a given place.
+     *
+     * For example, assertThat(query, hasInQuery(where(capture("c", anyColumn()))));
+     */
+    @Factory
+    public static ColumnMatcher anyColumn() {
+        return new ColumnMatcher();
+    }
+
     /**
      * Syntactic sugar! Useful in combination with a ListOfNodeMatcher.
      *
@@ -0,0 +1,61 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.function.Predicate;
+
+import org.hamcrest.Description;
+import org.hamcrest.TypeSafeMatcher;
+
+/**
+ * A condition on a computed property of a query, such as its QueryShape or the Interval of a column, tested by a predicate.
+ * Conditions are equal when they test the same type and their descriptions are equal, which name the condition and its bound.
+ *
+ * @see ShapeMatcher
+ * @see RangeMatcher
+ */
+final class Condition<T> extends TypeSafeMatcher<T> {
+    private final Class<T> type;
+    private final String descr;
+    private final Predicate<? super T> test;
+
+    Condition(Class<T> type, String descr, Predicate<? super T> test) {
+        super(type);
+        this.type = type;
+        this.descr = descr;
+        this.test = test;
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText(descr);
+    }
+
+    @Override
+    protected boolean matchesSafely(T item) {
+        return test.test(item);
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        return other instanceof Condition && type == ((Condition<?>) other).type && descr.equals(((Condition<?>) other).descr);
+    }
+
+    @Override
+    public int hashCode() {
+        return descr.hashCode();
+    }
+}
@@ -0,0 +1,205 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import com.akiban.sql.parser.AndNode;
+import com.akiban.sql.parser.BinaryRelationalOperatorNode;
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.IsNullNode;
+import com.akiban.sql.parser.NodeTypes;
+import com.akiban.sql.parser.NotNode;
+import com.akiban.sql.parser.OrNode;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.ValueNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * The conjuncts of the WHERE clause of a SELECT, normalized and indexed by column and operator. The clause is split at its ANDs,
+ * NOT is pushed through comparisons, null tests, ANDs and ORs, and comparisons are turned around to have a column on the left
+ * where they have one on either side, so "NOT (5 >= qty)" is indexed as qty > 5. A comparison of two columns is indexed both
+ * ways round. Only comparisons and null tests are indexed; other conjuncts, ORs among them, aren't distributed into clauses but
+ * are kept as they are, unless negated.
+ *
+ * The index is built once per SELECT and remembered.
+ *
+ * @see ConjunctMatcher
+ */
+final class ConjunctIndex {
+    private static final Cache<SelectNode, ConjunctIndex> INDEXES = CacheBuilder.newBuilder().weakKeys().build();
+
+    static final String IS_NULL = "is null";
+    static final String IS_NOT_NULL = "is not null";
+
+    private static final Map<String, String> NEGATED = new HashMap<String, String>();
+    private static final Map<String, String> REVERSED = new HashMap<String, String>();
+    static {
+        pair(NEGATED, "=", "<>");
+        pair(NEGATED, "<", ">=");
+        pair(NEGATED, ">", "<=");
+        pair(NEGATED, IS_NULL, IS_NOT_NULL);
+        pair(REVERSED, "<", ">");
+        pair(REVERSED, "<=", ">=");
+        REVERSED.put("=", "=");
+        REVERSED.put("<>", "<>");
+    }
+
+    private final Map<String, List<Conjunct>> byColumnAndOperator = new HashMap<String, List<Conjunct>>();
+    private final Map<String, List<Conjunct>> byOperator = new HashMap<String, List<Conjunct>>();
+    private final List<ValueNode> others = new ArrayList<ValueNode>();
+
+    private ConjunctIndex(SelectNode select) {
+        if (select.getWhereClause() != null) {
+            add(select.getWhereClause(), false);
+        }
+    }
+
+    static ConjunctIndex of(final SelectNode select) {
+        try {
+            return INDEXES.get(select, () -> new ConjunctIndex(select));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static void pair(Map<String, String> map, String a, String b) {
+        map.put(a, b);
+        map.put(b, a);
+    }
+
+    /**
+     * Indexes the conjuncts of the condition, or of its negation.
+     */
+    private void add(ValueNode condition, boolean negated) {
+        if (condition instanceof NotNode) {
+            add(((NotNode) condition).getOperand(), !negated);
+        } else if (condition instanceof AndNode && !negated) {
+            add(((AndNode) condition).getLeftOperand(), false);
+            add(((AndNode) condition).getRightOperand(), false);
+        } else if (condition instanceof OrNode && negated) {
+            add(((OrNode) condition).getLeftOperand(), true);
+            add(((OrNode) condition).getRightOperand(), true);
+        } else if (condition instanceof BinaryRelationalOperatorNode) {
+            final BinaryRelationalOperatorNode comparison = (BinaryRelationalOperatorNode) condition;
+            final String operator = negated ? NEGATED.get(comparison.getOperator()) : comparison.getOperator();
+            if (operator == null || !REVERSED.containsKey(operator)) {
+                return;
+            }
+            final ValueNode left = comparison.getLeftOperand();
+            final ValueNode right = comparison.getRightOperand();
+            if (left instanceof ColumnReference || !(right instanceof ColumnReference)) {
+                put(new Conjunct(left, operator, right, condition));
+            }
+            if (right instanceof ColumnReference) {
+                put(new Conjunct(right, REVERSED.get(operator), left, condition));
+            }
+        } else if (condition instanceof IsNullNode) {
+            final String operator = condition.getNodeType() == NodeTypes.IS_NULL_NODE ? IS_NULL : IS_NOT_NULL;
+            put(new Conjunct(((IsNullNode) condition).getOperand(), negated ? NEGATED.get(operator) : operator, null, condition));
+        } else if (!negated) {
+            others.add(condition);
+        }
+    }
+
+    private void put(Conjunct conjunct) {
+        if (conjunct.subject instanceof ColumnReference) {
+            index(byColumnAndOperator, key(((ColumnReference) conjunct.subject).getColumnName(), conjunct.operator), conjunct);
+        }
+        index(byOperator, conjunct.operator, conjunct);
+    }
+
+    private static void index(Map<String, List<Conjunct>> index, String key, Conjunct conjunct) {
+        List<Conjunct> conjuncts = index.get(key);
+        if (conjuncts == null) {
+            conjuncts = new ArrayList<Conjunct>();
+            index.put(key, conjuncts);
+        }
+        conjuncts.add(conjunct);
+    }
+
+    private static String key(String column, String operator) {
+        return SymbolTable.normalize(column) + " " + operator;
+    }
+
+    /**
+     * The conjuncts comparing the named column with the operator, given in normalized form such as "<>" rather than "!=".
+     */
+    List<Conjunct> lookUp(String column, String operator) {
+        final List<Conjunct> conjuncts = byColumnAndOperator.get(key(column, normalizeOperator(operator)));
+        return conjuncts == null ? Collections.<Conjunct>emptyList() : conjuncts;
+    }
+
+    /**
+     * The conjuncts comparing anything with the operator.
+     */
+    List<Conjunct> lookUp(String operator) {
+        final List<Conjunct> conjuncts = byOperator.get(normalizeOperator(operator));
+        return conjuncts == null ? Collections.<Conjunct>emptyList() : conjuncts;
+    }
+
+    /**
+     * The conjuncts of the clause that aren't comparisons or null tests, such as BETWEENs, INs and ORs.
+     */
+    List<ValueNode> getOtherConjuncts() {
+        return others;
+    }
+
+    static String normalizeOperator(String operator) {
+        final String normalized = SymbolTable.normalize(operator.trim());
+        return "!=".equals(normalized) ? "<>" : normalized;
+    }
+
+    /**
+     * A normalized conjunct: subject operator value, with no value for null tests. The node is the comparison or null test it
+     * was derived from, which may read differently, e.g. the other way round or under a NOT.
+     */
+    static final class Conjunct {
+        private final ValueNode subject;
+        private final String operator;
+        private final ValueNode value;
+        private final ValueNode node;
+
+        Conjunct(ValueNode subject, String operator, ValueNode value, ValueNode node) {
+            this.subject = subject;
+            this.operator = operator;
+            this.value = value;
+            this.node = node;
+        }
+
+        ValueNode getSubject() {
+            return subject;
+        }
+
+        String getOperator() {
+            return operator;
+        }
+
+        ValueNode getValue() {
+            return value;
+        }
+
+        ValueNode getNode() {
+            return node;
+        }
+    }
+}
@@ -0,0 +1,104 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.List;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SelectNode;
+import com.diio.query.matcher.ConjunctIndex.Conjunct;
+
+/**
+ * Matches a SELECT whose WHERE clause has a top-level conjunct comparing a column with a value, looked up in the ConjunctIndex
+ * of the SELECT rather than searched for. Conjuncts are matched in normalized form, so whereHasConjunct(column("qty"), ">",
+ * literal(5)) matches "qty > 5", "5 < qty" and "NOT (qty <= 5)" alike, but not "qty > 5 OR urgent = 1".
+ *
+ * Given a ColumnMatcher for a named column, only the conjuncts on a column of that name are tried.
+ *
+ * @see ConjunctIndex
+ */
+public class ConjunctMatcher extends QueryTreeNodeMatcher {
+
+    private final Matcher<QueryTreeNode> subject;
+    private final String operator;
+    private final Matcher<QueryTreeNode> value;
+
+    public ConjunctMatcher(Matcher<QueryTreeNode> subject, String operator, Matcher<QueryTreeNode> value) {
+        this.subject = subject;
+        this.operator = ConjunctIndex.normalizeOperator(operator);
+        this.value = value;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { subject, operator, value };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("a where clause with the conjunct ").appendText(descriptionOf(subject))
+                .appendText(" " + operator);
+        if (value != null) {
+            description.appendText(" ").appendText(descriptionOf(value));
+        }
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        if (!(item instanceof SelectNode)) {
+            return false;
+        }
+        final ConjunctIndex index = ConjunctIndex.of((SelectNode) item);
+        final String columnName = subject instanceof ColumnMatcher ? ((ColumnMatcher) subject).getColumnName() : null;
+        final List<Conjunct> candidates = columnName != null ? index.lookUp(columnName, operator) : index.lookUp(operator);
+        final EvaluationContext context = EvaluationContext.current();
+        for (Conjunct conjunct : candidates) {
+            final int mark = context == null ? 0 : context.mark();
+            if (evaluate(subject, conjunct.getSubject()) && (value == null || evaluate(value, conjunct.getValue()))) {
+                return true;
+            }
+            if (context != null) {
+                context.reset(mark);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Syntactic sugar! The operator is one of =, <>, <, <=, > and >=.
+     *
+     * For example, assertThat(query, hasInQuery(whereHasConjunct(column("tenant_id"), "=", any(QueryTreeNode.class))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> whereHasConjunct(Matcher<QueryTreeNode> subject, String operator,
+            Matcher<QueryTreeNode> value) {
+        return new ConjunctMatcher(subject, operator, value);
+    }
+
+    /**
+     * Syntactic sugar! For null tests, the operator being "is null" or "is not null".
+     *
+     * For example, assertThat(query, hasInQuery(whereHasConjunct(column("deleted_at"), "is null")));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> whereHasConjunct(Matcher<QueryTreeNode> subject, String operator) {
+        return new ConjunctMatcher(subject, operator, null);
+    }
+}
@@ -0,0 +1,301 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.akiban.sql.parser.AndNode;
+import com.akiban.sql.parser.BetweenOperatorNode;
+import com.akiban.sql.parser.BinaryRelationalOperatorNode;
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.CursorNode;
+import com.akiban.sql.parser.DMLStatementNode;
+import com.akiban.sql.parser.FromBaseTable;
+import com.akiban.sql.parser.FromSubquery;
+import com.akiban.sql.parser.FromTable;
+import com.akiban.sql.parser.InListOperatorNode;
+import com.akiban.sql.parser.IntersectOrExceptNode;
+import com.akiban.sql.parser.IsNullNode;
+import com.akiban.sql.parser.JoinNode;
+import com.akiban.sql.parser.NodeTypes;
+import com.akiban.sql.parser.NotNode;
+import com.akiban.sql.parser.NumericConstantNode;
+import com.akiban.sql.parser.OrNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.RowResultSetNode;
+import com.akiban.sql.parser.RowsResultSetNode;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.SubqueryNode;
+import com.akiban.sql.parser.UnionNode;
+import com.akiban.sql.parser.ValueNode;
+
+/**
+ * An estimate of how many rows a statement returns and reads, and how many rows its joins match per row, from Statistics rather
+ * than a database. Estimates follow the textbook rules of cost-based optimizers, assuming predicates are independent:
+ *
+ * - a query block returns the product of the rows of its tables and the selectivities of its WHERE and ON conjuncts,
+ * - column = value selects 1 / distinct values of the column, and column = column 1 / the greater of their distinct values,
+ * - column IN (k values) selects k / distinct values, at most all of them,
+ * - ranges select 1/3, BETWEEN 1/4, IS NULL 1/10, and anything else 1/3,
+ * - NOT, AND and OR combine selectivities as probabilities do.
+ *
+ * The rows read are the rows of every base table the statement names, subqueries included, each counted once. The fanout of an
+ * equality join is how many rows of either table match a row of the other on average, and that of a table joined without a
+ * predicate is its number of rows. Outer joins are estimated as inner joins, and grouping isn't taken into account.
+ *
+ * Estimated once per statement and Statistics; see Statistics.estimate().
+ *
+ * @see CostMatcher
+ */
+public final class CostEstimate {
+
+    static final double RANGE_SELECTIVITY = 1.0 / 3;
+    static final double BETWEEN_SELECTIVITY = 1.0 / 4;
+    static final double NULL_SELECTIVITY = 1.0 / 10;
+    static final double DEFAULT_SELECTIVITY = 1.0 / 3;
+
+    private final Statistics statistics;
+    private final SymbolTable symbols;
+    private final double rows;
+    private double rowsScanned;
+    private double joinFanout = 1;
+
+    CostEstimate(QueryTreeNode statement, Statistics statistics) {
+        this.statistics = statistics;
+        this.symbols = SymbolTable.of(statement);
+        this.rows = estimate(statement);
+    }
+
+    /**
+     * The rows a result set yields.
+     */
+    private double estimate(QueryTreeNode node) {
+        if (node instanceof CursorNode) {
+            final CursorNode cursor = (CursorNode) node;
+            final double result = estimate(cursor.getResultSetNode());
+            if (cursor.getFetchFirstClause() instanceof NumericConstantNode) {
+                return Math.min(result, ((Number) ((NumericConstantNode) cursor.getFetchFirstClause()).getValue()).doubleValue());
+            }
+            return result;
+        }
+        if (node instanceof DMLStatementNode) {
+            return estimate(((DMLStatementNode) node).getResultSetNode());
+        }
+        if (node instanceof SelectNode) {
+            return block((SelectNode) node);
+        }
+        if (node instanceof UnionNode) {
+            return estimate(((UnionNode) node).getLeftResultSet()) + estimate(((UnionNode) node).getRightResultSet());
+        }
+        if (node instanceof IntersectOrExceptNode) {
+            final double left = estimate(((IntersectOrExceptNode) node).getLeftResultSet());
+            final double right = estimate(((IntersectOrExceptNode) node).getRightResultSet());
+            return ((IntersectOrExceptNode) node).getOpType() == IntersectOrExceptNode.OpType.INTERSECT ? Math.min(left, right) : left;
+        }
+        if (node instanceof RowsResultSetNode) {
+            return ((RowsResultSetNode) node).getRows().size();
+        }
+        if (node instanceof RowResultSetNode) {
+            return 1;
+        }
+        double result = 0;
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            result = Math.max(result, estimate(child));
+        }
+        return result;
+    }
+
+    private double block(SelectNode select) {
+        final Map<FromTable, Double> tables = new IdentityHashMap<FromTable, Double>();
+        final List<ValueNode> conjuncts = new ArrayList<ValueNode>();
+        double result = 1;
+        for (FromTable item : select.getFromList()) {
+            result *= fromItem(item, tables, conjuncts);
+        }
+        if (select.getWhereClause() != null) {
+            conjuncts.addAll(JoinGraph.conjuncts(select.getWhereClause()));
+        }
+        final Set<FromTable> joined = Collections.newSetFromMap(new IdentityHashMap<FromTable, Boolean>());
+        for (ValueNode conjunct : conjuncts) {
+            result *= selectivity(conjunct);
+            joinFanout = Math.max(joinFanout, fanout(conjunct, tables, joined));
+        }
+        if (tables.size() > 1) {
+            for (Map.Entry<FromTable, Double> table : tables.entrySet()) {
+                if (!joined.contains(table.getKey())) {
+                    joinFanout = Math.max(joinFanout, table.getValue());
+                }
+            }
+        }
+        for (QueryTreeNode child : QueryTrees.children(select)) {
+            if (child != select.getFromList()) {
+                scanSubqueries(child);
+            }
+        }
+        return result;
+    }
+
+    /**
+     * The rows of an item of a FROM list, collecting its tables and the conjuncts of its ON clauses.
+     */
+    private double fromItem(FromTable item, Map<FromTable, Double> tables, List<ValueNode> conjuncts) {
+        if (item instanceof FromBaseTable) {
+            final double tableRows = statistics.getRows((FromBaseTable) item);
+            rowsScanned += tableRows;
+            tables.put(item, tableRows);
+            return tableRows;
+        }
+        if (item instanceof FromSubquery) {
+            final double subqueryRows = estimate(((FromSubquery) item).getSubquery());
+            tables.put(item, subqueryRows);
+            return subqueryRows;
+        }
+        if (item instanceof JoinNode) {
+            final JoinNode join = (JoinNode) item;
+            final double left = fromItem((FromTable) join.getLeftResultSet(), tables, conjuncts);
+            final double right = fromItem((FromTable) join.getRightResultSet(), tables, conjuncts);
+            if (join.getJoinClause() != null) {
+                conjuncts.addAll(JoinGraph.conjuncts(join.getJoinClause()));
+            }
+            return left * right;
+        }
+        return estimate(item);
+    }
+
+    /**
+     * Counts the tables read by subqueries, in WHERE clauses, result columns and the like.
+     */
+    private void scanSubqueries(QueryTreeNode node) {
+        if (node instanceof SubqueryNode) {
+            estimate(((SubqueryNode) node).getResultSet());
+            return;
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            scanSubqueries(child);
+        }
+    }
+
+    private double selectivity(ValueNode condition) {
+        if (condition instanceof NotNode) {
+            return 1 - selectivity(((NotNode) condition).getOperand());
+        }
+        if (condition instanceof AndNode) {
+            return selectivity(((AndNode) condition).getLeftOperand()) * selectivity(((AndNode) condition).getRightOperand());
+        }
+        if (condition instanceof OrNode) {
+            final double left = selectivity(((OrNode) condition).getLeftOperand());
+            final double right = selectivity(((OrNode) condition).getRightOperand());
+            return left + right - left * right;
+        }
+        if (condition instanceof BinaryRelationalOperatorNode) {
+            final BinaryRelationalOperatorNode comparison = (BinaryRelationalOperatorNode) condition;
+            final double equality = 1.0 / Math.max(distinct(comparison.getLeftOperand()), distinct(comparison.getRightOperand()));
+            switch (comparison.getOperator()) {
+            case "=":
+                return equality;
+            case "<>":
+                return 1 - equality;
+            default:
+                return RANGE_SELECTIVITY;
+            }
+        }
+        if (condition instanceof InListOperatorNode) {
+            final InListOperatorNode in = (InListOperatorNode) condition;
+            double distinct = 1;
+            for (ValueNode operand : in.getLeftOperand().getNodeList()) {
+                distinct *= distinct(operand);
+            }
+            final double selected = Math.min(1, in.getRightOperandList().getNodeList().size() / distinct);
+            return in.isNegated() ? 1 - selected : selected;
+        }
+        if (condition instanceof BetweenOperatorNode) {
+            return BETWEEN_SELECTIVITY;
+        }
+        if (condition instanceof IsNullNode) {
+            return condition.getNodeType() == NodeTypes.IS_NULL_NODE ? NULL_SELECTIVITY : 1 - NULL_SELECTIVITY;
+        }
+        return DEFAULT_SELECTIVITY;
+    }
+
+    /**
+     * The distinct values of a column of a base table; 1 for anything else, leaving the other operand of a comparison to decide.
+     */
+    private double distinct(ValueNode operand) {
+        if (operand instanceof ColumnReference) {
+            final FromTable table = symbols.resolve((ColumnReference) operand);
+            if (table instanceof FromBaseTable) {
+                return statistics.getDistinct((FromBaseTable) table, ((ColumnReference) operand).getColumnName());
+            }
+            return Statistics.DEFAULT_DISTINCT;
+        }
+        return 1;
+    }
+
+    /**
+     * The fanout of an equality between columns of two tables of the block; 1 for other conjuncts.
+     */
+    private double fanout(ValueNode conjunct, Map<FromTable, Double> tables, Set<FromTable> joined) {
+        if (!(conjunct instanceof BinaryRelationalOperatorNode)
+                || !"=".equals(((BinaryRelationalOperatorNode) conjunct).getOperator())) {
+            return 1;
+        }
+        final ValueNode left = ((BinaryRelationalOperatorNode) conjunct).getLeftOperand();
+        final ValueNode right = ((BinaryRelationalOperatorNode) conjunct).getRightOperand();
+        if (!(left instanceof ColumnReference && right instanceof ColumnReference)) {
+            return 1;
+        }
+        final FromTable leftTable = symbols.resolve((ColumnReference) left);
+        final FromTable rightTable = symbols.resolve((ColumnReference) right);
+        if (leftTable == null || rightTable == null || leftTable == rightTable || !tables.containsKey(leftTable)
+                || !tables.containsKey(rightTable)) {
+            return 1;
+        }
+        joined.add(leftTable);
+        joined.add(rightTable);
+        return Math.max(tables.get(leftTable) / distinct(left), tables.get(rightTable) / distinct(right));
+    }
+
+    /**
+     * The rows the statement is estimated to return, or for INSERT, UPDATE and DELETE to write.
+     */
+    public double getEstimatedRows() {
+        return rows;
+    }
+
+    /**
+     * The rows of all the tables the statement reads.
+     */
+    public double getRowsScanned() {
+        return rowsScanned;
+    }
+
+    /**
+     * The greatest fanout of any join of the statement; 1 if it has none.
+     */
+    public double getJoinFanout() {
+        return joinFanout;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("CostEstimate[rows=%.1f, rowsScanned=%.0f, joinFanout=%.1f]", rows, rowsScanned, joinFanout);
+    }
+}
@@ -0,0 +1,114 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.QueryTreeNode;
+
+/**
+ * Matches a statement whose CostEstimate, from the given Statistics, is within a limit. Meant to be applied to the statement
+ * itself rather than within hasInQuery, which would estimate every subtree.
+ *
+ * For example, assertThat(statement, estimatedRowsScannedAtMost(1000000, statistics));
+ *
+ * @see CostEstimate
+ */
+public class CostMatcher extends QueryTreeNodeMatcher {
+
+    private enum Measure {
+        ROWS("an estimated result of at most %s rows"),
+        ROWS_SCANNED("an estimated scan of at most %s rows"),
+        JOIN_FANOUT("an estimated join fanout of at most %s");
+
+        private final String descr;
+
+        Measure(String descr) {
+            this.descr = descr;
+        }
+    }
+
+    private final Measure measure;
+    private final double limit;
+    private final Statistics statistics;
+
+    private CostMatcher(Measure measure, double limit, Statistics statistics) {
+        this.measure = measure;
+        this.limit = limit;
+        this.statistics = statistics;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { measure, limit, statistics };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText(String.format(measure.descr, limit == Math.rint(limit) ? String.valueOf((long) limit)
+                : String.valueOf(limit)));
+    }
+
+    @Override
+    protected void describeNodeMismatch(QueryTreeNode item, Description mismatchDescription) {
+        mismatchDescription.appendText("was estimated ").appendText(statistics.estimate(item).toString());
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        final CostEstimate estimate = statistics.estimate(item);
+        switch (measure) {
+        case ROWS:
+            return estimate.getEstimatedRows() <= limit;
+        case ROWS_SCANNED:
+            return estimate.getRowsScanned() <= limit;
+        default:
+            return estimate.getJoinFanout() <= limit;
+        }
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(statement, estimatedRowsAtMost(500, statistics));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> estimatedRowsAtMost(long rows, Statistics statistics) {
+        return new CostMatcher(Measure.ROWS, rows, statistics);
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(statement, estimatedRowsScannedAtMost(1000000, statistics));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> estimatedRowsScannedAtMost(long rows, Statistics statistics) {
+        return new CostMatcher(Measure.ROWS_SCANNED, rows, statistics);
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(statement, estimatedJoinFanoutAtMost(100, statistics));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> estimatedJoinFanoutAtMost(double fanout, Statistics statistics) {
+        return new CostMatcher(Measure.JOIN_FANOUT, fanout, statistics);
+    }
+}
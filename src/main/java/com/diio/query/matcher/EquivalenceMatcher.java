@@ -0,0 +1,91 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.CursorNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SQLParser;
+import com.akiban.sql.parser.SelectNode;
+
+/**
+ * Matches a subtree which is equivalent to a given SQL expression, without having to spell the expression out as nested matchers.
+ * Equivalence ignores identifier case, the order of commutative operands (AND, OR, =, &lt;&gt;, +, *), the grouping of associative
+ * operators, mirrored comparisons and the spelling of numeric literals. So equivalentTo("t.a = 3 AND t.b IN (1,2)") matches
+ * T.B IN (1, 2) AND 3.0 = T.A.
+ *
+ * The expected expression is parsed and hashed once. Each candidate subtree is compared by its structural hash, which is computed
+ * bottom-up for a whole statement the first time any of its nodes is looked at; only on equal hashes are the two trees walked.
+ *
+ * @see StructuralHash
+ */
+public class EquivalenceMatcher extends QueryTreeNodeMatcher {
+
+    private final String expression;
+    private final QueryTreeNode expected;
+    private final int expectedHash;
+
+    public EquivalenceMatcher(String expression) {
+        this(expression, parseExpression(expression));
+    }
+
+    public EquivalenceMatcher(String expression, QueryTreeNode expected) {
+        this.expression = expression;
+        this.expected = expected;
+        this.expectedHash = StructuralHash.of(expected);
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { expression };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("an expression equivalent to ").appendText(expression);
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        return StructuralHash.of(item) == expectedHash && StructuralHash.equivalent(expected, item);
+    }
+
+    /**
+     * Parses a standalone SQL expression by wrapping it in a WHERE clause, which the parser accepts for any expression.
+     */
+    static QueryTreeNode parseExpression(String expression) {
+        try {
+            final CursorNode cursor = (CursorNode) new SQLParser().parseStatement("SELECT * FROM t WHERE " + expression);
+            return ((SelectNode) cursor.getResultSetNode()).getWhereClause();
+        } catch (StandardException e) {
+            throw new IllegalArgumentException("Not a valid SQL expression: " + expression, e);
+        }
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(query, hasInQuery(where(equivalentTo("t.a = 3 AND t.b IN (1,2)"))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> equivalentTo(String expression) {
+        return new EquivalenceMatcher(expression);
+    }
+}
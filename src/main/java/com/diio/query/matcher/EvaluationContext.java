@@ -0,0 +1,483 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.SelfDescribing;
+
+import com.akiban.sql.parser.QueryTreeNode;
+
+/**
+ * State shared by all matchers taking part in one evaluation of an outermost QueryHasMatcher. Hamcrest matchers only return a
+ * boolean, so the context is handed to nested matchers through a thread local which is set for the duration of the evaluation.
+ *
+ * The context holds the bindings made by CaptureMatchers. Every fresh binding is a choice point: the first attempt at a node takes
+ * each binding as it comes, and when the pattern fails there, the node is replayed with the most recent binding that was taken
+ * refused instead, and so on until the pattern matches or there is no binding left to refuse. Only bindings still in force when
+ * the pattern fails are choice points: one undone because the subtree that made it failed anyway isn't worth refusing. That is a
+ * depth-first search over the live binding choices only; patterns without captures are evaluated exactly once per node.
+ *
+ * When near misses are asked for, composite matchers evaluate all of their parts instead of stopping at the first that fails, and
+ * report how many matched. The context keeps the closest few as the traversal goes, one per node.
+ *
+ * A RuleSet evaluation also memoizes its shared sub-patterns: each has a slot, and the first result of a slot at a node answers
+ * every later evaluation of any equal sub-pattern at that node. Results are only memoized while nested searches aren't
+ * confined to a query block, since confinement changes what a nested hasInQuery can see.
+ *
+ * Separately from the context, the first matcher applied to a node fixes that node as the statement for as long as it runs, so
+ * that names are resolved against the whole statement whichever matcher nested within it does the resolving, and whether or
+ * not a context is open.
+ *
+ * An evaluation may be limited by a Budget. Traversals and nested matchers count their visits against it, and once it runs out
+ * the next visit throws BudgetExhausted, which unwinds to the evaluation that set the budget.
+ *
+ * @see CaptureMatcher
+ */
+final class EvaluationContext {
+    private static final ThreadLocal<EvaluationContext> CURRENT = new ThreadLocal<EvaluationContext>();
+    private static final ThreadLocal<QueryTreeNode> STATEMENT = new ThreadLocal<QueryTreeNode>();
+
+    private static final BudgetExhausted EXHAUSTED = new BudgetExhausted();
+
+    /**
+     * How many memoizing or budgeted evaluations are open, on any thread; while there are none, nested matchers skip the thread
+     * local.
+     */
+    private static final AtomicInteger ACTIVE = new AtomicInteger();
+
+    private final Map<String, QueryTreeNode> bindings = new LinkedHashMap<String, QueryTreeNode>();
+    private final List<String> trail = new ArrayList<String>();
+    private final List<Integer> trailDecisions = new ArrayList<Integer>();
+    private final List<Boolean> decisions = new ArrayList<Boolean>();
+    private List<Boolean> forced = Collections.emptyList();
+    private final int nearMissLimit;
+    private final List<NearMiss> nearMisses = new ArrayList<NearMiss>();
+    private Map<Matcher<?>, Integer> slots;
+    private List<Map<QueryTreeNode, Boolean>> memo;
+    private Map<AdaptiveOrder, int[]> orders;
+    private QueryBlocks scope;
+    private QueryTreeNode searched;
+    private QueryTreeNode searchedParent;
+    private int scopeBlock;
+    private boolean active;
+    private boolean budgeted;
+    private long visitsLeft;
+    private AtomicLong sharedVisitsLeft;
+    private long deadline;
+
+    private EvaluationContext(int nearMissLimit) {
+        this.nearMissLimit = nearMissLimit;
+    }
+
+    /**
+     * The context of the evaluation in progress on this thread, or null if there is none.
+     */
+    static EvaluationContext current() {
+        return CURRENT.get();
+    }
+
+    /**
+     * The context of the evaluation in progress on this thread if it is collecting near misses, otherwise null.
+     */
+    static EvaluationContext scoring() {
+        final EvaluationContext context = CURRENT.get();
+        return context != null && context.nearMissLimit > 0 ? context : null;
+    }
+
+    /**
+     * @param nearMissLimit how many of the closest partial matches to keep; 0 to not score at all
+     */
+    static EvaluationContext open(int nearMissLimit) {
+        final EvaluationContext context = new EvaluationContext(nearMissLimit);
+        CURRENT.set(context);
+        return context;
+    }
+
+    /**
+     * Opens an evaluation which memoizes the matchers having a slot, per node.
+     *
+     * @param slots the slot of each shared matcher instance, by identity
+     */
+    static EvaluationContext openShared(Map<Matcher<?>, Integer> slots, int slotCount) {
+        final EvaluationContext context = open(0);
+        context.slots = slots;
+        context.memo = new ArrayList<Map<QueryTreeNode, Boolean>>(slotCount);
+        for (int i = 0; i < slotCount; i++) {
+            context.memo.add(null);
+        }
+        context.activate();
+        return context;
+    }
+
+    static void close() {
+        final EvaluationContext context = CURRENT.get();
+        if (context != null && context.active) {
+            ACTIVE.decrementAndGet();
+        }
+        CURRENT.remove();
+    }
+
+    private void activate() {
+        if (!active) {
+            active = true;
+            ACTIVE.incrementAndGet();
+        }
+    }
+
+    /**
+     * Fixes the node as the statement being evaluated on this thread, unless one already is. Returns whether it did, in which
+     * case the caller must call leave() when done.
+     */
+    static boolean enter(QueryTreeNode statement) {
+        if (STATEMENT.get() != null) {
+            return false;
+        }
+        STATEMENT.set(statement);
+        return true;
+    }
+
+    static void leave() {
+        STATEMENT.remove();
+    }
+
+    /**
+     * The node the outermost matcher on this thread was applied to, or null if no matcher is running.
+     */
+    static QueryTreeNode statement() {
+        return STATEMENT.get();
+    }
+
+    /**
+     * Whether every item matches, matching them on the threads of the common fork-join pool, the calling thread among them. Each
+     * item is matched outside whatever evaluation is in progress on this thread, in a context of its own and against the
+     * statement being evaluated, so that it runs alike on any thread. The visits of all of them are charged to the budget of the
+     * evaluation in progress, if it has one, and running out on any thread ends the whole evaluation.
+     */
+    static boolean allMatchInParallel(Matcher<?> matcher, List<?> items) {
+        final QueryTreeNode statement = STATEMENT.get();
+        final EvaluationContext caller = CURRENT.get();
+        final AtomicLong visitsLeft = caller != null && caller.budgeted ? new AtomicLong(caller.visitsLeft) : null;
+        final long deadline = visitsLeft != null ? caller.deadline : Long.MAX_VALUE;
+        try {
+            return items.parallelStream().allMatch(item -> detached(statement, matcher, item, visitsLeft, deadline));
+        } finally {
+            if (visitsLeft != null) {
+                caller.visitsLeft = visitsLeft.get();
+            }
+        }
+    }
+
+    /**
+     * Evaluates the matcher in a fresh context against the given statement, charging its visits to the shared count if there is
+     * one. What this thread was evaluating is put back afterwards.
+     */
+    private static boolean detached(QueryTreeNode statement, Matcher<?> matcher, Object item, AtomicLong visitsLeft,
+            long deadline) {
+        final EvaluationContext outerContext = CURRENT.get();
+        final QueryTreeNode outer = STATEMENT.get();
+        final EvaluationContext context = open(0);
+        if (visitsLeft != null) {
+            context.budgeted = true;
+            context.sharedVisitsLeft = visitsLeft;
+            context.deadline = deadline;
+            context.activate();
+        }
+        STATEMENT.set(statement);
+        try {
+            return matcher.matches(item);
+        } finally {
+            close();
+            if (outerContext != null) {
+                CURRENT.set(outerContext);
+            }
+            if (outer != null) {
+                STATEMENT.set(outer);
+            } else {
+                STATEMENT.remove();
+            }
+        }
+    }
+
+    QueryBlocks getScope() {
+        return scope;
+    }
+
+    int getScopeBlock() {
+        return scopeBlock;
+    }
+
+    /**
+     * Confines nested searches to one query block of the partition, or lifts the confinement if blocks is null.
+     */
+    void setScope(QueryBlocks blocks, int block) {
+        this.scope = blocks;
+        this.scopeBlock = block;
+    }
+
+    /**
+     * Whether a nested search may descend to the node, which it may unless the node is in another block than the one the
+     * evaluation is confined to.
+     */
+    boolean inScope(QueryTreeNode node) {
+        if (scope == null) {
+            return true;
+        }
+        final int block = scope.blockOf(node);
+        return block < 0 || block == scopeBlock;
+    }
+
+    QueryTreeNode getSearched() {
+        return searched;
+    }
+
+    QueryTreeNode getSearchedParent() {
+        return searchedParent;
+    }
+
+    /**
+     * Records the node a search is trying its matcher at, and the parent the search reached it from.
+     */
+    void setSearched(QueryTreeNode node, QueryTreeNode parent) {
+        this.searched = node;
+        this.searchedParent = parent;
+    }
+
+    /**
+     * The parent of the node if a search in the evaluation in progress is trying its matcher at the node, or null if the parent
+     * is not known.
+     */
+    static QueryTreeNode searchedParentOf(QueryTreeNode node) {
+        final EvaluationContext context = CURRENT.get();
+        return context != null && context.searched == node ? context.searchedParent : null;
+    }
+
+    /**
+     * Limits the rest of this evaluation to the budget, starting the clock now.
+     */
+    void limit(Budget budget) {
+        budgeted = true;
+        visitsLeft = budget.getMaxVisits();
+        deadline = budget.deadlineFromNow();
+        activate();
+    }
+
+    /**
+     * Counts a visit against the budget, if there is one.
+     *
+     * @throws BudgetExhausted once the budget has run out
+     */
+    void visit() {
+        if (budgeted) {
+            final long left = sharedVisitsLeft != null ? sharedVisitsLeft.decrementAndGet() : --visitsLeft;
+            if (left < 0 || deadline != Long.MAX_VALUE && (left & 0xFF) == 0 && System.nanoTime() > deadline) {
+                throw EXHAUSTED;
+            }
+        }
+    }
+
+    /**
+     * Evaluates a nested matcher, from the memo if it is shared in the evaluation in progress.
+     */
+    static boolean evaluate(Matcher<?> matcher, Object item) {
+        if (ACTIVE.get() > 0) {
+            final EvaluationContext context = CURRENT.get();
+            if (context != null) {
+                context.visit();
+                if (context.slots != null && context.scope == null && item instanceof QueryTreeNode) {
+                    final Integer slot = context.slots.get(matcher);
+                    if (slot != null) {
+                        return context.memoized(slot, matcher, (QueryTreeNode) item);
+                    }
+                }
+            }
+        }
+        return matcher.matches(item);
+    }
+
+    /**
+     * The result of the slot at the node, evaluating the matcher the first time. Results are kept per slot, so a node costs
+     * only an entry in the slots actually evaluated at it.
+     */
+    private boolean memoized(int slot, Matcher<?> matcher, QueryTreeNode node) {
+        Map<QueryTreeNode, Boolean> results = memo.get(slot);
+        if (results == null) {
+            results = new IdentityHashMap<QueryTreeNode, Boolean>();
+            memo.set(slot, results);
+        }
+        Boolean result = results.get(node);
+        if (result == null) {
+            result = matcher.matches(node);
+            results.put(node, result);
+        }
+        return result;
+    }
+
+    /**
+     * The order the adaptive matcher evaluates its parts in for the rest of this evaluation: the one it used first. Replays over
+     * binding choices number their decisions by the order they are made in, so re-sorting the parts in between would make the
+     * forced decisions land on the wrong captures.
+     */
+    int[] orderOf(AdaptiveOrder adaptive) {
+        if (orders == null) {
+            orders = new IdentityHashMap<AdaptiveOrder, int[]>();
+        }
+        int[] order = orders.get(adaptive);
+        if (order == null) {
+            order = adaptive.snapshot();
+            orders.put(adaptive, order);
+        }
+        return order;
+    }
+
+    QueryTreeNode bound(String name) {
+        return bindings.get(name);
+    }
+
+    boolean isBound(String name) {
+        return bindings.containsKey(name);
+    }
+
+    /**
+     * Offers a binding for a name which is not bound yet. Returns whether it was taken; when replaying, the decision is the one
+     * dictated by the backtracking rather than the default of taking it. Decisions are numbered in the order they are made, undone
+     * or not, so that a replay retraces the failed attempt exactly up to the binding it refuses.
+     */
+    boolean bind(String name, QueryTreeNode node) {
+        final int index = decisions.size();
+        final boolean take = index < forced.size() ? forced.get(index) : true;
+        decisions.add(take);
+        if (take) {
+            bindings.put(name, node);
+            trail.add(name);
+            trailDecisions.add(index);
+        }
+        return take;
+    }
+
+    int mark() {
+        return trail.size();
+    }
+
+    /**
+     * Undoes the bindings made since the given mark, e.g. by a subtree that ended up not matching. They stop being choice points.
+     */
+    void reset(int mark) {
+        while (trail.size() > mark) {
+            bindings.remove(trail.remove(trail.size() - 1));
+            trailDecisions.remove(trailDecisions.size() - 1);
+        }
+    }
+
+    Map<String, QueryTreeNode> getBindings() {
+        return Collections.unmodifiableMap(new LinkedHashMap<String, QueryTreeNode>(bindings));
+    }
+
+    /**
+     * Records how many of a composite matcher's parts matched the node, and returns whether they all did.
+     */
+    boolean score(QueryTreeNode node, SelfDescribing matcher, boolean... parts) {
+        int matched = 0;
+        for (boolean part : parts) {
+            if (part) {
+                matched++;
+            }
+        }
+        if (matched > 0 && matched < parts.length) {
+            offer(new NearMiss(node, matcher, matched, parts.length));
+        }
+        return matched == parts.length;
+    }
+
+    /**
+     * Keeps the candidate if it is among the closest seen so far, replacing a less close one for the same node. The list is kept
+     * closest first and is only ever a handful long.
+     */
+    private void offer(NearMiss candidate) {
+        for (int i = 0; i < nearMisses.size(); i++) {
+            if (nearMisses.get(i).getNode() == candidate.getNode()) {
+                if (nearMisses.get(i).compareCloseness(candidate) >= 0) {
+                    return;
+                }
+                nearMisses.remove(i);
+                break;
+            }
+        }
+        int position = nearMisses.size();
+        while (position > 0 && nearMisses.get(position - 1).compareCloseness(candidate) < 0) {
+            position--;
+        }
+        if (position < nearMissLimit) {
+            nearMisses.add(position, candidate);
+            if (nearMisses.size() > nearMissLimit) {
+                nearMisses.remove(nearMisses.size() - 1);
+            }
+        }
+    }
+
+    List<NearMiss> getNearMisses() {
+        return Collections.unmodifiableList(new ArrayList<NearMiss>(nearMisses));
+    }
+
+    /**
+     * Forgets all bindings and binding choices, before trying the pattern at another node.
+     */
+    void restart() {
+        forced = Collections.emptyList();
+        decisions.clear();
+        bindings.clear();
+        trail.clear();
+        trailDecisions.clear();
+    }
+
+    /**
+     * Prepares a replay which refuses the latest binding still in force when the attempt failed. Returns false when every live
+     * binding choice has been explored.
+     */
+    boolean nextAlternative() {
+        if (trailDecisions.isEmpty()) {
+            return false;
+        }
+        final int last = trailDecisions.get(trailDecisions.size() - 1);
+        forced = new ArrayList<Boolean>(decisions.subList(0, last));
+        forced.add(Boolean.FALSE);
+        decisions.clear();
+        bindings.clear();
+        trail.clear();
+        trailDecisions.clear();
+        return true;
+    }
+
+    /**
+     * Thrown when an evaluation runs out of budget. It carries no stack trace, and is caught by whichever evaluation set the
+     * budget.
+     */
+    static final class BudgetExhausted extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        private BudgetExhausted() {
+            super("evaluation budget exhausted", null, false, false);
+        }
+    }
+}
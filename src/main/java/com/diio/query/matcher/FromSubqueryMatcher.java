@@ -39,19 +39,24 @@ public class FromSubqueryMatcher extends QueryTreeNodeMatcher {
         this.tableName = tableName;
     }
     
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { submatcher, tableName };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("a FromSubquery named ").
             appendText(tableName).
             appendText(" having ").
-            appendDescriptionOf(submatcher);
+            appendText(descriptionOf(submatcher));
     }
     
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof FromSubquery) {
             if (tableName.equals(((FromSubquery)item).getExposedName())) {                
-                return QueryHasMatcher.hasInQuery(this.submatcher).matches(item);
+                return evaluate(QueryHasMatcher.hasInQuery(this.submatcher), item);
             }
         }
         return false;
@@ -23,7 +23,6 @@ import org.hamcrest.Factory;
 import org.hamcrest.Matcher;
 
 import com.akiban.sql.parser.JavaToSQLValueNode;
-import com.akiban.sql.parser.JavaValueNode;
 import com.akiban.sql.parser.QueryTreeNode;
 import com.akiban.sql.parser.StaticMethodCallNode;
 import com.akiban.sql.parser.TernaryOperatorNode;
@@ -51,6 +50,11 @@ public class FunctionMatcher extends QueryTreeNodeMatcher {
         this.orderedArgumentMatchers = orderedArgumentMatchers;
     }
     
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { functionName, orderedArgumentMatchers };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("function ").
@@ -66,33 +70,47 @@ public class FunctionMatcher extends QueryTreeNodeMatcher {
                     description.appendText(", ");
                 }
 
-                description.appendDescriptionOf(submatcher);
+                description.appendText(descriptionOf(submatcher));
             }
         }
     }
     
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
+        final String name;
+        final QueryTreeNode[] parameters;
         if (item instanceof JavaToSQLValueNode && ((JavaToSQLValueNode)item).getJavaValueNode() instanceof StaticMethodCallNode) {
             StaticMethodCallNode node = (StaticMethodCallNode) ((JavaToSQLValueNode)item).getJavaValueNode();
 
-            if (functionName.equalsIgnoreCase(node.getMethodName())) {
-                JavaValueNode[] parameters = node.getMethodParameters();
-
-                return matchesParameters(parameters);
-            }
+            name = node.getMethodName();
+            parameters = node.getMethodParameters();
         } else if (item instanceof TernaryOperatorNode) {
             TernaryOperatorNode node = (TernaryOperatorNode) item;
 
-            if (functionName.equalsIgnoreCase(node.getMethodName())) {
-                ValueNode[] parameters = new ValueNode[] {node.getReceiver(), node.getLeftOperand(), node.getRightOperand()};
-
-                return matchesParameters(parameters);
+            name = node.getMethodName();
+            parameters = new ValueNode[] {node.getReceiver(), node.getLeftOperand(), node.getRightOperand()};
+        } else {
+            return false;
+        }
 
-            }
+        final EvaluationContext scoring = EvaluationContext.scoring();
+        if (scoring != null) {
+            return scoring.score(item, this, scoreParameters(name, parameters));
         }
+        return functionName.equalsIgnoreCase(name) && matchesParameters(parameters);
+    }
 
-        return false;
+    /**
+     * The parts are the function name and each argument; an argument missing on either side counts as a part that didn't match.
+     */
+    private boolean[] scoreParameters(String name, QueryTreeNode[] parameters) {
+        final int arguments = orderedArgumentMatchers.length == 0 ? 0 : Math.max(orderedArgumentMatchers.length, parameters.length);
+        final boolean[] parts = new boolean[1 + arguments];
+        parts[0] = functionName.equalsIgnoreCase(name);
+        for (int i = 0; i < Math.min(orderedArgumentMatchers.length, parameters.length); i++) {
+            parts[i + 1] = evaluate(hasInQuery(orderedArgumentMatchers[i]), parameters[i]);
+        }
+        return parts;
     }
 
     private boolean matchesParameters(QueryTreeNode[] parameters) {
@@ -107,7 +125,7 @@ public class FunctionMatcher extends QueryTreeNodeMatcher {
         for (int i = 0; i < parameters.length; i++) {
             QueryTreeNode parameter = parameters[i];
 
-            if (!hasInQuery(orderedArgumentMatchers[i]).matches(parameter)) {
+            if (!evaluate(hasInQuery(orderedArgumentMatchers[i]), parameter)) {
                 return false;
             }
         }
@@ -42,34 +42,44 @@ public class InMatcher extends QueryTreeNodeMatcher {
         this.rightMatcher = rightMatcher;
     }
 
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { leftMatcher, rightMatcher };
+    }
+
     @Override
     public void describeTo(Description description) {
-        description.appendDescriptionOf(leftMatcher);
+        description.appendText(descriptionOf(leftMatcher));
         description.appendText(" IN (");
-        description.appendDescriptionOf(rightMatcher);
+        description.appendText(descriptionOf(rightMatcher));
         description.appendText(")");
     }
 
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof InListOperatorNode) {
             InListOperatorNode node = (InListOperatorNode) item;
-            ValueNodeList leftList = node.getLeftOperand().getNodeList();
-            if (leftList.size() == 1 && !(leftMatcher instanceof ListOfNodeMatcher)) {
-                //unwrap the (non-list) single valued left operand from the left list
-                if (!leftMatcher.matches(leftList.get(0))) {
-                    return false;
-                }
-            } else {
-                if (!leftMatcher.matches(leftList)) {
-                    return false;
-                }
+            final EvaluationContext scoring = EvaluationContext.scoring();
+            if (scoring != null) {
+                return scoring.score(node, this, leftMatches(node), evaluate(rightMatcher, node.getRightOperandList().getNodeList()));
+            }
+            if (!leftMatches(node)) {
+                return false;
             }
-            return rightMatcher.matches(node.getRightOperandList().getNodeList());
+            return evaluate(rightMatcher, node.getRightOperandList().getNodeList());
         }
         return false;
     }
 
+    private boolean leftMatches(InListOperatorNode node) {
+        ValueNodeList leftList = node.getLeftOperand().getNodeList();
+        if (leftList.size() == 1 && !(leftMatcher instanceof ListOfNodeMatcher)) {
+            //unwrap the (non-list) single valued left operand from the left list
+            return evaluate(leftMatcher, leftList.get(0));
+        }
+        return evaluate(leftMatcher, leftList);
+    }
+
     /**
      * Syntactic sugar.
      */
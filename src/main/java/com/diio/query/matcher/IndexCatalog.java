@@ -0,0 +1,179 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import com.akiban.sql.parser.QueryTreeNode;
+import com.diio.query.matcher.Statistics.Index;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * The indexes of each table, by their key columns in order, loaded from properties such as
+ *
+ *   bookings.index.ix_booking_date = booking_date
+ *   bookings.index.ix_customer = customer_id, booking_date
+ *
+ * Other properties are ignored, so a Statistics file can serve as a catalog too. The indexes of a table are held in a trie of
+ * their columns, so an index prefix usable by a set of predicates is found in one descent however many indexes share it.
+ * Catalogs are immutable, and remember the IndexUsage of each statement they have analyzed.
+ *
+ * @see IndexUsage
+ */
+public final class IndexCatalog {
+
+    private static final String INDEX = ".index.";
+
+    private final Map<String, List<Index>> indexes;
+    private final Map<String, Prefix> tries = new HashMap<String, Prefix>();
+    private final Cache<QueryTreeNode, IndexUsage> usages = CacheBuilder.newBuilder().weakKeys().build();
+
+    private IndexCatalog(Map<String, List<Index>> indexes) {
+        this.indexes = indexes;
+        for (Map.Entry<String, List<Index>> table : indexes.entrySet()) {
+            final Prefix root = new Prefix();
+            for (Index index : table.getValue()) {
+                Prefix node = root;
+                for (String column : index.getColumns()) {
+                    Prefix next = node.children.get(column);
+                    if (next == null) {
+                        next = new Prefix();
+                        node.children.put(column, next);
+                    }
+                    next.indexes.add(index.getName());
+                    node = next;
+                }
+            }
+            tries.put(table.getKey(), root);
+        }
+    }
+
+    public static IndexCatalog fromProperties(Properties properties) {
+        final Map<String, List<Index>> indexes = new LinkedHashMap<String, List<Index>>();
+        for (String name : properties.stringPropertyNames()) {
+            final String key = SymbolTable.normalize(name.trim());
+            final int index = key.indexOf(INDEX);
+            if (index <= 0) {
+                continue;
+            }
+            final List<String> columns = new ArrayList<String>();
+            for (String column : properties.getProperty(name).split(",")) {
+                if (!column.trim().isEmpty()) {
+                    columns.add(SymbolTable.normalize(column.trim()));
+                }
+            }
+            final String table = key.substring(0, index);
+            List<Index> ofTable = indexes.get(table);
+            if (ofTable == null) {
+                ofTable = new ArrayList<Index>();
+                indexes.put(table, ofTable);
+            }
+            ofTable.add(new Index(key.substring(index + INDEX.length()), columns));
+        }
+        for (Map.Entry<String, List<Index>> entry : indexes.entrySet()) {
+            entry.setValue(Collections.unmodifiableList(entry.getValue()));
+        }
+        return new IndexCatalog(indexes);
+    }
+
+    public static IndexCatalog load(Path file) throws IOException {
+        final Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * Whether the key of the property names an index rather than some other statistic.
+     */
+    static boolean isIndexKey(String key) {
+        return key.indexOf(INDEX) > 0;
+    }
+
+    /**
+     * The index usage of the statement, worked out on first use.
+     */
+    public IndexUsage analyze(final QueryTreeNode statement) {
+        try {
+            return usages.get(statement, () -> new IndexUsage(statement, this));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * The indexes of the table, by its schema qualified name if it has any by that, or else by its name.
+     */
+    public List<Index> getIndexes(String table) {
+        final List<Index> ofTable = indexes.get(SymbolTable.normalize(table));
+        if (ofTable == null && table.indexOf('.') >= 0) {
+            return getIndexes(table.substring(table.lastIndexOf('.') + 1));
+        }
+        return ofTable == null ? Collections.<Index>emptyList() : ofTable;
+    }
+
+    /**
+     * The indexes of the table with a key prefix that the equalities and ranges on its columns can use: a run of leading
+     * columns with equalities, optionally followed by one with a range. Columns are given normalized.
+     */
+    Set<String> usableIndexes(String table, Set<String> equalities, Set<String> ranges) {
+        Prefix root = tries.get(SymbolTable.normalize(table));
+        if (root == null && table.indexOf('.') >= 0) {
+            root = tries.get(SymbolTable.normalize(table.substring(table.lastIndexOf('.') + 1)));
+        }
+        if (root == null) {
+            return Collections.emptySet();
+        }
+        final Set<String> usable = new LinkedHashSet<String>();
+        collect(root, equalities, ranges, usable);
+        return usable;
+    }
+
+    private static void collect(Prefix node, Set<String> equalities, Set<String> ranges, Set<String> usable) {
+        for (Map.Entry<String, Prefix> child : node.children.entrySet()) {
+            if (equalities.contains(child.getKey())) {
+                usable.addAll(child.getValue().indexes);
+                collect(child.getValue(), equalities, ranges, usable);
+            } else if (ranges.contains(child.getKey())) {
+                usable.addAll(child.getValue().indexes);
+            }
+        }
+    }
+
+    /**
+     * A node of a table's trie: the indexes whose keys start with the columns on the path to it.
+     */
+    private static final class Prefix {
+        private final Map<String, Prefix> children = new HashMap<String, Prefix>();
+        private final List<String> indexes = new ArrayList<String>();
+    }
+}
@@ -0,0 +1,95 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.QueryTreeNode;
+import com.diio.query.matcher.IndexUsage.Access;
+
+/**
+ * Matches a statement by the indexes its table accesses can use, according to an IndexCatalog. Meant to be applied to the
+ * statement itself rather than within hasInQuery, which would analyze every subtree.
+ *
+ * For example, assertThat(statement, not(hasFullScanOf("bookings", catalog)));
+ *
+ * @see IndexUsage
+ */
+public class IndexMatcher extends QueryTreeNodeMatcher {
+
+    private final String tableName;
+    private final String indexName;
+    private final IndexCatalog catalog;
+
+    private IndexMatcher(String tableName, String indexName, IndexCatalog catalog) {
+        this.tableName = tableName;
+        this.indexName = indexName;
+        this.catalog = catalog;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { tableName, indexName, catalog };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        if (indexName == null) {
+            description.appendText("a full scan of ").appendText(tableName);
+        } else {
+            description.appendText("a read of ").appendText(tableName).appendText(" using index ").appendText(indexName);
+        }
+    }
+
+    @Override
+    protected void describeNodeMismatch(QueryTreeNode item, Description mismatchDescription) {
+        mismatchDescription.appendText("read ").appendText(catalog.analyze(item).toString());
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        for (Access access : catalog.analyze(item).getAccesses()) {
+            if (access.isOf(tableName)
+                    && (indexName == null ? access.isFullScan() : access.getUsableIndexes().contains(SymbolTable.normalize(indexName)))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Syntactic sugar! Matches a statement reading the table, by name or alias, with predicates that can use a prefix of the
+     * index's key.
+     *
+     * For example, assertThat(statement, usesIndexPrefix("bookings", "ix_booking_date", catalog));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> usesIndexPrefix(String table, String index, IndexCatalog catalog) {
+        return new IndexMatcher(table, index, catalog);
+    }
+
+    /**
+     * Syntactic sugar! Matches a statement reading the table, by name or alias, without predicates any of its indexes can use.
+     *
+     * For example, assertThat(statement, not(hasFullScanOf("bookings", catalog)));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> hasFullScanOf(String table, IndexCatalog catalog) {
+        return new IndexMatcher(table, null, catalog);
+    }
+}
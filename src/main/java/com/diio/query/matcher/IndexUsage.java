@@ -0,0 +1,206 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import com.akiban.sql.parser.BetweenOperatorNode;
+import com.akiban.sql.parser.BinaryRelationalOperatorNode;
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.FromBaseTable;
+import com.akiban.sql.parser.FromTable;
+import com.akiban.sql.parser.InListOperatorNode;
+import com.akiban.sql.parser.JoinNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.ValueNode;
+
+/**
+ * Which indexes each table access of a statement can use, from the indexes of an IndexCatalog. An index can be used by the
+ * conjuncts of the WHERE and ON clauses of the table's query block that compare a bare column of the table with something not
+ * depending on the table: equalities and INs for a run of leading key columns, then optionally a range or BETWEEN for the next
+ * one. A table access no index can be used for is a full scan.
+ *
+ * Worked out once per statement and catalog; see IndexCatalog.analyze().
+ *
+ * @see IndexMatcher
+ */
+public final class IndexUsage {
+
+    private final IndexCatalog catalog;
+    private final SymbolTable symbols;
+    private final List<Access> accesses = new ArrayList<Access>();
+
+    IndexUsage(QueryTreeNode statement, IndexCatalog catalog) {
+        this.catalog = catalog;
+        this.symbols = SymbolTable.of(statement);
+        walk(statement);
+    }
+
+    private void walk(QueryTreeNode node) {
+        if (node instanceof SelectNode) {
+            analyze((SelectNode) node);
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            walk(child);
+        }
+    }
+
+    private void analyze(SelectNode select) {
+        final Map<FromTable, Set<String>> equalities = new IdentityHashMap<FromTable, Set<String>>();
+        final Map<FromTable, Set<String>> ranges = new IdentityHashMap<FromTable, Set<String>>();
+        final List<FromBaseTable> tables = new ArrayList<FromBaseTable>();
+        final List<ValueNode> conjuncts = new ArrayList<ValueNode>();
+        for (FromTable item : select.getFromList()) {
+            collect(item, tables, conjuncts);
+        }
+        for (FromBaseTable table : tables) {
+            equalities.put(table, new HashSet<String>());
+            ranges.put(table, new HashSet<String>());
+        }
+        if (select.getWhereClause() != null) {
+            conjuncts.addAll(JoinGraph.conjuncts(select.getWhereClause()));
+        }
+        for (ValueNode conjunct : conjuncts) {
+            if (conjunct instanceof BinaryRelationalOperatorNode) {
+                final BinaryRelationalOperatorNode comparison = (BinaryRelationalOperatorNode) conjunct;
+                final Map<FromTable, Set<String>> kind = "=".equals(comparison.getOperator()) ? equalities
+                        : "<>".equals(comparison.getOperator()) ? null : ranges;
+                if (kind != null) {
+                    keyOn(comparison.getLeftOperand(), comparison.getRightOperand(), kind);
+                    keyOn(comparison.getRightOperand(), comparison.getLeftOperand(), kind);
+                }
+            } else if (conjunct instanceof InListOperatorNode && !((InListOperatorNode) conjunct).isNegated()
+                    && ((InListOperatorNode) conjunct).getLeftOperand().getNodeList().size() == 1) {
+                final InListOperatorNode in = (InListOperatorNode) conjunct;
+                keyOn(in.getLeftOperand().getNodeList().get(0), in.getRightOperandList(), equalities);
+            } else if (conjunct instanceof BetweenOperatorNode) {
+                final BetweenOperatorNode between = (BetweenOperatorNode) conjunct;
+                keyOn(between.getLeftOperand(), between.getRightOperandList(), ranges);
+            }
+        }
+        for (FromBaseTable table : tables) {
+            accesses.add(new Access(table, catalog.usableIndexes(Statistics.qualifiedName(table), equalities.get(table),
+                    ranges.get(table))));
+        }
+    }
+
+    /**
+     * Collects the base tables of an item of a FROM list, and the conjuncts of its ON clauses.
+     */
+    private static void collect(FromTable item, List<FromBaseTable> tables, List<ValueNode> conjuncts) {
+        if (item instanceof FromBaseTable) {
+            tables.add((FromBaseTable) item);
+        } else if (item instanceof JoinNode) {
+            final JoinNode join = (JoinNode) item;
+            collect((FromTable) join.getLeftResultSet(), tables, conjuncts);
+            collect((FromTable) join.getRightResultSet(), tables, conjuncts);
+            if (join.getJoinClause() != null) {
+                conjuncts.addAll(JoinGraph.conjuncts(join.getJoinClause()));
+            }
+        }
+    }
+
+    /**
+     * Records the operand as a key column of its table if it is a bare column of a table of the block, and the other side of
+     * the predicate doesn't depend on that table.
+     */
+    private void keyOn(QueryTreeNode operand, QueryTreeNode other, Map<FromTable, Set<String>> kind) {
+        if (!(operand instanceof ColumnReference)) {
+            return;
+        }
+        final FromTable table = symbols.resolve((ColumnReference) operand);
+        if (table != null && kind.containsKey(table) && !dependsOn(other, table)) {
+            kind.get(table).add(SymbolTable.normalize(((ColumnReference) operand).getColumnName()));
+        }
+    }
+
+    private boolean dependsOn(QueryTreeNode node, FromTable table) {
+        if (node instanceof ColumnReference) {
+            final FromTable owner = symbols.resolve((ColumnReference) node);
+            return owner == null || owner == table;
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            if (dependsOn(child, table)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Every access to a base table in the statement, subqueries included, in the order they appear.
+     */
+    public List<Access> getAccesses() {
+        return Collections.unmodifiableList(accesses);
+    }
+
+    @Override
+    public String toString() {
+        return accesses.toString();
+    }
+
+    /**
+     * An access to a base table, and the indexes it can use.
+     */
+    public static final class Access {
+        private final FromBaseTable table;
+        private final Set<String> usableIndexes;
+
+        Access(FromBaseTable table, Set<String> usableIndexes) {
+            this.table = table;
+            this.usableIndexes = Collections.unmodifiableSet(usableIndexes);
+        }
+
+        public FromBaseTable getTable() {
+            return table;
+        }
+
+        /**
+         * The indexes with a key prefix the predicates on the table can use.
+         */
+        public Set<String> getUsableIndexes() {
+            return usableIndexes;
+        }
+
+        public boolean isFullScan() {
+            return usableIndexes.isEmpty();
+        }
+
+        /**
+         * Whether the access is to a table with the given name or alias, which may be schema qualified.
+         */
+        boolean isOf(String name) {
+            final int period = name.indexOf('.');
+            final String tableName = period < 0 ? name : name.substring(period + 1);
+            if (period >= 0 && !name.substring(0, period).equalsIgnoreCase(SymbolTable.schemaOf(table))) {
+                return false;
+            }
+            return tableName.equalsIgnoreCase(SymbolTable.baseNameOf(table)) || tableName.equalsIgnoreCase(table.getCorrelationName());
+        }
+
+        @Override
+        public String toString() {
+            return Statistics.qualifiedName(table) + (isFullScan() ? " by full scan" : " by " + usableIndexes);
+        }
+    }
+}
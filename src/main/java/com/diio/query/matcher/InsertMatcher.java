@@ -0,0 +1,126 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.InsertNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.ResultColumnList;
+import com.akiban.sql.parser.TableName;
+
+/**
+ * Matches an INSERT by its target table and, optionally, its column list, read straight from the InsertNode. The rows being
+ * inserted are never looked at, so this costs the same for a bulk insert of ten thousand rows as for one; see ValuesMatcher
+ * for matching the rows. Meant to be applied to the statement itself rather than within hasInQuery, which would visit every
+ * row.
+ *
+ * For example, assertThat(statement, insertInto("bookings", columns("id", "booking_date")));
+ *
+ * @see ValuesMatcher
+ */
+public class InsertMatcher extends QueryTreeNodeMatcher {
+
+    private final String tableName;
+    private final String schemaName;
+    private final List<Matcher<QueryTreeNode>> columns;
+
+    /**
+     * @param columns matchers for the column list, in order; null to accept any columns
+     */
+    public InsertMatcher(String name, List<Matcher<QueryTreeNode>> columns) {
+        final int period = name.indexOf('.');
+        this.tableName = period < 0 ? name : name.substring(period + 1);
+        this.schemaName = period < 0 ? null : name.substring(0, period);
+        this.columns = columns == null ? null : new ArrayList<Matcher<QueryTreeNode>>(columns);
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { tableName, schemaName, columns };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("an insert into ");
+        if (schemaName != null) {
+            description.appendText(schemaName).appendText(".");
+        }
+        description.appendText(tableName);
+        if (columns != null) {
+            description.appendText(" of columns [");
+            for (int i = 0; i < columns.size(); i++) {
+                if (i > 0) {
+                    description.appendText(", ");
+                }
+                description.appendText(descriptionOf(columns.get(i)));
+            }
+            description.appendText("]");
+        }
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        if (!(item instanceof InsertNode)) {
+            return false;
+        }
+        final InsertNode insert = (InsertNode) item;
+        final TableName target = insert.getTargetTableName();
+        if (!tableName.equalsIgnoreCase(target.getTableName())
+                || schemaName != null && !schemaName.equalsIgnoreCase(target.getSchemaName())) {
+            return false;
+        }
+        if (columns == null) {
+            return true;
+        }
+        final ResultColumnList targetColumns = insert.getTargetColumnList();
+        if (targetColumns == null || targetColumns.size() != columns.size()) {
+            return false;
+        }
+        for (int i = 0; i < columns.size(); i++) {
+            if (!evaluate(columns.get(i), targetColumns.get(i).getReference())) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Syntactic sugar! Matches an insert into the table, which may be schema qualified, whatever its columns.
+     *
+     * For example, assertThat(statement, insertInto("bookings"));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> insertInto(String table) {
+        return new InsertMatcher(table, null);
+    }
+
+    /**
+     * Syntactic sugar! Matches an insert into the table naming exactly the given columns, in order.
+     *
+     * For example, assertThat(statement, insertInto("bookings", columns("id", "booking_date")));
+     */
+    @Factory
+    @SafeVarargs
+    public static Matcher<QueryTreeNode> insertInto(String table, Matcher<QueryTreeNode>... columns) {
+        return new InsertMatcher(table, listOf(columns));
+    }
+}
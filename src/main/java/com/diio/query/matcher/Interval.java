@@ -0,0 +1,170 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.LocalDateTime;
+import java.util.Objects;
+
+/**
+ * The range of values a WHERE clause allows a column, as far as its conjuncts say. Bounds are BigDecimals for numbers,
+ * LocalDateTimes for dates and timestamps, Strings for other literals, or null where the range is open.
+ *
+ * @see RangeMatcher
+ */
+public final class Interval {
+
+    /**
+     * The range of a column the WHERE clause doesn't constrain.
+     */
+    public static final Interval UNBOUNDED = new Interval(null, false, null, false);
+
+    private final Comparable<?> lower;
+    private final boolean lowerInclusive;
+    private final Comparable<?> upper;
+    private final boolean upperInclusive;
+
+    Interval(Comparable<?> lower, boolean lowerInclusive, Comparable<?> upper, boolean upperInclusive) {
+        this.lower = lower;
+        this.lowerInclusive = lowerInclusive;
+        this.upper = upper;
+        this.upperInclusive = upperInclusive;
+    }
+
+    static Interval atLeast(Comparable<?> value, boolean inclusive) {
+        return new Interval(value, inclusive, null, false);
+    }
+
+    static Interval atMost(Comparable<?> value, boolean inclusive) {
+        return new Interval(null, false, value, inclusive);
+    }
+
+    static Interval closed(Comparable<?> lower, Comparable<?> upper) {
+        return new Interval(lower, true, upper, true);
+    }
+
+    /**
+     * The values in both intervals. Where two bounds can't be compared, being of different kinds, the first interval's is kept.
+     */
+    Interval intersect(Interval other) {
+        final boolean takeLower = tighter(other.lower, other.lowerInclusive, lower, 1);
+        final boolean takeUpper = tighter(other.upper, other.upperInclusive, upper, -1);
+        return new Interval(takeLower ? other.lower : lower, takeLower ? other.lowerInclusive : lowerInclusive,
+                takeUpper ? other.upper : upper, takeUpper ? other.upperInclusive : upperInclusive);
+    }
+
+    /**
+     * Whether the candidate bound is tighter than the current one, tighter meaning greater for lower bounds (direction 1) and
+     * less for upper bounds (direction -1).
+     */
+    private static boolean tighter(Comparable<?> candidate, boolean candidateInclusive, Comparable<?> current, int direction) {
+        if (candidate == null) {
+            return false;
+        }
+        if (current == null) {
+            return true;
+        }
+        final int order = compare(candidate, current);
+        return order != Integer.MIN_VALUE && (order == direction || order == 0 && !candidateInclusive);
+    }
+
+    /**
+     * Compares values of the same kind; Integer.MIN_VALUE if either is null or they are of different kinds.
+     */
+    @SuppressWarnings({ "unchecked", "rawtypes" })
+    static int compare(Comparable<?> a, Comparable<?> b) {
+        if (a == null || b == null || a.getClass() != b.getClass()) {
+            return Integer.MIN_VALUE;
+        }
+        return Integer.signum(((Comparable) a).compareTo(b));
+    }
+
+    public Comparable<?> getLower() {
+        return lower;
+    }
+
+    public boolean isLowerInclusive() {
+        return lowerInclusive;
+    }
+
+    public Comparable<?> getUpper() {
+        return upper;
+    }
+
+    public boolean isUpperInclusive() {
+        return upperInclusive;
+    }
+
+    public boolean isBounded() {
+        return lower != null && upper != null;
+    }
+
+    /**
+     * Whether no value is in the interval, its bounds contradicting each other.
+     */
+    public boolean isEmpty() {
+        final int order = compare(lower, upper);
+        return order != Integer.MIN_VALUE && (order > 0 || order == 0 && !(lowerInclusive && upperInclusive));
+    }
+
+    /**
+     * The difference between the bounds of a numeric interval; null if it is unbounded or not numeric.
+     */
+    public BigDecimal getNumericSpan() {
+        if (isEmpty()) {
+            return BigDecimal.ZERO;
+        }
+        if (lower instanceof BigDecimal && upper instanceof BigDecimal) {
+            return ((BigDecimal) upper).subtract((BigDecimal) lower);
+        }
+        return null;
+    }
+
+    /**
+     * The time between the bounds of an interval of dates or timestamps; null if it is unbounded or not temporal.
+     */
+    public Duration getTimeSpan() {
+        if (isEmpty()) {
+            return Duration.ZERO;
+        }
+        if (lower instanceof LocalDateTime && upper instanceof LocalDateTime) {
+            return Duration.between((LocalDateTime) lower, (LocalDateTime) upper);
+        }
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof Interval)) {
+            return false;
+        }
+        final Interval that = (Interval) other;
+        return Objects.equals(lower, that.lower) && lowerInclusive == that.lowerInclusive
+                && Objects.equals(upper, that.upper) && upperInclusive == that.upperInclusive;
+    }
+
+    @Override
+    public int hashCode() {
+        return Objects.hash(lower, lowerInclusive, upper, upperInclusive);
+    }
+
+    @Override
+    public String toString() {
+        return (lower == null ? "(-inf" : (lowerInclusive ? "[" : "(") + lower) + ", "
+                + (upper == null ? "+inf)" : upper + (upperInclusive ? "]" : ")"));
+    }
+}
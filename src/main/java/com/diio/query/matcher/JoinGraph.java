@@ -0,0 +1,344 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import com.akiban.sql.parser.AndNode;
+import com.akiban.sql.parser.BinaryRelationalOperatorNode;
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.FromBaseTable;
+import com.akiban.sql.parser.FromTable;
+import com.akiban.sql.parser.FullOuterJoinNode;
+import com.akiban.sql.parser.HalfOuterJoinNode;
+import com.akiban.sql.parser.JoinNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.ResultSetNode;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.ValueNode;
+import com.diio.query.matcher.JoinMatcher.JoinType;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * The tables of a statement and the predicates joining them. Every base table in the FROM lists of the statement, subqueries
+ * included, is a vertex, found by its table name or its alias. Every conjunct of an ON clause that refers to columns of exactly
+ * two tables is an edge, as is every column-to-column equality in the conjuncts of a WHERE clause; joins without a predicate,
+ * such as CROSS JOIN or USING, connect the base tables on either side of the JOIN keyword.
+ *
+ * Columns are resolved to their tables by the statement's SymbolTable, so correlated subqueries join to their outer tables.
+ *
+ * The graph is built once per statement and remembered.
+ *
+ * @see JoinMatcher
+ */
+final class JoinGraph {
+    private static final Cache<QueryTreeNode, JoinGraph> GRAPHS = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final SymbolTable symbols;
+    private final Map<QueryTreeNode, Vertex> vertexOf = new IdentityHashMap<QueryTreeNode, Vertex>();
+    private final Map<String, List<Vertex>> byName = new HashMap<String, List<Vertex>>();
+    private final List<Edge> edges = new ArrayList<Edge>();
+
+    private JoinGraph(QueryTreeNode statement) {
+        symbols = SymbolTable.of(statement);
+        final List<JoinNode> joins = new ArrayList<JoinNode>();
+        final List<SelectNode> selects = new ArrayList<SelectNode>();
+        collect(statement, joins, selects);
+        for (JoinNode join : joins) {
+            final JoinType type = typeOf(join);
+            if (join.getJoinClause() != null) {
+                for (ValueNode conjunct : conjuncts(join.getJoinClause())) {
+                    connect(conjunct, type, join, false);
+                }
+            } else {
+                final Vertex left = adjacent(join.getLeftResultSet(), true);
+                final Vertex right = adjacent(join.getRightResultSet(), false);
+                if (left != null && right != null) {
+                    addEdge(new Edge(left, right, null, type, join));
+                }
+            }
+        }
+        for (SelectNode select : selects) {
+            if (select.getWhereClause() != null) {
+                for (ValueNode conjunct : conjuncts(select.getWhereClause())) {
+                    connect(conjunct, JoinType.INNER, null, true);
+                }
+            }
+        }
+    }
+
+    /**
+     * The graph of the statement, remembered unless the statement is a FROM list item: that would be part of its own graph and
+     * so keep its cache entry from ever being evicted.
+     */
+    static JoinGraph of(final QueryTreeNode statement) {
+        if (statement instanceof FromTable) {
+            return new JoinGraph(statement);
+        }
+        try {
+            return GRAPHS.get(statement, () -> new JoinGraph(statement));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    static JoinType typeOf(JoinNode join) {
+        if (join instanceof FullOuterJoinNode) {
+            return JoinType.FULL;
+        }
+        if (join instanceof HalfOuterJoinNode) {
+            return ((HalfOuterJoinNode) join).isRightOuterJoin() ? JoinType.RIGHT : JoinType.LEFT;
+        }
+        if (join.getJoinClause() == null && join.getUsingClause() == null && !join.isNaturalJoin()) {
+            return JoinType.CROSS;
+        }
+        return JoinType.INNER;
+    }
+
+    private void collect(QueryTreeNode node, List<JoinNode> joins, List<SelectNode> selects) {
+        if (node instanceof FromBaseTable) {
+            final Vertex vertex = new Vertex((FromBaseTable) node);
+            vertexOf.put(node, vertex);
+            index(vertex.tableName, vertex);
+            if (!vertex.exposedName.equals(vertex.tableName)) {
+                index(vertex.exposedName, vertex);
+            }
+        } else if (node instanceof JoinNode) {
+            joins.add((JoinNode) node);
+        } else if (node instanceof SelectNode) {
+            selects.add((SelectNode) node);
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            collect(child, joins, selects);
+        }
+    }
+
+    /**
+     * The base table of a join operand that sits next to the join: the operand itself, or for a nested join the right-most
+     * table of a left operand or the left-most table of a right one, as b in a NATURAL JOIN b NATURAL JOIN c. Null for derived
+     * tables.
+     */
+    private Vertex adjacent(ResultSetNode side, boolean rightMost) {
+        while (side instanceof JoinNode) {
+            side = rightMost ? ((JoinNode) side).getRightResultSet() : ((JoinNode) side).getLeftResultSet();
+        }
+        return vertexOf.get(side);
+    }
+
+    private void index(String name, Vertex vertex) {
+        List<Vertex> named = byName.get(name);
+        if (named == null) {
+            named = new ArrayList<Vertex>();
+            byName.put(name, named);
+        }
+        named.add(vertex);
+    }
+
+    /**
+     * The operands of the ANDs at the top of the condition, left to right.
+     */
+    static List<ValueNode> conjuncts(ValueNode condition) {
+        final List<ValueNode> conjuncts = new ArrayList<ValueNode>();
+        final Deque<ValueNode> pending = new ArrayDeque<ValueNode>();
+        pending.push(condition);
+        while (!pending.isEmpty()) {
+            final ValueNode next = pending.pop();
+            if (next instanceof AndNode) {
+                pending.push(((AndNode) next).getRightOperand());
+                pending.push(((AndNode) next).getLeftOperand());
+            } else {
+                conjuncts.add(next);
+            }
+        }
+        return conjuncts;
+    }
+
+    /**
+     * Adds an edge for the conjunct if it refers to columns of exactly two tables, and for WHERE clauses only if it is an
+     * equality of two columns.
+     */
+    private void connect(ValueNode conjunct, JoinType type, JoinNode join, boolean equalitiesOnly) {
+        if (equalitiesOnly && !(conjunct instanceof BinaryRelationalOperatorNode
+                && "=".equals(((BinaryRelationalOperatorNode) conjunct).getOperator())
+                && ((BinaryRelationalOperatorNode) conjunct).getLeftOperand() instanceof ColumnReference
+                && ((BinaryRelationalOperatorNode) conjunct).getRightOperand() instanceof ColumnReference)) {
+            return;
+        }
+        final Set<Vertex> referenced = new LinkedHashSet<Vertex>();
+        referencedTables(conjunct, referenced);
+        if (referenced.size() == 2) {
+            final List<Vertex> pair = new ArrayList<Vertex>(referenced);
+            addEdge(new Edge(pair.get(0), pair.get(1), conjunct, type, join));
+        }
+    }
+
+    private void referencedTables(QueryTreeNode node, Set<Vertex> referenced) {
+        if (node instanceof ColumnReference) {
+            final Vertex vertex = resolve((ColumnReference) node);
+            if (vertex != null) {
+                referenced.add(vertex);
+            }
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            referencedTables(child, referenced);
+        }
+    }
+
+    /**
+     * The base table a column belongs to, as resolved by the statement's SymbolTable; null if it can't be told or the column
+     * belongs to a derived table.
+     */
+    Vertex resolve(ColumnReference column) {
+        final FromTable table = symbols.resolve(column);
+        return table == null ? null : vertexOf.get(table);
+    }
+
+    private void addEdge(Edge edge) {
+        edges.add(edge);
+        edge.left.edges.add(edge);
+        edge.right.edges.add(edge);
+    }
+
+    /**
+     * The tables having the given name or alias.
+     */
+    List<Vertex> vertices(String name) {
+        final List<Vertex> named = byName.get(normalize(name));
+        return named == null ? Collections.<Vertex>emptyList() : named;
+    }
+
+    List<Edge> getEdges() {
+        return edges;
+    }
+
+    /**
+     * Whether some table named from is connected to some table named to by a chain of joins, in a breadth-first search over
+     * the adjacency lists.
+     */
+    boolean pathExists(String from, String to) {
+        final Set<Vertex> targets = Collections.newSetFromMap(new IdentityHashMap<Vertex, Boolean>());
+        targets.addAll(vertices(to));
+        final Set<Vertex> seen = Collections.newSetFromMap(new IdentityHashMap<Vertex, Boolean>());
+        final Deque<Vertex> pending = new ArrayDeque<Vertex>(vertices(from));
+        seen.addAll(pending);
+        while (!pending.isEmpty()) {
+            final Vertex next = pending.poll();
+            if (targets.contains(next)) {
+                return true;
+            }
+            for (Edge edge : next.edges) {
+                final Vertex other = edge.other(next);
+                if (seen.add(other)) {
+                    pending.add(other);
+                }
+            }
+        }
+        return false;
+    }
+
+    static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+
+    static final class Vertex {
+        private final FromBaseTable table;
+        private final String tableName;
+        private final String exposedName;
+        private final List<Edge> edges = new ArrayList<Edge>();
+
+        Vertex(FromBaseTable table) {
+            this.table = table;
+            this.tableName = normalize(table.getOrigTableName().getTableName());
+            this.exposedName = normalize(table.getExposedName());
+        }
+
+        FromBaseTable getTable() {
+            return table;
+        }
+
+        boolean isNamed(String name) {
+            final String normalized = normalize(name);
+            return tableName.equals(normalized) || exposedName.equals(normalized);
+        }
+
+        @Override
+        public String toString() {
+            return tableName.equals(exposedName) ? tableName : tableName + " " + exposedName;
+        }
+    }
+
+    static final class Edge {
+        private final Vertex left;
+        private final Vertex right;
+        private final ValueNode predicate;
+        private final JoinType type;
+        private final JoinNode join;
+
+        Edge(Vertex left, Vertex right, ValueNode predicate, JoinType type, JoinNode join) {
+            this.left = left;
+            this.right = right;
+            this.predicate = predicate;
+            this.type = type;
+            this.join = join;
+        }
+
+        Vertex other(Vertex vertex) {
+            return vertex == left ? right : left;
+        }
+
+        /**
+         * Whether the edge joins a table with one name to a table with the other, either way round.
+         */
+        boolean connects(String a, String b) {
+            return left.isNamed(a) && right.isNamed(b) || left.isNamed(b) && right.isNamed(a);
+        }
+
+        /**
+         * The conjunct joining the tables; null for joins without a predicate.
+         */
+        ValueNode getPredicate() {
+            return predicate;
+        }
+
+        JoinType getType() {
+            return type;
+        }
+
+        /**
+         * The JOIN the predicate is part of; null for conditions from a WHERE clause.
+         */
+        JoinNode getJoin() {
+            return join;
+        }
+
+        @Override
+        public String toString() {
+            return left + " " + type + " " + right;
+        }
+    }
+}
@@ -0,0 +1,164 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.JoinNode;
+import com.akiban.sql.parser.QueryTreeNode;
+
+/**
+ * Matches statements by how their tables are joined, answered from the statement's JoinGraph rather than by searching the
+ * tree. Tables are named by table name or alias, case-insensitively. Meant to be applied to the statement itself, whose graph
+ * is built once; joinType() instead matches a single JOIN node.
+ *
+ * For example, assertThat(statement, joins("orders", "customers", on(column("customer_id"))));
+ *
+ * @see JoinGraph
+ */
+public class JoinMatcher extends QueryTreeNodeMatcher {
+
+    public enum JoinType {
+        INNER,
+        LEFT,
+        RIGHT,
+        FULL,
+        CROSS
+    }
+
+    private enum Kind {
+        JOINS,
+        PATH,
+        TYPE
+    }
+
+    private final Kind kind;
+    private final String from;
+    private final String to;
+    private final Matcher<QueryTreeNode> on;
+    private final JoinType type;
+
+    private JoinMatcher(Kind kind, String from, String to, Matcher<QueryTreeNode> on, JoinType type) {
+        this.kind = kind;
+        this.from = from;
+        this.to = to;
+        this.on = on;
+        this.type = type;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { kind, from, to, on, type };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        switch (kind) {
+        case JOINS:
+            description.appendText("a statement joining ").appendText(from).appendText(" and ").appendText(to);
+            if (type != null) {
+                description.appendText(" with a ").appendText(type.name()).appendText(" join");
+            }
+            if (on != null) {
+                description.appendText(" on ").appendText(descriptionOf(on));
+            }
+            break;
+        case PATH:
+            description.appendText("a statement with a chain of joins from ").appendText(from).appendText(" to ").appendText(to);
+            break;
+        default:
+            description.appendText("a ").appendText(type.name()).appendText(" join");
+        }
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        switch (kind) {
+        case JOINS:
+            for (JoinGraph.Edge edge : JoinGraph.of(item).getEdges()) {
+                if (edge.connects(from, to) && (type == null || edge.getType() == type)
+                        && (on == null || edge.getPredicate() != null && evaluate(on, edge.getPredicate()))) {
+                    return true;
+                }
+            }
+            return false;
+        case PATH:
+            return JoinGraph.of(item).pathExists(from, to);
+        default:
+            return item instanceof JoinNode && JoinGraph.typeOf((JoinNode) item) == type;
+        }
+    }
+
+    /**
+     * Syntactic sugar! Matches a statement in which the two tables are joined directly, by a JOIN or a WHERE equality.
+     *
+     * For example, assertThat(query, joins("orders", "customers"));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> joins(String table, String otherTable) {
+        return new JoinMatcher(Kind.JOINS, table, otherTable, null, null);
+    }
+
+    /**
+     * Syntactic sugar! Matches a statement in which the two tables are joined directly by a predicate matching the given
+     * matcher, such as one made with on().
+     *
+     * For example, assertThat(query, joins("o", "c", on(equalTo(column("o", "customer_id"), column("c", "id")))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> joins(String table, String otherTable, Matcher<QueryTreeNode> predicate) {
+        return new JoinMatcher(Kind.JOINS, table, otherTable, predicate, null);
+    }
+
+    /**
+     * Syntactic sugar! Matches a statement in which the two tables are joined directly by a join of the given type.
+     *
+     * For example, assertThat(query, joins("orders", "refunds", JoinType.LEFT));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> joins(String table, String otherTable, JoinType type) {
+        return new JoinMatcher(Kind.JOINS, table, otherTable, null, type);
+    }
+
+    /**
+     * Syntactic sugar for a join predicate having a match somewhere in it, for use with joins().
+     */
+    public static Matcher<QueryTreeNode> on(Matcher<QueryTreeNode> matcher) {
+        return QueryHasMatcher.hasInQuery(matcher);
+    }
+
+    /**
+     * Syntactic sugar! Matches a statement in which the two tables are connected by some chain of joins.
+     *
+     * For example, assertThat(query, joinPathExists("orders", "regions"));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> joinPathExists(String table, String otherTable) {
+        return new JoinMatcher(Kind.PATH, table, otherTable, null, null);
+    }
+
+    /**
+     * Syntactic sugar! Matches a JOIN node of the given type.
+     *
+     * For example, assertThat(query, hasInQuery(joinType(JoinType.LEFT)));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> joinType(JoinType type) {
+        return new JoinMatcher(Kind.TYPE, null, null, null, type);
+    }
+}
@@ -15,7 +15,10 @@
  */
 package com.diio.query.matcher;
 
-import java.util.Iterator;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
 
 import org.hamcrest.Description;
 import org.hamcrest.Factory;
@@ -23,8 +26,6 @@ import org.hamcrest.Matcher;
 
 import com.akiban.sql.parser.QueryTreeNode;
 import com.akiban.sql.parser.QueryTreeNodeList;
-import com.google.common.collect.Iterators;
-import com.google.common.collect.UnmodifiableIterator;
 
 /**
  * Used to match whether subtrees under a QueryTreeNodeList match a set of matchers in order. There are three possible semantics in order
@@ -53,15 +54,41 @@ public class ListOfNodeMatcher extends QueryTreeNodeMatcher {
 
     private final MatchType matchType;
 
+    /** Each distinct submatcher wrapped in a QueryHasMatcher, built once rather than per node. */
+    private final QueryHasMatcher[] distinctNodeMatchers;
+
+    /** Index into distinctNodeMatchers for each submatcher. */
+    private final int[] distinctIndexes;
+
     public ListOfNodeMatcher(Matcher<QueryTreeNode>[] submatchers, MatchType howToMatch) {
         this.submatchers = submatchers;
         matchType = howToMatch;
+
+        final List<Matcher<QueryTreeNode>> distinct = new ArrayList<Matcher<QueryTreeNode>>();
+        distinctIndexes = new int[submatchers.length];
+        for (int i = 0; i < submatchers.length; i++) {
+            int slot = distinct.indexOf(submatchers[i]);
+            if (slot < 0) {
+                slot = distinct.size();
+                distinct.add(submatchers[i]);
+            }
+            distinctIndexes[i] = slot;
+        }
+        distinctNodeMatchers = new QueryHasMatcher[distinct.size()];
+        for (int i = 0; i < distinctNodeMatchers.length; i++) {
+            distinctNodeMatchers[i] = QueryHasMatcher.hasInQuery(distinct.get(i));
+        }
     }
 
     public Matcher<QueryTreeNode>[] getSubMatchers() {
         return submatchers;
     }
 
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { submatchers, matchType };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("[");
@@ -70,53 +97,121 @@ public class ListOfNodeMatcher extends QueryTreeNodeMatcher {
             if (i > 0) {
                 description.appendText(", ");
             }
-            description.appendDescriptionOf(matcher);
+            description.appendText(descriptionOf(matcher));
         }
         description.appendText("] ");
         description.appendText(matchType.descr);
     }
 
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof QueryTreeNodeList) {
-            @SuppressWarnings("unchecked")
-            UnmodifiableIterator<Matcher<QueryTreeNode>> matcherIterator = Iterators.forArray(submatchers);
-
-            if (!matcherIterator.hasNext()) {
+            if (submatchers.length == 0) {
                 //degenerate case -- no specified submatcher matches everything
                 return true;
             }
-            Matcher<QueryTreeNode> nextMatcher = matcherIterator.next();
 
             @SuppressWarnings("unchecked")
-            final Iterator<QueryTreeNode> nodeListIterator = ((QueryTreeNodeList<QueryTreeNode>)item).iterator();
-
-            QueryTreeNode nextNode;
-
-            while (nodeListIterator.hasNext()) {
-                nextNode = nodeListIterator.next();
-                if (QueryHasMatcher.hasInQuery(nextMatcher).matches(nextNode)) {
-                    if (matcherIterator.hasNext()) {
-                        nextMatcher = matcherIterator.next();
-                    } else {
-                        return (matchType != MatchType.EXACT_SEQUENCE) || !nodeListIterator.hasNext();
-                    }
-                } else if (matchType == MatchType.EXACT_SEQUENCE) {
-                    return false;
-                } else if (matchType == MatchType.SUBSEQUENCE_NO_GAPS) {
-                    @SuppressWarnings("unchecked")
-                    UnmodifiableIterator<Matcher<QueryTreeNode>> newMatcherIterator = Iterators.forArray(submatchers);
-
-                    //on the next iteration, pretend we haven't matched anything yet, even if we have
-                    matcherIterator = newMatcherIterator;
-
-                    nextMatcher = matcherIterator.next();
+            final QueryTreeNodeList<QueryTreeNode> nodeList = (QueryTreeNodeList<QueryTreeNode>) item;
+            final MemoizedResults results = new MemoizedResults();
+
+            switch (matchType) {
+            case ALLOWING_GAPS:
+                return matchesAllowingGaps(nodeList, results);
+            case SUBSEQUENCE_NO_GAPS:
+                return matchesSubsequence(nodeList, results);
+            case EXACT_SEQUENCE:
+                return matchesExactSequence(nodeList, results);
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Greedily matches each submatcher against the earliest node it can; taking the earliest match never rules out a later one,
+     * so a single pass suffices.
+     */
+    private boolean matchesAllowingGaps(QueryTreeNodeList<QueryTreeNode> nodeList, MemoizedResults results) {
+        int next = 0;
+        for (QueryTreeNode node : nodeList) {
+            results.reset(node);
+            if (results.matches(next) && ++next == submatchers.length) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Finds the submatchers as a contiguous run of nodes in a single pass. Since the submatchers are predicates rather than symbols, a
+     * KMP failure table can't be derived from them up front; instead this keeps the set of submatcher prefixes that match the nodes
+     * ending at the current position (the bit-parallel "shift-and" formulation of the same automaton). Each prefix is only extended when
+     * it is still alive, so overlapping prefixes are never lost and no node is ever re-read.
+     */
+    private boolean matchesSubsequence(QueryTreeNodeList<QueryTreeNode> nodeList, MemoizedResults results) {
+        final int last = submatchers.length - 1;
+        BitSet alive = new BitSet(submatchers.length);
+        BitSet next = new BitSet(submatchers.length);
+
+        for (QueryTreeNode node : nodeList) {
+            results.reset(node);
+            next.clear();
+            for (int i = alive.nextSetBit(0); i >= 0 && i < last; i = alive.nextSetBit(i + 1)) {
+                if (results.matches(i + 1)) {
+                    next.set(i + 1);
                 }
             }
+            if (results.matches(0)) {
+                next.set(0);
+            }
+            if (next.get(last)) {
+                return true;
+            }
+
+            final BitSet swap = alive;
+            alive = next;
+            next = swap;
         }
         return false;
     }
 
+    private boolean matchesExactSequence(QueryTreeNodeList<QueryTreeNode> nodeList, MemoizedResults results) {
+        if (nodeList.size() != submatchers.length) {
+            return false;
+        }
+        for (int i = 0; i < submatchers.length; i++) {
+            results.reset(nodeList.get(i));
+            if (!results.matches(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Results of the submatchers against the node currently being looked at. Submatchers which are equal to one another share a slot,
+     * so repeated submatchers (e.g. the same column listed twice) only ever search a given node once.
+     */
+    private class MemoizedResults {
+        private final Boolean[] results = new Boolean[distinctNodeMatchers.length];
+        private QueryTreeNode node;
+
+        void reset(QueryTreeNode currentNode) {
+            node = currentNode;
+            Arrays.fill(results, null);
+        }
+
+        boolean matches(int submatcherIndex) {
+            final int slot = distinctIndexes[submatcherIndex];
+            Boolean result = results[slot];
+            if (result == null) {
+                result = evaluate(distinctNodeMatchers[slot], node);
+                results[slot] = result;
+            }
+            return result;
+        }
+    }
+
     @Factory
     @SafeVarargs
     public static ListOfNodeMatcher ordered(@SuppressWarnings("unchecked") Matcher<QueryTreeNode>... nodeMatchers) {
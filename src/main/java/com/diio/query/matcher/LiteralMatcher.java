@@ -59,18 +59,30 @@ public class LiteralMatcher<T> extends QueryTreeNodeMatcher {
         this.checkSingleCharLiteral = checkSingleCharLiteral;
     }
 
+    /**
+     * The exact literal value this matcher looks for, or null if it delegates to a nested matcher instead.
+     */
+    T getLiteral() {
+        return literal;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { literal, matcher, checkSingleCharLiteral };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("a literal with value ");
         if (literal != null) {
             description.appendText(literal.toString());
         } else {
-            description.appendDescriptionOf(matcher);
+            description.appendText(descriptionOf(matcher));
         }
     }
 
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         final QueryTreeNode checkThisItem;
         if (checkSingleCharLiteral && item instanceof SQLToJavaValueNode) {
             checkThisItem = ((SQLToJavaValueNode) item).getSQLValueNode();
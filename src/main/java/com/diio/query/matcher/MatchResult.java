@@ -0,0 +1,181 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import com.akiban.sql.parser.QueryTreeNode;
+
+/**
+ * The outcome of evaluating a QueryHasMatcher against a statement: whether anything matched, the first node that did, the
+ * witness path from the statement root down to that node and any captured bindings. All of it comes out of the same traversal
+ * that decided the match.
+ *
+ * @see QueryHasMatcher#evaluate(QueryTreeNode)
+ */
+public final class MatchResult {
+    private static final MatchResult NO_MATCH = new MatchResult(false, Collections.<QueryTreeNode>emptyList(),
+            Collections.<String, QueryTreeNode>emptyMap(), Collections.<NearMiss>emptyList(), null);
+
+    private final boolean matches;
+    private final List<QueryTreeNode> path;
+    private final Map<String, QueryTreeNode> bindings;
+    private final List<NearMiss> nearMisses;
+    private final String exhaustedBy;
+
+    private MatchResult(boolean matches, List<QueryTreeNode> path, Map<String, QueryTreeNode> bindings, List<NearMiss> nearMisses,
+            String exhaustedBy) {
+        this.matches = matches;
+        this.path = path;
+        this.bindings = bindings;
+        this.nearMisses = nearMisses;
+        this.exhaustedBy = exhaustedBy;
+    }
+
+    static MatchResult noMatch() {
+        return NO_MATCH;
+    }
+
+    /**
+     * @param nearMisses the closest partial matches, closest first
+     */
+    static MatchResult noMatch(List<NearMiss> nearMisses) {
+        return new MatchResult(false, Collections.<QueryTreeNode>emptyList(), Collections.<String, QueryTreeNode>emptyMap(),
+                Collections.unmodifiableList(nearMisses), null);
+    }
+
+    /**
+     * @param exhaustedBy the rule whose evaluation ran out of budget
+     */
+    static MatchResult undecided(String exhaustedBy) {
+        return new MatchResult(false, Collections.<QueryTreeNode>emptyList(), Collections.<String, QueryTreeNode>emptyMap(),
+                Collections.<NearMiss>emptyList(), exhaustedBy);
+    }
+
+    /**
+     * @param path the nodes from the root down to and including the matched node
+     * @param bindings the nodes captured by name while matching
+     */
+    static MatchResult matched(List<QueryTreeNode> path, Map<String, QueryTreeNode> bindings) {
+        return new MatchResult(true, Collections.unmodifiableList(path), bindings, Collections.<NearMiss>emptyList(), null);
+    }
+
+    /**
+     * Whether something matched; false both when nothing did and when the evaluation ran out of budget before deciding.
+     */
+    public boolean matches() {
+        return matches;
+    }
+
+    public Outcome getOutcome() {
+        return matches ? Outcome.MATCHED : exhaustedBy != null ? Outcome.UNDECIDED : Outcome.NO_MATCH;
+    }
+
+    /**
+     * Whether the evaluation ran out of budget before it could decide.
+     *
+     * @see QueryHasMatcher#withBudget(Budget)
+     */
+    public boolean isUndecided() {
+        return exhaustedBy != null;
+    }
+
+    /**
+     * The description of the rule that was being evaluated when the budget ran out; null if the evaluation was decided.
+     */
+    public String getExhaustedBy() {
+        return exhaustedBy;
+    }
+
+    /**
+     * The first node, in the parser's traversal order, that matched; null if nothing did.
+     */
+    public QueryTreeNode getMatch() {
+        return path.isEmpty() ? null : path.get(path.size() - 1);
+    }
+
+    /**
+     * The nodes from the statement root down to the matched node, both included; empty if nothing matched.
+     */
+    public List<QueryTreeNode> getPath() {
+        return path;
+    }
+
+    /**
+     * The nodes bound by CaptureMatchers in the successful match, by capture name; empty if nothing matched.
+     */
+    public Map<String, QueryTreeNode> getBindings() {
+        return bindings;
+    }
+
+    /**
+     * The node bound to the given capture name, or null if there is none.
+     */
+    public QueryTreeNode getBinding(String name) {
+        return bindings.get(name);
+    }
+
+    /**
+     * The closest partial matches, closest first, if nothing matched and near misses were asked for; otherwise empty.
+     *
+     * @see QueryHasMatcher#withNearMisses(int)
+     */
+    public List<NearMiss> getNearMisses() {
+        return nearMisses;
+    }
+
+    /**
+     * The offset of the first character of the matched fragment in the SQL the statement was parsed from; -1 if nothing matched
+     * or the fragment can't be located.
+     *
+     * @see SourceSpans
+     */
+    public int getBeginOffset(String sql) {
+        final int[] span = span(sql);
+        return span == null ? -1 : span[0];
+    }
+
+    /**
+     * The offset of the last character of the matched fragment, inclusive; -1 if nothing matched or it can't be located.
+     */
+    public int getEndOffset(String sql) {
+        final int[] span = span(sql);
+        return span == null ? -1 : span[1];
+    }
+
+    /**
+     * Slices the matched fragment out of the SQL the statement was parsed from, using the parser's positions rather than
+     * unparsing anything. Returns null if nothing matched or the fragment can't be located.
+     */
+    public String sourceText(String sql) {
+        final int[] span = span(sql);
+        return span == null ? null : sql.substring(span[0], span[1] + 1);
+    }
+
+    private int[] span(String sql) {
+        return matches ? SourceSpans.of(getMatch(), sql) : null;
+    }
+
+    @Override
+    public String toString() {
+        if (exhaustedBy != null) {
+            return "MatchResult[undecided, budget exhausted by " + exhaustedBy + "]";
+        }
+        return matches ? "MatchResult[" + getMatch() + " at depth " + (path.size() - 1) + "]" : "MatchResult[no match]";
+    }
+}
@@ -0,0 +1,147 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.io.Writer;
+
+import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.unparser.NodeToString;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Renders parse trees for mismatch descriptions. Rendering only happens when a mismatch is actually described, is capped at a
+ * configurable number of characters, and is remembered per node so that describing the same statement again costs nothing.
+ *
+ * Both renderers recurse over the tree, so a pathologically nested statement renders as a placeholder rather than failing the
+ * description with a StackOverflowError.
+ *
+ * The cap defaults to the value of the system property hamcrest.sql.mismatch.maxLength, or 4096 characters.
+ */
+final class MismatchRendering {
+    static final String MAX_LENGTH_PROPERTY = "hamcrest.sql.mismatch.maxLength";
+
+    private static final String TRUNCATED = "... (truncated)";
+
+    private static final String TOO_DEEP = "(too deeply nested to render)";
+
+    private static volatile int maxLength = Integer.getInteger(MAX_LENGTH_PROPERTY, 4096);
+
+    private static final Cache<QueryTreeNode, String> TREES = CacheBuilder.newBuilder().weakKeys().build();
+
+    private static final Cache<QueryTreeNode, String> SQL = CacheBuilder.newBuilder().weakKeys().build();
+
+    private MismatchRendering() {
+    }
+
+    static void setMaxLength(int length) {
+        if (length <= 0) {
+            throw new IllegalArgumentException("Maximum mismatch length must be positive, was " + length);
+        }
+        maxLength = length;
+        TREES.invalidateAll();
+        SQL.invalidateAll();
+    }
+
+    static int getMaxLength() {
+        return maxLength;
+    }
+
+    /**
+     * The parser's debugging printout of the subtree, cut off once it reaches the maximum length.
+     */
+    static String tree(QueryTreeNode node) {
+        String rendered = TREES.getIfPresent(node);
+        if (rendered == null) {
+            final CappedWriter writer = new CappedWriter(maxLength);
+            try {
+                node.treePrint(writer);
+            } catch (Truncated e) {
+                writer.out.append(TRUNCATED);
+            } catch (StackOverflowError e) {
+                // Safe to recover from: the overflow unwinds the renderer's own recursion, which holds no locks and leaves
+                // nothing half-updated but the writer being thrown away here.
+                writer.out.setLength(0);
+                writer.out.append(TOO_DEEP);
+            }
+            rendered = writer.out.toString();
+            TREES.put(node, rendered);
+        }
+        return rendered;
+    }
+
+    /**
+     * The subtree unparsed back to SQL, cut down to the maximum length; null if it can't be unparsed.
+     */
+    static String sql(QueryTreeNode node) {
+        String rendered = SQL.getIfPresent(node);
+        if (rendered == null) {
+            try {
+                rendered = cap(new NodeToString().toString(node));
+            } catch (StandardException e) {
+                return null;
+            } catch (StackOverflowError e) {
+                // As above, only the unparser's recursion is abandoned, and the text it was building goes with it.
+                rendered = TOO_DEEP;
+            }
+            SQL.put(node, rendered);
+        }
+        return rendered;
+    }
+
+    static String cap(String text) {
+        return text.length() <= maxLength ? text : text.substring(0, maxLength) + TRUNCATED;
+    }
+
+    /**
+     * Thrown from the writer to abandon the parser's printout once there is enough of it.
+     */
+    private static class Truncated extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        Truncated() {
+            super(null, null, false, false);
+        }
+    }
+
+    private static class CappedWriter extends Writer {
+        private final StringBuilder out = new StringBuilder();
+        private final int cap;
+
+        CappedWriter(int cap) {
+            this.cap = cap;
+        }
+
+        @Override
+        public void write(char[] buffer, int offset, int length) {
+            final int room = cap - out.length();
+            if (length > room) {
+                out.append(buffer, offset, room);
+                throw new Truncated();
+            }
+            out.append(buffer, offset, length);
+        }
+
+        @Override
+        public void flush() {
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
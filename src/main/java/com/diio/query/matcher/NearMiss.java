@@ -0,0 +1,73 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import org.hamcrest.SelfDescribing;
+
+import com.akiban.sql.parser.QueryTreeNode;
+
+/**
+ * A subtree which a composite matcher partly matched, e.g. the column of a comparison matched but the literal differed. Collected
+ * while a QueryHasMatcher with near misses enabled runs, so that failures can point at the closest candidates.
+ *
+ * @see QueryHasMatcher#withNearMisses(int)
+ */
+public final class NearMiss {
+    private final QueryTreeNode node;
+    private final SelfDescribing matcher;
+    private final int matchedParts;
+    private final int totalParts;
+
+    NearMiss(QueryTreeNode node, SelfDescribing matcher, int matchedParts, int totalParts) {
+        this.node = node;
+        this.matcher = matcher;
+        this.matchedParts = matchedParts;
+        this.totalParts = totalParts;
+    }
+
+    public QueryTreeNode getNode() {
+        return node;
+    }
+
+    /**
+     * The composite matcher which partly matched the node.
+     */
+    public SelfDescribing getMatcher() {
+        return matcher;
+    }
+
+    public int getMatchedParts() {
+        return matchedParts;
+    }
+
+    public int getTotalParts() {
+        return totalParts;
+    }
+
+    /**
+     * Orders near misses from the closest: by the fraction of parts matched, then by the number of parts matched.
+     */
+    int compareCloseness(NearMiss other) {
+        final int byFraction = Long.compare((long) matchedParts * other.totalParts, (long) other.matchedParts * totalParts);
+        return byFraction != 0 ? byFraction : Integer.compare(matchedParts, other.matchedParts);
+    }
+
+    @Override
+    public String toString() {
+        return MismatchRendering.sql(node) + " matched " + matchedParts + " of " + totalParts + " parts of "
+                + QueryTreeNodeMatcher.descriptionOf(matcher);
+    }
+}
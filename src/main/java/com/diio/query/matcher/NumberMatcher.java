@@ -60,6 +60,21 @@ public class NumberMatcher<T extends Number> extends TypeSafeMatcher<T> {
         description.appendText(" number of value " + number);
     }
 
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof NumberMatcher)) {
+            return false;
+        }
+        final NumberMatcher<?> that = (NumberMatcher<?>) other;
+        return number.equals(that.number) && strict == that.strict
+                && (error == null ? that.error == null : error.equals(that.error));
+    }
+
+    @Override
+    public int hashCode() {
+        return (number.hashCode() * 31 + (strict ? 1 : 0)) * 31 + (error == null ? 0 : error.hashCode());
+    }
+
     @Override
     protected boolean matchesSafely(T item) {
         if (isIntegral(number) && isIntegral(item)) {
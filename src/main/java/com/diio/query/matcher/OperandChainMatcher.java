@@ -0,0 +1,300 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Deque;
+import java.util.List;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.BinaryOperatorNode;
+import com.akiban.sql.parser.QueryTreeNode;
+
+/**
+ * Matches chains of an associative operator (AND, OR, +, *, ||) regardless of how the parser grouped them. The operands of a
+ * commutative operator may come in any order, so allConjuncts(a, b, c) matches a AND b AND c, (c AND a) AND b, and c AND (b AND a).
+ * Those of || are matched in order, so allOperands("||", a, b) matches a || b but not b || a.
+ *
+ * The chain is flattened once into an array of operands, and the submatchers are then assigned to distinct operands via bipartite
+ * matching over a bitset of which operands each submatcher accepts, so no bracketing or permutation is ever enumerated.
+ *
+ * The matcher looks at the whole chain rooted at the node it is given. Within hasInQuery, where the parent of the node is known, it
+ * only matches at the head of a chain, so the (a AND b) within (a AND b) AND c is not taken for a chain of its own.
+ *
+ * @see BinaryOperatorNodeMatcher
+ */
+public class OperandChainMatcher extends QueryTreeNodeMatcher {
+    public enum MatchType {
+        ALL("exactly the operands"),
+        CONTAINS("operands including"),
+        ANY("an operand matching any of");
+
+        private final String descr;
+
+        private MatchType(String descriptionAppendage) {
+            this.descr = descriptionAppendage;
+        }
+    }
+
+    private final String operation;
+    private final List<Matcher<QueryTreeNode>> submatchers;
+    private final MatchType matchType;
+
+    public OperandChainMatcher(String operation, List<Matcher<QueryTreeNode>> submatchers, MatchType howToMatch) {
+        if (!StructuralHash.isAssociative(operation)) {
+            throw new IllegalArgumentException("Operator " + operation + " is not associative, so its chains depend on grouping");
+        }
+        this.operation = operation;
+        this.submatchers = new ArrayList<Matcher<QueryTreeNode>>(submatchers);
+        this.matchType = howToMatch;
+    }
+
+    public List<Matcher<QueryTreeNode>> getSubMatchers() {
+        return submatchers;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { operation, submatchers, matchType };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("a chain of " + operation + " with ").
+            appendText(matchType.descr).
+            appendText(" [");
+        for (int i = 0; i < submatchers.size(); i++) {
+            if (i > 0) {
+                description.appendText(", ");
+            }
+            description.appendText(descriptionOf(submatchers.get(i)));
+        }
+        description.appendText(StructuralHash.isCommutative(operation) ? "] in any order" : "] in order");
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        if (!isChainLink(item, operation) || isChainLink(EvaluationContext.searchedParentOf(item), operation)) {
+            return false;
+        }
+        final QueryTreeNode[] operands = flatten(item, operation);
+        final boolean anyOrder = StructuralHash.isCommutative(operation);
+
+        switch (matchType) {
+        case ANY:
+            for (QueryTreeNode operand : operands) {
+                for (Matcher<QueryTreeNode> submatcher : submatchers) {
+                    if (evaluate(submatcher, operand)) {
+                        return true;
+                    }
+                }
+            }
+            return false;
+        case ALL:
+            if (operands.length != submatchers.size()) {
+                return false;
+            }
+            return anyOrder ? new Assignment(operands).assignsEverySubmatcher() : matchesInOrder(operands);
+        case CONTAINS:
+            if (operands.length < submatchers.size()) {
+                return false;
+            }
+            return anyOrder ? new Assignment(operands).assignsEverySubmatcher() : matchesInOrder(operands);
+        }
+        return false;
+    }
+
+    /**
+     * Whether the submatchers match a subsequence of the operands in order. Taking the first operand each submatcher matches never
+     * leaves the rest with fewer operands to choose from, so there is nothing to backtrack over.
+     */
+    private boolean matchesInOrder(QueryTreeNode[] operands) {
+        int operand = 0;
+        for (Matcher<QueryTreeNode> submatcher : submatchers) {
+            while (operand < operands.length && !evaluate(submatcher, operands[operand])) {
+                operand++;
+            }
+            if (operand == operands.length) {
+                return false;
+            }
+            operand++;
+        }
+        return true;
+    }
+
+    static boolean isChainLink(QueryTreeNode node, String operation) {
+        return node instanceof BinaryOperatorNode && operation.equalsIgnoreCase(((BinaryOperatorNode) node).getOperator());
+    }
+
+    /**
+     * Flattens a chain of the given operator into its operands, in left-to-right order. A node which is not itself a link of the chain
+     * is returned as the chain's only operand.
+     */
+    static QueryTreeNode[] flatten(QueryTreeNode root, String operation) {
+        final List<QueryTreeNode> operands = new ArrayList<QueryTreeNode>();
+        final Deque<QueryTreeNode> pending = new ArrayDeque<QueryTreeNode>();
+        pending.push(root);
+        while (!pending.isEmpty()) {
+            final QueryTreeNode node = pending.pop();
+            if (isChainLink(node, operation)) {
+                final BinaryOperatorNode link = (BinaryOperatorNode) node;
+                pending.push(link.getRightOperand());
+                pending.push(link.getLeftOperand());
+            } else {
+                operands.add(node);
+            }
+        }
+        return operands.toArray(new QueryTreeNode[operands.size()]);
+    }
+
+    /**
+     * Assigns submatchers to distinct operands using augmenting paths (Kuhn's algorithm). Whether a submatcher accepts an operand is
+     * evaluated at most once and kept in a bitset per submatcher.
+     */
+    private class Assignment {
+        private final QueryTreeNode[] operands;
+        private final BitSet[] accepted;
+        private final BitSet[] evaluated;
+        private final int[] assignedTo;
+
+        Assignment(QueryTreeNode[] operands) {
+            this.operands = operands;
+            this.accepted = new BitSet[submatchers.size()];
+            this.evaluated = new BitSet[submatchers.size()];
+            for (int i = 0; i < submatchers.size(); i++) {
+                accepted[i] = new BitSet(operands.length);
+                evaluated[i] = new BitSet(operands.length);
+            }
+            this.assignedTo = new int[operands.length];
+            Arrays.fill(assignedTo, -1);
+        }
+
+        boolean assignsEverySubmatcher() {
+            for (int i = 0; i < submatchers.size(); i++) {
+                if (!augment(i, new BitSet(operands.length))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean augment(int submatcher, BitSet visited) {
+            for (int operand = 0; operand < operands.length; operand++) {
+                if (!visited.get(operand) && accepts(submatcher, operand)) {
+                    visited.set(operand);
+                    if (assignedTo[operand] < 0 || augment(assignedTo[operand], visited)) {
+                        assignedTo[operand] = submatcher;
+                        return true;
+                    }
+                }
+            }
+            return false;
+        }
+
+        private boolean accepts(int submatcher, int operand) {
+            if (!evaluated[submatcher].get(operand)) {
+                evaluated[submatcher].set(operand);
+                if (evaluate(submatchers.get(submatcher), operands[operand])) {
+                    accepted[submatcher].set(operand);
+                }
+            }
+            return accepted[submatcher].get(operand);
+        }
+    }
+
+    /**
+     * Syntactic sugar! Matches a chain of the given operator whose operands are matched one-to-one by the given matchers.
+     *
+     * For example, assertThat(query, hasInQuery(allOperands("+", column("a"), column("b"), literal(1))));
+     */
+    @Factory
+    @SafeVarargs
+    public static Matcher<QueryTreeNode> allOperands(String operation, Matcher<QueryTreeNode>... matchers) {
+        return new OperandChainMatcher(operation, listOf(matchers), MatchType.ALL);
+    }
+
+    /**
+     * Syntactic sugar! Matches a chain of the given operator which has a distinct operand for each of the given matchers.
+     *
+     * For example, assertThat(query, hasInQuery(containsOperands("||", column("first_name"))));
+     */
+    @Factory
+    @SafeVarargs
+    public static Matcher<QueryTreeNode> containsOperands(String operation, Matcher<QueryTreeNode>... matchers) {
+        return new OperandChainMatcher(operation, listOf(matchers), MatchType.CONTAINS);
+    }
+
+    /**
+     * Syntactic sugar! Matches a chain of the given operator with at least one operand matched by one of the given matchers.
+     *
+     * For example, assertThat(query, hasInQuery(anyOperand("*", literal(100))));
+     */
+    @Factory
+    @SafeVarargs
+    public static Matcher<QueryTreeNode> anyOperand(String operation, Matcher<QueryTreeNode>... matchers) {
+        return new OperandChainMatcher(operation, listOf(matchers), MatchType.ANY);
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(query, hasInQuery(where(allConjuncts(column("a").equalToLiteral(1), column("b").notNull()))));
+     */
+    @Factory
+    @SafeVarargs
+    public static Matcher<QueryTreeNode> allConjuncts(Matcher<QueryTreeNode>... matchers) {
+        return allOperands("and", matchers);
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(query, hasInQuery(where(containsConjuncts(column("tenant_id").equalToLiteral(7)))));
+     */
+    @Factory
+    @SafeVarargs
+    public static Matcher<QueryTreeNode> containsConjuncts(Matcher<QueryTreeNode>... matchers) {
+        return containsOperands("and", matchers);
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(query, hasInQuery(where(allDisjuncts(column("a").equalToLiteral(1), column("b").equalToLiteral(2)))));
+     */
+    @Factory
+    @SafeVarargs
+    public static Matcher<QueryTreeNode> allDisjuncts(Matcher<QueryTreeNode>... matchers) {
+        return allOperands("or", matchers);
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(query, hasInQuery(where(anyDisjunct(column("c").equalToLiteral(3)))));
+     */
+    @Factory
+    @SafeVarargs
+    public static Matcher<QueryTreeNode> anyDisjunct(Matcher<QueryTreeNode>... matchers) {
+        return anyOperand("or", matchers);
+    }
+}
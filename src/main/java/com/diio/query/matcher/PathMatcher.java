@@ -0,0 +1,439 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.AggregateNode;
+import com.akiban.sql.parser.BinaryOperatorNode;
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.ConstantNode;
+import com.akiban.sql.parser.CursorNode;
+import com.akiban.sql.parser.FromBaseTable;
+import com.akiban.sql.parser.FromTable;
+import com.akiban.sql.parser.JavaToSQLValueNode;
+import com.akiban.sql.parser.MethodCallNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.ResultColumn;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.TernaryOperatorNode;
+import com.akiban.sql.parser.UnaryOperatorNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.util.concurrent.UncheckedExecutionException;
+
+/**
+ * Matches a statement in which an XPath-like path selects at least one node. For example
+ *
+ * //FromSubquery[@alias='t']//Select/where//ColumnReference[@name='x']
+ *
+ * matches any column named x under the WHERE clause of a SELECT inside a FROM subquery aliased t.
+ *
+ * A path is a sequence of steps, each preceded by / (a child of the previous step) or // (any descendant of it). A step is one of
+ * <ul>
+ * <li>a parse tree class, by its simple name with or without the Node suffix, matching subclasses too: Select, ColumnReference,
+ * BinaryOperator;</li>
+ * <li>a clause of the enclosing SELECT or cursor: where, having, groupBy, result, from or orderBy, selecting the node at the top
+ * of that clause, such as the whole WHERE expression;</li>
+ * <li>* for any node.</li>
+ * </ul>
+ * followed by any number of predicates [@attribute='value'], compared ignoring case, where the attribute is one of name, table,
+ * alias, operator or value.
+ *
+ * A path is compiled once, and cached by its text, into an automaton whose state is the set of steps still to be matched, kept as
+ * bits of a long. The statement is walked once, each node computing its children's state from its own with a few bit operations,
+ * and subtrees where no step is active any more are skipped.
+ */
+public class PathMatcher extends QueryTreeNodeMatcher {
+
+    private static final Cache<String, Path> COMPILED = CacheBuilder.newBuilder().maximumSize(1000).build();
+
+    private final String expression;
+    private final Path path;
+
+    public PathMatcher(String expression) {
+        this.expression = expression;
+        this.path = compile(expression);
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { expression };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("a node at path ").appendText(expression);
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        final List<QueryTreeNode> selected = new ArrayList<QueryTreeNode>(1);
+        path.walk(item, null, path.initial, selected, true);
+        return !selected.isEmpty();
+    }
+
+    /**
+     * Returns every node the path selects, in traversal order.
+     */
+    public List<QueryTreeNode> select(QueryTreeNode root) {
+        final List<QueryTreeNode> selected = new ArrayList<QueryTreeNode>();
+        path.walk(root, null, path.initial, selected, false);
+        return selected;
+    }
+
+    static Path compile(final String expression) {
+        try {
+            return COMPILED.get(expression, () -> new PathParser(expression).parse());
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        } catch (UncheckedExecutionException e) {
+            if (e.getCause() instanceof IllegalArgumentException) {
+                throw (IllegalArgumentException) e.getCause();
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * The compiled form of a path: its steps, and the bits of the steps which may skip levels of the tree.
+     */
+    static class Path {
+        private final Step[] steps;
+        private final long descendantSteps;
+        private final long initial;
+        private final long last;
+
+        Path(List<Step> steps) {
+            this.steps = steps.toArray(new Step[steps.size()]);
+            long descendants = 0;
+            for (int i = 0; i < this.steps.length; i++) {
+                if (this.steps[i].descendant) {
+                    descendants |= 1L << i;
+                }
+            }
+            this.descendantSteps = descendants;
+            this.initial = 1L;
+            this.last = 1L << (this.steps.length - 1);
+        }
+
+        /**
+         * The state handed to a node holds the steps which may match it. Those that do advance to the next step for its children;
+         * descendant steps stay active for the children whether they matched or not.
+         */
+        private boolean walk(QueryTreeNode node, QueryTreeNode parent, long state, List<QueryTreeNode> selected, boolean firstOnly) {
+            long matched = 0;
+            for (long pending = state; pending != 0; pending &= pending - 1) {
+                final int step = Long.numberOfTrailingZeros(pending);
+                if (steps[step].test(node, parent)) {
+                    matched |= 1L << step;
+                }
+            }
+            if ((matched & last) != 0) {
+                selected.add(node);
+                if (firstOnly) {
+                    return true;
+                }
+            }
+            final long next = ((matched & ~last) << 1) | (state & descendantSteps);
+            if (next == 0) {
+                return false;
+            }
+            for (QueryTreeNode child : QueryTrees.children(node)) {
+                if (walk(child, node, next, selected, firstOnly)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private enum Clause {
+        WHERE, HAVING, GROUPBY, RESULT, FROM, ORDERBY;
+
+        boolean isClauseOf(QueryTreeNode node, QueryTreeNode parent) {
+            if (parent instanceof SelectNode) {
+                final SelectNode select = (SelectNode) parent;
+                switch (this) {
+                case WHERE:
+                    return node == select.getWhereClause();
+                case HAVING:
+                    return node == select.getHavingClause();
+                case GROUPBY:
+                    return node == select.getGroupByList();
+                case RESULT:
+                    return node == select.getResultColumns();
+                case FROM:
+                    return node == select.getFromList();
+                default:
+                    return false;
+                }
+            }
+            return this == ORDERBY && parent instanceof CursorNode && node == ((CursorNode) parent).getOrderByList();
+        }
+    }
+
+    private enum Attribute {
+        NAME, TABLE, ALIAS, OPERATOR, VALUE;
+
+        /**
+         * The attribute's value on the node, or null if the node doesn't have it.
+         */
+        Object of(QueryTreeNode node) {
+            switch (this) {
+            case NAME:
+                if (node instanceof ColumnReference) {
+                    return ((ColumnReference) node).getColumnName();
+                } else if (node instanceof FromBaseTable) {
+                    return ((FromBaseTable) node).getOrigTableName().getTableName();
+                } else if (node instanceof AggregateNode) {
+                    return ((AggregateNode) node).getAggregateName();
+                } else if (node instanceof ResultColumn) {
+                    return ((ResultColumn) node).getName();
+                } else if (node instanceof JavaToSQLValueNode && ((JavaToSQLValueNode) node).getJavaValueNode() instanceof MethodCallNode) {
+                    return ((MethodCallNode) ((JavaToSQLValueNode) node).getJavaValueNode()).getMethodName();
+                } else if (node instanceof TernaryOperatorNode) {
+                    return ((TernaryOperatorNode) node).getMethodName();
+                }
+                return null;
+            case TABLE:
+                if (node instanceof ColumnReference) {
+                    return ((ColumnReference) node).getTableName();
+                } else if (node instanceof FromBaseTable) {
+                    return ((FromBaseTable) node).getOrigTableName().getTableName();
+                }
+                return null;
+            case ALIAS:
+                if (node instanceof FromTable) {
+                    try {
+                        return ((FromTable) node).getExposedName();
+                    } catch (StandardException e) {
+                        throw new RuntimeException(e);
+                    }
+                }
+                return null;
+            case OPERATOR:
+                if (node instanceof BinaryOperatorNode) {
+                    return ((BinaryOperatorNode) node).getOperator();
+                } else if (node instanceof UnaryOperatorNode) {
+                    return ((UnaryOperatorNode) node).getOperator();
+                }
+                return null;
+            default:
+                return node instanceof ConstantNode ? ((ConstantNode) node).getValue() : null;
+            }
+        }
+    }
+
+    private static class Predicate {
+        private final Attribute attribute;
+        private final String value;
+
+        Predicate(Attribute attribute, String value) {
+            this.attribute = attribute;
+            this.value = value;
+        }
+
+        boolean test(QueryTreeNode node) {
+            final Object actual = attribute.of(node);
+            if (actual instanceof Number) {
+                try {
+                    return new BigDecimal(actual.toString()).compareTo(new BigDecimal(value)) == 0;
+                } catch (NumberFormatException e) {
+                    return false;
+                }
+            }
+            return actual != null && value.equalsIgnoreCase(actual.toString());
+        }
+    }
+
+    private static class Step {
+        private final boolean descendant;
+        private final String className;
+        private final Clause clause;
+        private final List<Predicate> predicates;
+
+        Step(boolean descendant, String className, Clause clause, List<Predicate> predicates) {
+            this.descendant = descendant;
+            this.className = className;
+            this.clause = clause;
+            this.predicates = predicates;
+        }
+
+        boolean test(QueryTreeNode node, QueryTreeNode parent) {
+            if (clause != null && !clause.isClauseOf(node, parent)) {
+                return false;
+            }
+            if (className != null && !CLASS_NAMES.get(node.getClass()).contains(className)) {
+                return false;
+            }
+            for (Predicate predicate : predicates) {
+                if (!predicate.test(node)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    /**
+     * The lower cased simple names of a class and its superclasses, each with and without the Node suffix.
+     */
+    private static final ClassValue<Set<String>> CLASS_NAMES = new ClassValue<Set<String>>() {
+        @Override
+        protected Set<String> computeValue(Class<?> type) {
+            final Set<String> names = new HashSet<String>();
+            for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+                final String name = c.getSimpleName().toLowerCase();
+                names.add(name);
+                if (name.endsWith("node")) {
+                    names.add(name.substring(0, name.length() - "node".length()));
+                }
+            }
+            return names;
+        }
+    };
+
+    private static class PathParser {
+        private final String text;
+        private int position;
+
+        PathParser(String text) {
+            this.text = text;
+        }
+
+        Path parse() {
+            final List<Step> steps = new ArrayList<Step>();
+            skipSpaces();
+            while (position < text.length()) {
+                if (!text.startsWith("/", position)) {
+                    throw error("expected / or //");
+                }
+                final boolean descendant = text.startsWith("//", position);
+                position += descendant ? 2 : 1;
+                steps.add(step(descendant));
+                skipSpaces();
+            }
+            if (steps.isEmpty()) {
+                throw error("expected at least one step");
+            }
+            if (steps.size() > 63) {
+                throw error("too many steps");
+            }
+            return new Path(steps);
+        }
+
+        private Step step(boolean descendant) {
+            skipSpaces();
+            String className = null;
+            Clause clause = null;
+            if (text.startsWith("*", position)) {
+                position++;
+            } else {
+                final String name = identifier();
+                try {
+                    clause = Clause.valueOf(name.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    className = name.toLowerCase();
+                }
+            }
+            final List<Predicate> predicates = new ArrayList<Predicate>();
+            skipSpaces();
+            while (text.startsWith("[", position)) {
+                position++;
+                skipSpaces();
+                expect('@');
+                final String attribute = identifier();
+                final Attribute parsed;
+                try {
+                    parsed = Attribute.valueOf(attribute.toUpperCase());
+                } catch (IllegalArgumentException e) {
+                    throw error("unknown attribute @" + attribute);
+                }
+                skipSpaces();
+                expect('=');
+                skipSpaces();
+                predicates.add(new Predicate(parsed, quoted()));
+                skipSpaces();
+                expect(']');
+                skipSpaces();
+            }
+            return new Step(descendant, className, clause, predicates);
+        }
+
+        private String identifier() {
+            final int start = position;
+            while (position < text.length() && (Character.isLetterOrDigit(text.charAt(position)) || text.charAt(position) == '_')) {
+                position++;
+            }
+            if (start == position) {
+                throw error("expected a name");
+            }
+            return text.substring(start, position);
+        }
+
+        private String quoted() {
+            if (position >= text.length() || (text.charAt(position) != '\'' && text.charAt(position) != '"')) {
+                throw error("expected a quoted value");
+            }
+            final char quote = text.charAt(position++);
+            final int close = text.indexOf(quote, position);
+            if (close < 0) {
+                throw error("unterminated value");
+            }
+            final String value = text.substring(position, close);
+            position = close + 1;
+            return value;
+        }
+
+        private void expect(char c) {
+            if (position >= text.length() || text.charAt(position) != c) {
+                throw error("expected " + c);
+            }
+            position++;
+        }
+
+        private void skipSpaces() {
+            while (position < text.length() && Character.isWhitespace(text.charAt(position))) {
+                position++;
+            }
+        }
+
+        private IllegalArgumentException error(String problem) {
+            return new IllegalArgumentException("Invalid path " + text + " at " + position + ": " + problem);
+        }
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(query, path("//FromSubquery[@alias='t']//Select/where//ColumnReference[@name='x']"));
+     */
+    @Factory
+    public static PathMatcher path(String expression) {
+        return new PathMatcher(expression);
+    }
+}
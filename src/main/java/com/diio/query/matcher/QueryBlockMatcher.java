@@ -0,0 +1,143 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.function.Predicate;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.QueryTreeNode;
+
+/**
+ * Like hasInQuery, but confined to a query block rather than crossing every subquery boundary. A query block is a statement or
+ * the contents of a subquery or derived table; see QueryBlocks. The blocks of a statement are worked out once, so a scoped
+ * matcher only ever looks at the nodes of its scope.
+ *
+ * Nested searches are confined too, so for example assertThat(statement, inThisBlock(where(column("tenant_id")))) passes only
+ * if the outermost WHERE clause itself refers to tenant_id: where() is neither tried at the SELECTs of subqueries nor looks
+ * inside them.
+ *
+ * @see QueryBlocks
+ */
+public class QueryBlockMatcher extends QueryTreeNodeMatcher {
+
+    public enum Scope {
+        THIS_BLOCK("in this query block, "),
+        OUTER_BLOCK("in the enclosing query block, "),
+        ANY_SUBQUERY("in a subquery, ");
+
+        private final String descr;
+
+        Scope(String descr) {
+            this.descr = descr;
+        }
+    }
+
+    private final Scope scope;
+    private final Matcher<QueryTreeNode> submatcher;
+
+    public QueryBlockMatcher(Scope scope, Matcher<QueryTreeNode> submatcher) {
+        this.scope = scope;
+        this.submatcher = submatcher;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { scope, submatcher };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText(scope.descr).appendText(descriptionOf(submatcher));
+    }
+
+    /**
+     * Tries the submatcher at the nodes of the scope, with nested searches, such as the one where() does, confined to the block
+     * being looked at.
+     */
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        final EvaluationContext enclosing = EvaluationContext.current();
+        final EvaluationContext context = enclosing != null ? enclosing : EvaluationContext.open(0);
+        final QueryBlocks previousScope = context.getScope();
+        final int previousBlock = context.getScopeBlock();
+        try {
+            final QueryBlocks blocks = QueryBlocks.containing(item);
+            final Predicate<QueryTreeNode> test = node -> {
+                final int mark = context.mark();
+                if (evaluate(submatcher, node)) {
+                    return true;
+                }
+                context.reset(mark);
+                return false;
+            };
+            switch (scope) {
+            case THIS_BLOCK:
+                context.setScope(blocks, blocks.blockOf(item));
+                return blocks.anyInThisBlock(item, test);
+            case OUTER_BLOCK:
+                final int outer = blocks.parentOf(blocks.blockOf(item));
+                if (outer < 0) {
+                    return false;
+                }
+                context.setScope(blocks, outer);
+                return blocks.anyInOuterBlock(item, test);
+            default:
+                context.setScope(null, -1);
+                return blocks.anyInSubqueries(item, test);
+            }
+        } finally {
+            context.setScope(previousScope, previousBlock);
+            if (enclosing == null) {
+                EvaluationContext.close();
+            }
+        }
+    }
+
+    /**
+     * Syntactic sugar! Matches a node having a matching node under it, itself included, without looking into subqueries or
+     * derived tables.
+     *
+     * For example, assertThat(query, inThisBlock(where(column("tenant_id"))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> inThisBlock(Matcher<QueryTreeNode> matcher) {
+        return new QueryBlockMatcher(Scope.THIS_BLOCK, matcher);
+    }
+
+    /**
+     * Syntactic sugar! Matches a node within a subquery or derived table whose enclosing query block has a matching node
+     * anywhere, e.g. the table a correlated subquery refers to.
+     *
+     * For example, assertThat(query, hasInQuery(allOf(column("id"), inOuterBlock(table("orders")))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> inOuterBlock(Matcher<QueryTreeNode> matcher) {
+        return new QueryBlockMatcher(Scope.OUTER_BLOCK, matcher);
+    }
+
+    /**
+     * Syntactic sugar! Matches a node having a matching node under it within a subquery or derived table.
+     *
+     * For example, assertThat(query, inThisBlock(where(inAnySubquery(table("audit")))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> inAnySubquery(Matcher<QueryTreeNode> matcher) {
+        return new QueryBlockMatcher(Scope.ANY_SUBQUERY, matcher);
+    }
+}
@@ -0,0 +1,208 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.function.Predicate;
+
+import com.akiban.sql.parser.FromSubquery;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SubqueryNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * The nodes of a statement partitioned by query block. The statement itself is the outermost block; the contents of every
+ * SubqueryNode and FromSubquery form a child block of the block the subquery appears in, while the SubqueryNode or FromSubquery
+ * node itself stays in the enclosing block, as does the left operand of an IN or comparison subquery. Set operations such as UNION don't start blocks of their own.
+ *
+ * The partition is built in one walk and remembered per statement. Nodes are numbered in the parser's traversal order, so the
+ * descendants of a node are a contiguous range of numbers and the nodes of a block below a node are a contiguous range of the
+ * block's members. The statement itself, number 0, is only held weakly, so that the partition doesn't keep its own cache entry
+ * alive.
+ *
+ * @see QueryBlockMatcher
+ */
+final class QueryBlocks {
+    private static final Cache<QueryTreeNode, QueryBlocks> PARTITIONS = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final WeakReference<QueryTreeNode> root;
+    private final List<QueryTreeNode> nodes = new ArrayList<QueryTreeNode>();
+    private final List<Block> blocks = new ArrayList<Block>();
+    private final Map<QueryTreeNode, Integer> numbers = new IdentityHashMap<QueryTreeNode, Integer>();
+    private int[] ends = new int[16];
+    private int[] blockOf = new int[16];
+
+    private QueryBlocks(QueryTreeNode root) {
+        this.root = new WeakReference<QueryTreeNode>(root);
+        final Block outermost = new Block(0, null);
+        blocks.add(outermost);
+        number(root, outermost);
+        for (Block block : blocks) {
+            block.trim();
+        }
+    }
+
+    /**
+     * The partition of the statement being evaluated, if the node is part of it, or else of the tree under the node.
+     */
+    static QueryBlocks containing(QueryTreeNode node) {
+        final QueryTreeNode root = EvaluationContext.statement();
+        if (root != null) {
+            final QueryBlocks statement = of(root);
+            if (statement.numberOf(node) != null) {
+                return statement;
+            }
+        }
+        return of(node);
+    }
+
+    static QueryBlocks of(final QueryTreeNode root) {
+        try {
+            return PARTITIONS.get(root, () -> new QueryBlocks(root));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void number(QueryTreeNode node, Block block) {
+        final int number = nodes.size();
+        nodes.add(number == 0 ? null : node);
+        if (number > 0) {
+            numbers.put(node, number);
+        }
+        if (number == ends.length) {
+            ends = Arrays.copyOf(ends, number * 2);
+            blockOf = Arrays.copyOf(blockOf, number * 2);
+        }
+        blockOf[number] = block.index;
+        block.add(number);
+        Block childBlock = block;
+        if (node instanceof SubqueryNode || node instanceof FromSubquery) {
+            childBlock = new Block(blocks.size(), block);
+            blocks.add(childBlock);
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            final boolean leftOperand = node instanceof SubqueryNode && child == ((SubqueryNode) node).getLeftOperand();
+            number(child, leftOperand ? block : childBlock);
+        }
+        ends[number] = nodes.size() - 1;
+    }
+
+    private Integer numberOf(QueryTreeNode node) {
+        return node != null && node == root.get() ? Integer.valueOf(0) : numbers.get(node);
+    }
+
+    private QueryTreeNode node(int number) {
+        return number == 0 ? root.get() : nodes.get(number);
+    }
+
+    /**
+     * Whether any node under the given node, itself included, which is in the same block as it passes the test. Nodes are tried
+     * in traversal order.
+     */
+    boolean anyInThisBlock(QueryTreeNode node, Predicate<QueryTreeNode> test) {
+        final int number = numberOf(node);
+        return blocks.get(blockOf[number]).any(number, ends[number], test);
+    }
+
+    /**
+     * Whether any node of the block enclosing the node's block passes the test; false for the outermost block.
+     */
+    boolean anyInOuterBlock(QueryTreeNode node, Predicate<QueryTreeNode> test) {
+        final Block parent = blocks.get(blockOf(node)).parent;
+        return parent != null && parent.any(0, nodes.size() - 1, test);
+    }
+
+    /**
+     * Whether any node under the given node which is in a block nested within the node's block passes the test.
+     */
+    boolean anyInSubqueries(QueryTreeNode node, Predicate<QueryTreeNode> test) {
+        final int number = numberOf(node);
+        for (int i = number + 1; i <= ends[number]; i++) {
+            if (blockOf[i] != blockOf[number] && test.test(node(i))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The index of the block the node is in, or -1 if it isn't part of this statement.
+     */
+    int blockOf(QueryTreeNode node) {
+        final Integer number = numberOf(node);
+        return number == null ? -1 : blockOf[number];
+    }
+
+    /**
+     * The index of the block enclosing the given block, or -1 for the outermost block.
+     */
+    int parentOf(int block) {
+        final Block parent = blocks.get(block).parent;
+        return parent == null ? -1 : parent.index;
+    }
+
+    /**
+     * How many blocks the statement has.
+     */
+    int size() {
+        return blocks.size();
+    }
+
+    private class Block {
+        private final int index;
+        private final Block parent;
+        private int[] members = new int[8];
+        private int size;
+
+        Block(int index, Block parent) {
+            this.index = index;
+            this.parent = parent;
+        }
+
+        void add(int number) {
+            if (size == members.length) {
+                members = Arrays.copyOf(members, size * 2);
+            }
+            members[size++] = number;
+        }
+
+        void trim() {
+            members = Arrays.copyOf(members, size);
+        }
+
+        /**
+         * Whether any of the members numbered from first to last inclusive passes the test.
+         */
+        boolean any(int first, int last, Predicate<QueryTreeNode> test) {
+            int from = Arrays.binarySearch(members, first);
+            from = from < 0 ? -from - 1 : from;
+            for (int i = from; i < members.length && members[i] <= last; i++) {
+                if (test.test(node(members[i]))) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+}
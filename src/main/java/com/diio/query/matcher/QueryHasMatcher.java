@@ -15,18 +15,18 @@
  */
 package com.diio.query.matcher;
 
-import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.hamcrest.Description;
 import org.hamcrest.Factory;
 import org.hamcrest.Matcher;
+import org.hamcrest.StringDescription;
 import org.hamcrest.TypeSafeMatcher;
 
-import com.akiban.sql.StandardException;
 import com.akiban.sql.parser.QueryTreeNode;
-import com.akiban.sql.parser.Visitable;
-import com.akiban.sql.parser.Visitor;
-import com.akiban.sql.unparser.NodeToString;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
 
 /**
  * Attempts to match the given nested Matcher&lt;QueryTreeNode&rt; against all query subtrees. Useful
@@ -38,101 +38,254 @@ import com.akiban.sql.unparser.NodeToString;
  */
 public class QueryHasMatcher extends TypeSafeMatcher<QueryTreeNode> {
     private final Matcher<QueryTreeNode> subMatcher;
+    private final int nearMisses;
+    private final Budget budget;
+    private final Cache<QueryTreeNode, MatchResult> failures;
+    private volatile String description;
 
     public QueryHasMatcher(Matcher<QueryTreeNode> m) {
+        this(m, 0);
+    }
+
+    /**
+     * @param nearMisses how many of the closest partial matches to report when nothing matches
+     */
+    public QueryHasMatcher(Matcher<QueryTreeNode> m, int nearMisses) {
+        this(m, nearMisses, null);
+    }
+
+    private QueryHasMatcher(Matcher<QueryTreeNode> m, int nearMisses, Budget budget) {
         subMatcher = m;
+        this.nearMisses = nearMisses;
+        this.budget = budget;
+        this.failures = nearMisses > 0 || budget != null
+                ? CacheBuilder.newBuilder().weakKeys().<QueryTreeNode, MatchResult>build() : null;
+    }
+
+    /**
+     * Returns a copy of this matcher which, when nothing matches, reports the closest partial matches of the composite matchers
+     * (binary operators, IN, BETWEEN and functions) within it. They are scored during the same traversal that decides the match,
+     * at the cost of evaluating every part of those matchers instead of stopping at the first that fails.
+     */
+    public QueryHasMatcher withNearMisses(int count) {
+        return new QueryHasMatcher(subMatcher, count, budget);
+    }
+
+    /**
+     * Returns a copy of this matcher whose evaluations stop once they exhaust the budget, and then neither match nor fail to: the
+     * result is UNDECIDED, and as a Hamcrest matcher it throws IllegalStateException rather than answer either way, so that
+     * not(...) can't pass for want of budget. The budget covers the whole evaluation, nested matchers included; budgets of
+     * nested QueryHasMatchers are ignored.
+     */
+    public QueryHasMatcher withBudget(Budget budget) {
+        return new QueryHasMatcher(subMatcher, nearMisses, budget);
     }
     
     @Override
     public void describeTo(Description description) {
-        description.appendText("Query that has ").appendDescriptionOf(subMatcher);
+        description.appendText("Query that has ").appendText(QueryTreeNodeMatcher.descriptionOf(subMatcher));
     }
     
     @Override
-    protected void describeMismatchSafely(QueryTreeNode item, Description mismatchDescription) {
-        if (item != null) {
-            final StringWriter writer = new StringWriter();
-            item.treePrint(writer);
+    public String toString() {
+        String text = description;
+        if (text == null) {
+            text = StringDescription.toString(this);
+            description = text;
+        }
+        return text;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (!(other instanceof QueryHasMatcher) || other.getClass() != getClass()) {
+            return false;
+        }
+        final QueryHasMatcher that = (QueryHasMatcher) other;
+        return nearMisses == that.nearMisses && QueryTreeNodeMatcher.same(subMatcher, that.subMatcher)
+                && QueryTreeNodeMatcher.same(budget, that.budget);
+    }
 
-            String sql = null;
+    @Override
+    public int hashCode() {
+        return (QueryTreeNodeMatcher.hash(subMatcher) * 31 + nearMisses) * 31 + QueryTreeNodeMatcher.hash(budget);
+    }
 
-            try {
-                sql = new NodeToString().toString(item);
-            } catch (StandardException e) {
-                e.printStackTrace();
-            }
+    Matcher<QueryTreeNode> getSubMatcher() {
+        return subMatcher;
+    }
 
+    @Override
+    protected void describeMismatchSafely(QueryTreeNode item, Description mismatchDescription) {
+        if (item != null) {
+            final MatchResult failure = failures == null ? null : failures.getIfPresent(item);
+            if (failure != null && failure.isUndecided()) {
+                mismatchDescription.appendText("undecided, having run out of ").appendText(budget.toString()).appendText("\n");
+            } else if (failure != null && !failure.getNearMisses().isEmpty()) {
+                mismatchDescription.appendText("closest were");
+                for (NearMiss nearMiss : failure.getNearMisses()) {
+                    mismatchDescription.appendText("\n    ").appendText(nearMiss.toString());
+                }
+                mismatchDescription.appendText("\n");
+            }
             mismatchDescription.appendText("was ")
-                    .appendText(sql)
-                    .appendText(writer.toString());
+                    .appendText(MismatchRendering.sql(item))
+                    .appendText(MismatchRendering.tree(item));
         } else {
             super.describeMismatchSafely(null, mismatchDescription);
         }        
     }
 
+    /**
+     * @throws IllegalStateException if the evaluation ran out of budget before it could decide
+     */
     @Override
     protected boolean matchesSafely(QueryTreeNode item) {
-        final MatchingVisitor matchingVisitor = new MatchingVisitor(subMatcher);
-        try {
-            item.accept(matchingVisitor);
-        } catch (StandardException e) {
-            throw new RuntimeException(e);
+        final MatchResult result = evaluate(item);
+        if (result.isUndecided()) {
+            throw new IllegalStateException("Undecided, having run out of " + budget + " evaluating " + result.getExhaustedBy());
         }
-        return matchingVisitor.foundMatch();
+        return result.matches();
     }
 
     public QueryTreeNode getMatch(QueryTreeNode node) {
-        final MatchingVisitor matchingVisitor = new MatchingVisitor(subMatcher);
-        try {
-            node.accept(matchingVisitor);
-        } catch (StandardException e) {
-            throw new RuntimeException(e);
+        return evaluate(node).getMatch();
+    }
+
+    /**
+     * Searches the tree once, in the parser's traversal order, and reports whether the submatcher matched any subtree together
+     * with the first match and the path of ancestors leading to it. If the submatcher captures nodes, each node is retried with
+     * other bindings until one works out, and the result carries the bindings of the match.
+     */
+    public MatchResult evaluate(QueryTreeNode node) {
+        final List<NearMiss> closest = new ArrayList<NearMiss>();
+        final List<MatchResult> hits = new ArrayList<MatchResult>();
+        if (!search(node, true, hits, closest)) {
+            final MatchResult undecided = MatchResult.undecided(toString());
+            failures.put(node, undecided);
+            return undecided;
         }
-        return matchingVisitor.match;
-    }    
-    
-    private static class MatchingVisitor implements Visitor {
-        private final Matcher<QueryTreeNode> matcher;
-        private QueryTreeNode match = null;
-        private boolean found = false; //boolean needed because of possibility of a matcher that matches nulls
-        
-        public MatchingVisitor(Matcher<QueryTreeNode> subMatcher) {
-            matcher = subMatcher;            
-            if (subMatcher == null) {
-                throw new IllegalArgumentException("Submatcher must be defined for " + getClass().getName());
-            }
+        if (!hits.isEmpty()) {
+            return hits.get(0);
         }
-
-        public boolean foundMatch() {
-            return found;
+        if (closest.isEmpty()) {
+            return MatchResult.noMatch();
         }
+        final MatchResult failure = MatchResult.noMatch(closest);
+        failures.put(node, failure);
+        return failure;
+    }
 
-        @Override
-        public Visitable visit(Visitable node) throws StandardException {
-            if (matcher.matches(node)) {
-                match = (QueryTreeNode) node;
-                found = true;
+    /**
+     * Like evaluate, but carries on past the first match and reports every matching subtree, in traversal order. Matches nested
+     * inside other matches are reported too. If the budget runs out, only the matches found until then are reported.
+     */
+    public List<MatchResult> findAll(QueryTreeNode node) {
+        final List<MatchResult> hits = new ArrayList<MatchResult>();
+        search(node, false, hits, new ArrayList<NearMiss>());
+        return hits;
+    }
+
+    /**
+     * Returns false if the search was cut short by running out of budget.
+     */
+    private boolean search(QueryTreeNode node, boolean firstOnly, List<MatchResult> hits, List<NearMiss> closest) {
+        if (subMatcher == null) {
+            throw new IllegalArgumentException("Submatcher must be defined for " + getClass().getName());
+        }
+        final EvaluationContext enclosing = EvaluationContext.current();
+        if (enclosing != null) {
+            search(node, new ArrayList<QueryTreeNode>(), enclosing, false, firstOnly, hits);
+            return true;
+        }
+        final EvaluationContext context = EvaluationContext.open(nearMisses);
+        final boolean entered = EvaluationContext.enter(node);
+        try {
+            if (budget != null) {
+                context.limit(budget);
+            }
+            search(node, new ArrayList<QueryTreeNode>(), context, true, firstOnly, hits);
+            if (hits.isEmpty()) {
+                closest.addAll(context.getNearMisses());
             }
-            return node;
+            return true;
+        } catch (EvaluationContext.BudgetExhausted e) {
+            return false;
+        } finally {
+            if (entered) {
+                EvaluationContext.leave();
+            }
+            EvaluationContext.close();
         }
+    }
 
-        @Override
-        public boolean visitChildrenFirst(Visitable node) {
-            return false;
+    /**
+     * Depth-first search collecting a result, with a copy of the path, for each matching node. Returns true once the first match
+     * is found if that is all that is wanted.
+     */
+    private boolean search(QueryTreeNode node, List<QueryTreeNode> path, EvaluationContext context, boolean outermost,
+            boolean firstOnly, List<MatchResult> hits) {
+        context.visit();
+        path.add(node);
+        final int mark = context.mark();
+        if (matchesAt(node, path.size() > 1 ? path.get(path.size() - 2) : null, context, outermost)) {
+            hits.add(MatchResult.matched(new ArrayList<QueryTreeNode>(path), context.getBindings()));
+            if (firstOnly) {
+                return true;
+            }
+        }
+        context.reset(mark);
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            if (!outermost && !context.inScope(child)) {
+                continue;
+            }
+            if (search(child, path, context, outermost, firstOnly, hits)) {
+                return true;
+            }
         }
+        path.remove(path.size() - 1);
+        return false;
+    }
 
-        @Override
-        public boolean stopTraversal() {
-            return found;
+    /**
+     * The outermost matcher owns the bindings, so it starts every node afresh and replays it with other binding choices until
+     * one matches. Nested matchers leave that to the outermost one, within whose current attempt they are running.
+     */
+    private boolean matchesAt(QueryTreeNode node, QueryTreeNode parent, EvaluationContext context, boolean outermost) {
+        if (!outermost) {
+            return evaluateAt(subMatcher, node, parent, context);
         }
+        return matchesAt(subMatcher, node, parent, context);
+    }
 
-        @Override
-        public boolean skipChildren(Visitable node) throws StandardException {
-            //could eventually make this stop before going into parts of a statement we aren't targeting
-            //e.g. skip subqueries or skip ORDER BYs if we only care about columns within SELECTS 
-            return false;
+    /**
+     * Tries the matcher against a single node on behalf of the outermost evaluation, replaying it over binding choices. The parent
+     * is the node the search reached it from, or null at the root.
+     */
+    static boolean matchesAt(Matcher<QueryTreeNode> matcher, QueryTreeNode node, QueryTreeNode parent, EvaluationContext context) {
+        context.restart();
+        do {
+            if (evaluateAt(matcher, node, parent, context)) {
+                return true;
+            }
+        } while (context.nextAlternative());
+        return false;
+    }
+
+    /**
+     * Evaluates the matcher at the node with its parent known to the matchers that depend on it, then restores the position of
+     * any enclosing search.
+     */
+    private static boolean evaluateAt(Matcher<QueryTreeNode> matcher, QueryTreeNode node, QueryTreeNode parent,
+            EvaluationContext context) {
+        final QueryTreeNode enclosing = context.getSearched();
+        final QueryTreeNode enclosingParent = context.getSearchedParent();
+        context.setSearched(node, parent);
+        try {
+            return QueryTreeNodeMatcher.evaluate(matcher, node);
+        } finally {
+            context.setSearched(enclosing, enclosingParent);
         }
-        
     }
 
     /**
@@ -0,0 +1,170 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.concurrent.ExecutionException;
+
+import com.akiban.sql.parser.CursorNode;
+import com.akiban.sql.parser.FromBaseTable;
+import com.akiban.sql.parser.FromList;
+import com.akiban.sql.parser.FromSubquery;
+import com.akiban.sql.parser.JoinNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.SubqueryNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * A summary of the structure of a statement: which clauses it uses, how many tables, joins and result columns it has and how
+ * deeply its subqueries nest. The summary is computed in one walk and remembered per node, so structural rules cost a lookup
+ * rather than a traversal each.
+ *
+ * Clauses count wherever they appear, subqueries included. Joins are explicit JOINs plus the implicit joins of FROM lists with
+ * more than one item. The result columns are those of the outermost SELECT.
+ *
+ * @see ShapeMatcher
+ */
+public final class QueryShape {
+    private static final Cache<QueryTreeNode, QueryShape> SHAPES = CacheBuilder.newBuilder().weakKeys().build();
+
+    private boolean groupBy;
+    private boolean having;
+    private boolean orderBy;
+    private boolean distinct;
+    private boolean fetchFirst;
+    private int tableCount;
+    private int joinCount;
+    private int resultColumnCount = -1;
+    private int subqueryCount;
+    private int subqueryDepth;
+
+    private QueryShape(QueryTreeNode statement) {
+        walk(statement, 0);
+        if (resultColumnCount < 0) {
+            resultColumnCount = 0;
+        }
+    }
+
+    /**
+     * The shape of the tree under the node, computed on first use.
+     */
+    public static QueryShape of(final QueryTreeNode node) {
+        try {
+            return SHAPES.get(node, () -> new QueryShape(node));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void walk(QueryTreeNode node, int depth) {
+        if (node instanceof SelectNode) {
+            final SelectNode select = (SelectNode) node;
+            groupBy |= select.getGroupByList() != null;
+            having |= select.getHavingClause() != null;
+            distinct |= select.isDistinct();
+            if (resultColumnCount < 0 && select.getResultColumns() != null) {
+                resultColumnCount = select.getResultColumns().size();
+            }
+        } else if (node instanceof CursorNode) {
+            final CursorNode cursor = (CursorNode) node;
+            orderBy |= cursor.getOrderByList() != null;
+            fetchFirst |= cursor.getFetchFirstClause() != null || cursor.getOffsetClause() != null;
+        } else if (node instanceof SubqueryNode) {
+            final SubqueryNode subquery = (SubqueryNode) node;
+            orderBy |= subquery.getOrderByList() != null;
+            fetchFirst |= subquery.getFetchFirst() != null || subquery.getOffset() != null;
+        } else if (node instanceof FromSubquery) {
+            final FromSubquery subquery = (FromSubquery) node;
+            orderBy |= subquery.getOrderByList() != null;
+            fetchFirst |= subquery.getFetchFirst() != null || subquery.getOffset() != null;
+        } else if (node instanceof FromBaseTable) {
+            tableCount++;
+        } else if (node instanceof JoinNode) {
+            joinCount++;
+        } else if (node instanceof FromList && ((FromList) node).size() > 1) {
+            joinCount += ((FromList) node).size() - 1;
+        }
+        int childDepth = depth;
+        if (node instanceof SubqueryNode || node instanceof FromSubquery) {
+            subqueryCount++;
+            childDepth = depth + 1;
+            subqueryDepth = Math.max(subqueryDepth, childDepth);
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            walk(child, childDepth);
+        }
+    }
+
+    public boolean hasGroupBy() {
+        return groupBy;
+    }
+
+    public boolean hasHaving() {
+        return having;
+    }
+
+    public boolean hasOrderBy() {
+        return orderBy;
+    }
+
+    public boolean hasDistinct() {
+        return distinct;
+    }
+
+    /**
+     * Whether the statement limits its rows with FETCH FIRST, LIMIT or OFFSET.
+     */
+    public boolean hasFetchFirst() {
+        return fetchFirst;
+    }
+
+    /**
+     * How many base tables the statement reads, counting each appearance.
+     */
+    public int getTableCount() {
+        return tableCount;
+    }
+
+    public int getJoinCount() {
+        return joinCount;
+    }
+
+    public int getResultColumnCount() {
+        return resultColumnCount;
+    }
+
+    /**
+     * How many subqueries and derived tables the statement has.
+     */
+    public int getSubqueryCount() {
+        return subqueryCount;
+    }
+
+    /**
+     * How deeply subqueries and derived tables nest; 0 if there are none.
+     */
+    public int getSubqueryDepth() {
+        return subqueryDepth;
+    }
+
+    @Override
+    public String toString() {
+        return "QueryShape[groupBy=" + groupBy + ", having=" + having + ", orderBy=" + orderBy + ", distinct=" + distinct
+                + ", fetchFirst=" + fetchFirst + ", tables=" + tableCount + ", joins=" + joinCount + ", resultColumns="
+                + resultColumnCount + ", subqueries=" + subqueryCount + ", subqueryDepth=" + subqueryDepth + "]";
+    }
+}
@@ -15,30 +15,205 @@
  */
 package com.diio.query.matcher;
 
-import java.io.StringWriter;
+import java.util.ArrayList;
+import java.util.List;
 
 import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.SelfDescribing;
+import org.hamcrest.StringDescription;
 import org.hamcrest.TypeSafeMatcher;
+import org.hamcrest.core.IsAnything;
 
 import com.akiban.sql.parser.QueryTreeNode;
 
 /**
  * Encapsulates functionality common to most Matcher objects in this library.
  * 
+ * Matchers are immutable once built, so the text of describeTo is only rendered once per matcher. Mismatches are rendered only
+ * when described, at most MismatchRendering's maximum length, and once per node.
+ * 
+ * Two matchers of the same class built from equal values are equal, so that a RuleSet can share one evaluation between all the
+ * copies of a sub-pattern. Subclasses opt in by overriding valueComponents; without it a matcher is only equal to itself.
+ * 
+ * Subclasses implement matchesNode and describeNodeMismatch, which see only non-null nodes. The first matcher applied fixes its
+ * node as the statement being evaluated until it returns, so that however deeply a matcher is nested, it resolves names
+ * against the whole statement rather than against the subtree some enclosing matcher happened to hand down. Subclasses that
+ * override matchesSafely and describeMismatchSafely instead, as they did before, still work but don't fix the statement.
+ * 
  * @author kkoster
  *
  */
 public abstract class QueryTreeNodeMatcher extends TypeSafeMatcher<QueryTreeNode> {
 
+    private volatile String description;
+    private volatile int hash;
+
+    @Override
+    protected boolean matchesSafely(QueryTreeNode item) {
+        final boolean entered = EvaluationContext.enter(item);
+        try {
+            return matchesNode(item);
+        } finally {
+            if (entered) {
+                EvaluationContext.leave();
+            }
+        }
+    }
+
+    /**
+     * Whether the node matches, with the statement it is part of fixed if this is the first matcher applied.
+     */
+    protected boolean matchesNode(QueryTreeNode item) {
+        throw new UnsupportedOperationException(getClass().getName() + " implements neither matchesNode nor matchesSafely");
+    }
+
     @Override
     protected void describeMismatchSafely(QueryTreeNode item, Description mismatchDescription) {
-        if (item instanceof QueryTreeNode) {
-            final StringWriter writer = new StringWriter();
-            ((QueryTreeNode)item).treePrint(writer);
-            mismatchDescription.appendText("was ").appendText(writer.toString());
-        } else {
-            super.describeMismatchSafely(item, mismatchDescription);
-        }        
-    }
-        
+        final boolean entered = EvaluationContext.enter(item);
+        try {
+            describeNodeMismatch(item, mismatchDescription);
+        } finally {
+            if (entered) {
+                EvaluationContext.leave();
+            }
+        }
+    }
+
+    protected void describeNodeMismatch(QueryTreeNode item, Description mismatchDescription) {
+        mismatchDescription.appendText("was ").appendText(MismatchRendering.tree(item));
+    }
+
+    @Override
+    public String toString() {
+        String text = description;
+        if (text == null) {
+            text = StringDescription.toString(this);
+            description = text;
+        }
+        return text;
+    }
+
+    /**
+     * The values this matcher was built from, nested matchers included, or null to compare by identity. Derived state, such as
+     * caches and statistics, is left out.
+     */
+    protected Object[] valueComponents() {
+        return null;
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        if (this == other) {
+            return true;
+        }
+        if (other == null || other.getClass() != getClass()) {
+            return false;
+        }
+        final Object[] components = valueComponents();
+        return components != null && same(components, ((QueryTreeNodeMatcher) other).valueComponents());
+    }
+
+    @Override
+    public int hashCode() {
+        int h = hash;
+        if (h == 0) {
+            final Object[] components = valueComponents();
+            h = components == null ? System.identityHashCode(this) : getClass().hashCode() * 31 + hash(components);
+            hash = h == 0 ? 1 : h;
+        }
+        return h;
+    }
+
+    /**
+     * Value equality of matcher components. Arrays and lists compare element by element, and Hamcrest's anything() matchers, which
+     * have no equals of their own, compare by description.
+     */
+    static boolean same(Object a, Object b) {
+        if (a == b) {
+            return true;
+        }
+        if (a == null || b == null) {
+            return false;
+        }
+        if (a instanceof Object[] && b instanceof Object[]) {
+            final Object[] left = (Object[]) a;
+            final Object[] right = (Object[]) b;
+            if (left.length != right.length) {
+                return false;
+            }
+            for (int i = 0; i < left.length; i++) {
+                if (!same(left[i], right[i])) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        if (a instanceof List && b instanceof List) {
+            return same(((List<?>) a).toArray(), ((List<?>) b).toArray());
+        }
+        if (a instanceof IsAnything && b instanceof IsAnything) {
+            return a.toString().equals(b.toString());
+        }
+        return a.equals(b);
+    }
+
+    static int hash(Object component) {
+        if (component == null) {
+            return 0;
+        }
+        if (component instanceof Object[]) {
+            int h = 1;
+            for (Object element : (Object[]) component) {
+                h = h * 31 + hash(element);
+            }
+            return h;
+        }
+        if (component instanceof List) {
+            return hash(((List<?>) component).toArray());
+        }
+        if (component instanceof IsAnything) {
+            return component.toString().hashCode();
+        }
+        return component.hashCode();
+    }
+
+    /**
+     * Evaluates a nested matcher. Within a RuleSet evaluation, each distinct sub-pattern is evaluated at most once per node and
+     * then answered from the evaluation's memo; everywhere else this is just matcher.matches(item).
+     */
+    static boolean evaluate(Matcher<?> matcher, Object item) {
+        return EvaluationContext.evaluate(matcher, item);
+    }
+
+    /**
+     * A copy of the elements, for factories to keep instead of the array their caller passed.
+     */
+    @SafeVarargs
+    static List<Matcher<QueryTreeNode>> listOf(Matcher<QueryTreeNode>... elements) {
+        final List<Matcher<QueryTreeNode>> copy = new ArrayList<Matcher<QueryTreeNode>>(elements.length);
+        for (Matcher<QueryTreeNode> element : elements) {
+            copy.add(element);
+        }
+        return copy;
+    }
+
+    /**
+     * The description of the given matcher, reusing the cached text of matchers from this library.
+     */
+    static String descriptionOf(SelfDescribing matcher) {
+        if (matcher instanceof QueryTreeNodeMatcher || matcher instanceof QueryHasMatcher) {
+            return matcher.toString();
+        }
+        return StringDescription.toString(matcher);
+    }
+
+    /**
+     * Caps the number of characters of parse tree and SQL that a mismatch description renders. Defaults to the system property
+     * hamcrest.sql.mismatch.maxLength, or 4096.
+     */
+    public static void setMaxMismatchLength(int length) {
+        MismatchRendering.setMaxLength(length);
+    }
+
 }
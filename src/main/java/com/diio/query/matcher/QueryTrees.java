@@ -0,0 +1,82 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.Visitable;
+import com.akiban.sql.parser.Visitor;
+
+/**
+ * Helpers for walking parse trees. The parser only exposes traversal through Visitor, which doesn't tell a visitor where it is in the
+ * tree; these helpers recover the direct children of a node so that analyses can be written bottom-up or with an explicit path.
+ */
+final class QueryTrees {
+
+    private QueryTrees() {
+    }
+
+    /**
+     * Returns the direct children of the given node, in the order in which the parser's own traversal visits them.
+     */
+    static List<QueryTreeNode> children(QueryTreeNode node) {
+        final ChildCollector collector = new ChildCollector(node);
+        try {
+            node.accept(collector);
+        } catch (StandardException e) {
+            throw new RuntimeException(e);
+        }
+        return collector.children;
+    }
+
+    /**
+     * Visits the parent, then each of its children without descending any further.
+     */
+    private static class ChildCollector implements Visitor {
+        private final QueryTreeNode parent;
+        private final List<QueryTreeNode> children = new ArrayList<QueryTreeNode>();
+
+        ChildCollector(QueryTreeNode parent) {
+            this.parent = parent;
+        }
+
+        @Override
+        public Visitable visit(Visitable node) throws StandardException {
+            if (node != parent) {
+                children.add((QueryTreeNode) node);
+            }
+            return node;
+        }
+
+        @Override
+        public boolean visitChildrenFirst(Visitable node) {
+            return false;
+        }
+
+        @Override
+        public boolean stopTraversal() {
+            return false;
+        }
+
+        @Override
+        public boolean skipChildren(Visitable node) throws StandardException {
+            return node != parent;
+        }
+    }
+}
@@ -0,0 +1,218 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.math.BigDecimal;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import com.akiban.sql.parser.BetweenOperatorNode;
+import com.akiban.sql.parser.CastNode;
+import com.akiban.sql.parser.CharConstantNode;
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.FromTable;
+import com.akiban.sql.parser.InListOperatorNode;
+import com.akiban.sql.parser.NumericConstantNode;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.ValueNode;
+import com.diio.query.matcher.ConjunctIndex.Conjunct;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * The ranges the WHERE clause of a SELECT restricts its columns to. Each conjunct comparing a column with a literal, BETWEEN
+ * two literals or IN a list of them bounds the column, IN by its least and greatest values, and the bounds of each column are
+ * intersected. Columns are told apart by the table the statement's SymbolTable resolves them to, outer tables of correlated
+ * subqueries included, or failing that their qualifier. Literals that read as ISO dates or timestamps, such as
+ * DATE '2024-01-31', are compared as such.
+ *
+ * The index is built from the SELECT's ConjunctIndex once per SELECT and SymbolTable it is resolved by, and remembered in a
+ * cache of its own for each SymbolTable. Neither cache refers back to its keys, so the SELECT and the statement stay
+ * collectable.
+ *
+ * @see RangeMatcher
+ */
+final class RangeIndex {
+    private static final Cache<SymbolTable, Cache<SelectNode, RangeIndex>> INDEXES = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final Map<List<Object>, Range> byColumn = new LinkedHashMap<List<Object>, Range>();
+    private final Map<String, List<Range>> byName = new HashMap<String, List<Range>>();
+
+    private RangeIndex(SelectNode select, SymbolTable symbols) {
+        final ConjunctIndex conjuncts = ConjunctIndex.of(select);
+        for (String operator : Arrays.asList("=", "<", "<=", ">", ">=")) {
+            for (Conjunct conjunct : conjuncts.lookUp(operator)) {
+                final Comparable<?> value = valueOf(conjunct.getValue());
+                if (conjunct.getSubject() instanceof ColumnReference && value != null) {
+                    constrain(symbols, (ColumnReference) conjunct.getSubject(), intervalOf(operator, value));
+                }
+            }
+        }
+        for (ValueNode conjunct : conjuncts.getOtherConjuncts()) {
+            if (conjunct instanceof BetweenOperatorNode) {
+                between(symbols, (BetweenOperatorNode) conjunct);
+            } else if (conjunct instanceof InListOperatorNode && !((InListOperatorNode) conjunct).isNegated()) {
+                in(symbols, (InListOperatorNode) conjunct);
+            }
+        }
+    }
+
+    /**
+     * The index of the SELECT, its columns resolved by the SymbolTable of the statement being evaluated, as
+     * SymbolTable.containing() finds it, or of the SELECT alone.
+     */
+    static RangeIndex of(final SelectNode select) {
+        final SymbolTable containing = SymbolTable.containing(select);
+        final SymbolTable symbols = containing != null ? containing : SymbolTable.of(select);
+        try {
+            return INDEXES.get(symbols, () -> CacheBuilder.newBuilder().weakKeys().<SelectNode, RangeIndex>build())
+                    .get(select, () -> new RangeIndex(select, symbols));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private static Interval intervalOf(String operator, Comparable<?> value) {
+        switch (operator) {
+        case "<":
+            return Interval.atMost(value, false);
+        case "<=":
+            return Interval.atMost(value, true);
+        case ">":
+            return Interval.atLeast(value, false);
+        case ">=":
+            return Interval.atLeast(value, true);
+        default:
+            return Interval.closed(value, value);
+        }
+    }
+
+    private void between(SymbolTable symbols, BetweenOperatorNode between) {
+        if (between.getLeftOperand() instanceof ColumnReference && between.getRightOperandList().size() == 2) {
+            final Comparable<?> lower = valueOf(between.getRightOperandList().get(0));
+            final Comparable<?> upper = valueOf(between.getRightOperandList().get(1));
+            if (lower != null && upper != null) {
+                constrain(symbols, (ColumnReference) between.getLeftOperand(), Interval.closed(lower, upper));
+            }
+        }
+    }
+
+    private void in(SymbolTable symbols, InListOperatorNode in) {
+        if (in.getLeftOperand().getNodeList().size() != 1 || !(in.getLeftOperand().getNodeList().get(0) instanceof ColumnReference)) {
+            return;
+        }
+        Comparable<?> least = null;
+        Comparable<?> greatest = null;
+        for (ValueNode item : in.getRightOperandList().getNodeList()) {
+            final Comparable<?> value = valueOf(item);
+            if (value == null || least != null && Interval.compare(value, least) == Integer.MIN_VALUE) {
+                return;
+            }
+            if (least == null || Interval.compare(value, least) < 0) {
+                least = value;
+            }
+            if (greatest == null || Interval.compare(value, greatest) > 0) {
+                greatest = value;
+            }
+        }
+        if (least != null) {
+            constrain(symbols, (ColumnReference) in.getLeftOperand().getNodeList().get(0), Interval.closed(least, greatest));
+        }
+    }
+
+    private void constrain(SymbolTable symbols, ColumnReference column, Interval interval) {
+        final FromTable table = symbols.resolve(column);
+        final String name = SymbolTable.normalize(column.getColumnName());
+        final List<Object> key = Arrays.<Object>asList(table != null ? table
+                : column.getTableName() != null ? SymbolTable.normalize(column.getTableName()) : "", name);
+        Range range = byColumn.get(key);
+        if (range == null) {
+            range = new Range();
+            byColumn.put(key, range);
+            List<Range> named = byName.get(name);
+            if (named == null) {
+                named = new ArrayList<Range>();
+                byName.put(name, named);
+            }
+            named.add(range);
+        }
+        range.columns.add(column);
+        range.interval = range.interval.intersect(interval);
+    }
+
+    /**
+     * The value of a numeric or character literal, possibly cast, as a BigDecimal, a LocalDateTime if it reads as an ISO date
+     * or timestamp, or else a String; null for anything else.
+     */
+    static Comparable<?> valueOf(ValueNode node) {
+        if (node instanceof CastNode) {
+            return valueOf(((CastNode) node).getCastOperand());
+        }
+        if (node instanceof NumericConstantNode && ((NumericConstantNode) node).getValue() != null) {
+            return new BigDecimal(((NumericConstantNode) node).getValue().toString());
+        }
+        if (node instanceof CharConstantNode && ((CharConstantNode) node).getValue() != null) {
+            final String text = ((CharConstantNode) node).getValue().toString();
+            try {
+                return LocalDate.parse(text).atStartOfDay();
+            } catch (DateTimeParseException notADate) {
+                try {
+                    return LocalDateTime.parse(text.replace(' ', 'T'));
+                } catch (DateTimeParseException notATimestamp) {
+                    return text;
+                }
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The ranges of the columns with the given name.
+     */
+    List<Range> lookUp(String column) {
+        final List<Range> named = byName.get(SymbolTable.normalize(column));
+        return named == null ? Collections.<Range>emptyList() : named;
+    }
+
+    List<Range> getRanges() {
+        return new ArrayList<Range>(byColumn.values());
+    }
+
+    /**
+     * The range of one column, with the references to it that bound it.
+     */
+    static final class Range {
+        private final List<ColumnReference> columns = new ArrayList<ColumnReference>();
+        private Interval interval = Interval.UNBOUNDED;
+
+        List<ColumnReference> getColumns() {
+            return columns;
+        }
+
+        Interval getInterval() {
+            return interval;
+        }
+    }
+}
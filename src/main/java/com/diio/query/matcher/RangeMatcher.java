@@ -0,0 +1,162 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SelectNode;
+import com.diio.query.matcher.RangeIndex.Range;
+
+/**
+ * Matches a SELECT whose WHERE clause restricts a column to a range satisfying the condition, e.g. to at most 31 days. The
+ * ranges are worked out once per SELECT, see RangeIndex, so the condition is checked against an Interval rather than by
+ * matching comparisons. A column the clause doesn't restrict has the UNBOUNDED interval; if the column matcher matches columns
+ * of several tables, the condition must hold for each.
+ *
+ * For example, assertThat(query, hasInQuery(rangeOf(column("booking_date"), spanAtMost(Duration.ofDays(31)))));
+ *
+ * @see RangeIndex
+ */
+public class RangeMatcher extends QueryTreeNodeMatcher {
+
+    private final Matcher<QueryTreeNode> column;
+    private final Matcher<Interval> condition;
+
+    public RangeMatcher(Matcher<QueryTreeNode> column, Matcher<Interval> condition) {
+        this.column = column;
+        this.condition = condition;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { column, condition };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("a where clause restricting ").appendText(descriptionOf(column)).appendText(" to ")
+                .appendText(descriptionOf(condition));
+    }
+
+    @Override
+    protected void describeNodeMismatch(QueryTreeNode item, Description mismatchDescription) {
+        if (!(item instanceof SelectNode)) {
+            super.describeNodeMismatch(item, mismatchDescription);
+            return;
+        }
+        mismatchDescription.appendText("restricted it to ");
+        final List<Interval> intervals = intervals((SelectNode) item);
+        mismatchDescription.appendText(intervals.isEmpty() ? Interval.UNBOUNDED.toString() : intervals.toString());
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        if (!(item instanceof SelectNode)) {
+            return false;
+        }
+        final List<Interval> intervals = intervals((SelectNode) item);
+        if (intervals.isEmpty()) {
+            return condition.matches(Interval.UNBOUNDED);
+        }
+        for (Interval interval : intervals) {
+            if (!condition.matches(interval)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The ranges of the columns the column matcher matches.
+     */
+    private List<Interval> intervals(SelectNode select) {
+        final RangeIndex index = RangeIndex.of(select);
+        final String columnName = column instanceof ColumnMatcher ? ((ColumnMatcher) column).getColumnName() : null;
+        final List<Interval> intervals = new ArrayList<Interval>();
+        for (Range range : columnName != null ? index.lookUp(columnName) : index.getRanges()) {
+            for (ColumnReference reference : range.getColumns()) {
+                if (evaluate(column, reference)) {
+                    intervals.add(range.getInterval());
+                    break;
+                }
+            }
+        }
+        return intervals;
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(query, hasInQuery(rangeOf(column("fare_id"), lowerBoundAtLeast(0))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> rangeOf(Matcher<QueryTreeNode> column, Matcher<Interval> condition) {
+        return new RangeMatcher(column, condition);
+    }
+
+    public static Matcher<Interval> bounded() {
+        return condition("a bounded range", Interval::isBounded);
+    }
+
+    /**
+     * A range of dates or timestamps spanning no more than the duration.
+     */
+    public static Matcher<Interval> spanAtMost(Duration span) {
+        return condition("a range of at most " + span, interval -> interval.getTimeSpan() != null
+                && interval.getTimeSpan().compareTo(span) <= 0);
+    }
+
+    /**
+     * A numeric range spanning no more than the given difference.
+     */
+    public static Matcher<Interval> spanAtMost(Number span) {
+        final BigDecimal limit = new BigDecimal(span.toString());
+        return condition("a range of at most " + span, interval -> interval.getNumericSpan() != null
+                && interval.getNumericSpan().compareTo(limit) <= 0);
+    }
+
+    /**
+     * A numeric range with no values less than the given one.
+     */
+    public static Matcher<Interval> lowerBoundAtLeast(Number bound) {
+        final BigDecimal limit = new BigDecimal(bound.toString());
+        return condition("values of at least " + bound, interval -> interval.isEmpty()
+                || interval.getLower() instanceof BigDecimal && ((BigDecimal) interval.getLower()).compareTo(limit) >= 0);
+    }
+
+    /**
+     * A numeric range with no values greater than the given one.
+     */
+    public static Matcher<Interval> upperBoundAtMost(Number bound) {
+        final BigDecimal limit = new BigDecimal(bound.toString());
+        return condition("values of at most " + bound, interval -> interval.isEmpty()
+                || interval.getUpper() instanceof BigDecimal && ((BigDecimal) interval.getUpper()).compareTo(limit) <= 0);
+    }
+
+    private static Matcher<Interval> condition(String descr, Predicate<Interval> test) {
+        return new Condition<Interval>(Interval.class, descr, test);
+    }
+}
@@ -0,0 +1,289 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.hamcrest.Matcher;
+import org.hamcrest.core.IsAnything;
+import org.hamcrest.core.IsEqual;
+import org.hamcrest.core.IsNull;
+
+import com.akiban.sql.parser.QueryTreeNode;
+
+/**
+ * A set of named rules, each of which holds for a statement when some subtree of it matches, as with hasInQuery. Rules tend to
+ * repeat the same sub-patterns, such as column("tenant_id") or where(...) prefixes; when the set is built, equal sub-patterns
+ * across all its rules are given one shared slot, and evaluating the set then evaluates each slot at most once per node of the
+ * statement. The cost of a statement grows with the number of distinct sub-patterns rather than the total size of the rules.
+ *
+ * For example,
+ *
+ * RuleSet rules = RuleSet.builder().rule("tenant scoped", where(column("tenant_id").equalToLiteral(7)))
+ *         .rule("active tenant", where(and(column("tenant_id").equalToLiteral(7), column("status").equalToLiteral("A"))))
+ *         .build();
+ * Map&lt;String, Boolean&gt; results = rules.evaluate(statement);
+ *
+ * Only sub-patterns made of this library's matchers, and of Hamcrest's anything, equalTo and nullValue, are shared. Sub-patterns
+ * which capture or refer to captured nodes depend on the bindings at hand, so they are always evaluated afresh, as are other
+ * matchers whose insides can't be seen.
+ */
+public final class RuleSet {
+
+    private final Map<String, Integer> rules;
+    private final List<Matcher<QueryTreeNode>> distinctRules;
+    private final Map<Matcher<?>, Integer> slots;
+    private final int slotCount;
+
+    private RuleSet(Map<String, Integer> rules, List<Matcher<QueryTreeNode>> distinctRules, Map<Matcher<?>, Integer> slots,
+            int slotCount) {
+        this.rules = rules;
+        this.distinctRules = distinctRules;
+        this.slots = slots;
+        this.slotCount = slotCount;
+    }
+
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * Evaluates every rule against the statement, in one walk over it. Returns whether each rule holds, by name, in the order
+     * the rules were added.
+     */
+    public Map<String, Boolean> evaluate(QueryTreeNode statement) {
+        final boolean[] holds = new boolean[distinctRules.size()];
+        run(statement, null, holds, new int[1]);
+        final Map<String, Boolean> results = new LinkedHashMap<String, Boolean>();
+        for (Map.Entry<String, Integer> rule : rules.entrySet()) {
+            results.put(rule.getKey(), holds[rule.getValue()]);
+        }
+        return results;
+    }
+
+    /**
+     * Evaluates every rule against the statement within the budget. Rules found to hold before the budget ran out are MATCHED
+     * and the others UNDECIDED; if the walk completes, rules that never matched are NO_MATCH.
+     */
+    public Result evaluate(QueryTreeNode statement, Budget budget) {
+        final boolean[] holds = new boolean[distinctRules.size()];
+        final int[] evaluating = new int[1];
+        final boolean complete = run(statement, budget, holds, evaluating);
+        final Map<String, Outcome> outcomes = new LinkedHashMap<String, Outcome>();
+        String exhaustedBy = null;
+        for (Map.Entry<String, Integer> rule : rules.entrySet()) {
+            final int index = rule.getValue();
+            outcomes.put(rule.getKey(), holds[index] ? Outcome.MATCHED : complete ? Outcome.NO_MATCH : Outcome.UNDECIDED);
+            if (!complete && exhaustedBy == null && index == evaluating[0]) {
+                exhaustedBy = rule.getKey();
+            }
+        }
+        return new Result(Collections.unmodifiableMap(outcomes), exhaustedBy);
+    }
+
+    /**
+     * Returns false if the walk was cut short by running out of budget, in which case evaluating holds the rule it was on.
+     */
+    private boolean run(QueryTreeNode statement, Budget budget, boolean[] holds, int[] evaluating) {
+        if (EvaluationContext.current() != null) {
+            throw new IllegalStateException("A RuleSet can't be evaluated from within a matcher");
+        }
+        final EvaluationContext context = EvaluationContext.openShared(slots, slotCount);
+        final boolean entered = EvaluationContext.enter(statement);
+        try {
+            if (budget != null) {
+                context.limit(budget);
+            }
+            walk(statement, null, context, holds, holds.length, evaluating);
+            return true;
+        } catch (EvaluationContext.BudgetExhausted e) {
+            return false;
+        } finally {
+            if (entered) {
+                EvaluationContext.leave();
+            }
+            EvaluationContext.close();
+        }
+    }
+
+    /**
+     * How many distinct rules are evaluated; rules equal to an earlier one are answered by it.
+     */
+    public int getDistinctRuleCount() {
+        return distinctRules.size();
+    }
+
+    /**
+     * How many distinct sub-patterns, rules included, are evaluated at most once per node.
+     */
+    public int getSharedSubPatternCount() {
+        return slotCount;
+    }
+
+    /**
+     * Tries each rule not yet known to hold at the node, then carries on below it until every rule holds. Each rule tried counts
+     * against the budget, so it always runs out while evaluating some rule.
+     *
+     * @return how many rules are still undecided
+     */
+    private int walk(QueryTreeNode node, QueryTreeNode parent, EvaluationContext context, boolean[] holds, int undecided,
+            int[] evaluating) {
+        for (int i = 0; i < holds.length; i++) {
+            evaluating[0] = i;
+            if (!holds[i] && QueryHasMatcher.matchesAt(distinctRules.get(i), node, parent, context)) {
+                holds[i] = true;
+                undecided--;
+            }
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            if (undecided == 0) {
+                break;
+            }
+            undecided = walk(child, node, context, holds, undecided, evaluating);
+        }
+        return undecided;
+    }
+
+    /**
+     * The outcome of each rule of an evaluation within a budget, by name in the order the rules were added.
+     */
+    public static final class Result {
+        private final Map<String, Outcome> outcomes;
+        private final String exhaustedBy;
+
+        private Result(Map<String, Outcome> outcomes, String exhaustedBy) {
+            this.outcomes = outcomes;
+            this.exhaustedBy = exhaustedBy;
+        }
+
+        public Map<String, Outcome> getOutcomes() {
+            return outcomes;
+        }
+
+        public Outcome getOutcome(String rule) {
+            return outcomes.get(rule);
+        }
+
+        /**
+         * Whether every rule was decided within the budget.
+         */
+        public boolean isComplete() {
+            return exhaustedBy == null;
+        }
+
+        /**
+         * The name of the rule that was being evaluated when the budget ran out; null if it didn't.
+         */
+        public String getExhaustedBy() {
+            return exhaustedBy;
+        }
+
+        @Override
+        public String toString() {
+            return exhaustedBy == null ? outcomes.toString() : outcomes + ", budget exhausted by " + exhaustedBy;
+        }
+    }
+
+    public static final class Builder {
+        private final Map<String, Matcher<QueryTreeNode>> rules = new LinkedHashMap<String, Matcher<QueryTreeNode>>();
+
+        private Builder() {
+        }
+
+        public Builder rule(String name, Matcher<QueryTreeNode> matcher) {
+            if (matcher == null) {
+                throw new IllegalArgumentException("Rule " + name + " has no matcher");
+            }
+            if (rules.put(name, matcher) != null) {
+                throw new IllegalArgumentException("Duplicate rule " + name);
+            }
+            return this;
+        }
+
+        public RuleSet build() {
+            final Map<Matcher<?>, Integer> canonical = new HashMap<Matcher<?>, Integer>();
+            final Map<Matcher<?>, Integer> slots = new IdentityHashMap<Matcher<?>, Integer>();
+            final Map<Matcher<QueryTreeNode>, Integer> distinct = new LinkedHashMap<Matcher<QueryTreeNode>, Integer>();
+            final Map<String, Integer> indexes = new LinkedHashMap<String, Integer>();
+            for (Map.Entry<String, Matcher<QueryTreeNode>> rule : rules.entrySet()) {
+                Integer index = distinct.get(rule.getValue());
+                if (index == null) {
+                    index = distinct.size();
+                    distinct.put(rule.getValue(), index);
+                    intern(rule.getValue(), canonical, slots);
+                }
+                indexes.put(rule.getKey(), index);
+            }
+            return new RuleSet(Collections.unmodifiableMap(indexes), new ArrayList<Matcher<QueryTreeNode>>(distinct.keySet()),
+                    slots, canonical.size());
+        }
+
+        /**
+         * Gives the matchers within the component a slot, shared with any equal matcher seen before, provided their results don't
+         * depend on bindings. Returns whether that is the case for the whole component.
+         */
+        private static boolean intern(Object component, Map<Matcher<?>, Integer> canonical, Map<Matcher<?>, Integer> slots) {
+            if (component instanceof Object[]) {
+                boolean pure = true;
+                for (Object element : (Object[]) component) {
+                    pure &= intern(element, canonical, slots);
+                }
+                return pure;
+            }
+            if (component instanceof List) {
+                return intern(((List<?>) component).toArray(), canonical, slots);
+            }
+            if (component instanceof CaseBranchMatcher.Branch) {
+                return intern(((CaseBranchMatcher.Branch) component).valueComponents(), canonical, slots);
+            }
+            if (!(component instanceof Matcher)) {
+                return true;
+            }
+            final Matcher<?> matcher = (Matcher<?>) component;
+            if (slots.containsKey(matcher)) {
+                return true;
+            }
+            final boolean pure;
+            if (matcher instanceof CaptureMatcher) {
+                intern(((CaptureMatcher) matcher).valueComponents(), canonical, slots);
+                pure = false;
+            } else if (matcher instanceof QueryTreeNodeMatcher) {
+                final Object[] components = ((QueryTreeNodeMatcher) matcher).valueComponents();
+                pure = components != null && intern(components, canonical, slots);
+            } else if (matcher instanceof QueryHasMatcher) {
+                pure = intern(((QueryHasMatcher) matcher).getSubMatcher(), canonical, slots);
+            } else {
+                pure = matcher instanceof IsAnything || matcher instanceof IsEqual || matcher instanceof IsNull
+                        || matcher instanceof NumberMatcher || matcher instanceof Condition;
+            }
+            if (pure) {
+                Integer slot = canonical.get(matcher);
+                if (slot == null) {
+                    slot = canonical.size();
+                    canonical.put(matcher, slot);
+                }
+                slots.put(matcher, slot);
+            }
+            return pure;
+        }
+    }
+}
@@ -0,0 +1,228 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+
+import com.akiban.sql.parser.BetweenOperatorNode;
+import com.akiban.sql.parser.BinaryArithmeticOperatorNode;
+import com.akiban.sql.parser.BinaryRelationalOperatorNode;
+import com.akiban.sql.parser.CastNode;
+import com.akiban.sql.parser.CharConstantNode;
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.InListOperatorNode;
+import com.akiban.sql.parser.IsNullNode;
+import com.akiban.sql.parser.JoinNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.SimpleStringOperatorNode;
+import com.akiban.sql.parser.SubqueryNode;
+import com.akiban.sql.parser.TernaryOperatorNode;
+import com.akiban.sql.parser.TrimOperatorNode;
+import com.akiban.sql.parser.UnaryArithmeticOperatorNode;
+import com.akiban.sql.parser.ValueNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Finds the predicates of WHERE and ON clauses that no index on a column can serve, because the column is wrapped in the kind of
+ * node UpperLowerFunctionMatcher, TrimOperatorNodeMatcher, CastMatcher, BinaryOperatorNodeMatcher or FunctionMatcher match, as
+ * in UPPER(code) = 'X' or qty + 1 = 5, or because it is compared LIKE a pattern starting with a wildcard, as TernaryMatcher's
+ * like() matches. Comparisons, LIKEs, INs, BETWEENs and null tests are looked at, under ORs and NOTs too, in one walk of the
+ * statement with subqueries taken in turn.
+ *
+ * The findings are worked out once per statement and remembered.
+ *
+ * @see SargabilityMatcher
+ */
+public final class SargabilityAnalyzer {
+    private static final Cache<QueryTreeNode, List<Finding>> FINDINGS = CacheBuilder.newBuilder().weakKeys().build();
+
+    /**
+     * Why a predicate can't use an index on its column.
+     */
+    public enum Reason {
+        CASE_CONVERSION("case conversion"),
+        TRIM("trim"),
+        CAST("cast"),
+        ARITHMETIC("arithmetic"),
+        FUNCTION("function call"),
+        LEADING_WILDCARD("pattern with a leading wildcard");
+
+        private final String description;
+
+        Reason(String description) {
+            this.description = description;
+        }
+
+        @Override
+        public String toString() {
+            return description;
+        }
+    }
+
+    private final List<Finding> findings = new ArrayList<Finding>();
+
+    private SargabilityAnalyzer(QueryTreeNode statement) {
+        walk(statement, false);
+    }
+
+    /**
+     * The non-sargable predicates of the statement, in the order they appear.
+     */
+    public static List<Finding> analyze(final QueryTreeNode statement) {
+        try {
+            return FINDINGS.get(statement, () -> Collections.unmodifiableList(new SargabilityAnalyzer(statement).findings));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    private void walk(QueryTreeNode node, boolean inPredicate) {
+        if (inPredicate) {
+            check(node);
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            if (node instanceof SelectNode) {
+                walk(child, child == ((SelectNode) node).getWhereClause());
+            } else if (node instanceof JoinNode && child == ((JoinNode) node).getJoinClause()) {
+                walk(child, true);
+            } else {
+                walk(child, inPredicate && !(node instanceof SubqueryNode));
+            }
+        }
+    }
+
+    private void check(QueryTreeNode node) {
+        if (node instanceof BinaryRelationalOperatorNode) {
+            check(node, ((BinaryRelationalOperatorNode) node).getLeftOperand());
+            check(node, ((BinaryRelationalOperatorNode) node).getRightOperand());
+        } else if (node instanceof TernaryOperatorNode && "like".equalsIgnoreCase(((TernaryOperatorNode) node).getOperator())) {
+            final ValueNode receiver = ((TernaryOperatorNode) node).getReceiver();
+            final ValueNode pattern = ((TernaryOperatorNode) node).getLeftOperand();
+            if (receiver instanceof ColumnReference && pattern instanceof CharConstantNode
+                    && startsWithWildcard(((CharConstantNode) pattern).getValue())) {
+                findings.add(new Finding(node, receiver, (ColumnReference) receiver, Reason.LEADING_WILDCARD));
+            } else {
+                check(node, receiver);
+            }
+        } else if (node instanceof InListOperatorNode) {
+            for (ValueNode operand : ((InListOperatorNode) node).getLeftOperand().getNodeList()) {
+                check(node, operand);
+            }
+        } else if (node instanceof BetweenOperatorNode) {
+            check(node, ((BetweenOperatorNode) node).getLeftOperand());
+        } else if (node instanceof IsNullNode) {
+            check(node, ((IsNullNode) node).getOperand());
+        }
+    }
+
+    private static boolean startsWithWildcard(Object pattern) {
+        return pattern != null && (pattern.toString().startsWith("%") || pattern.toString().startsWith("_"));
+    }
+
+    /**
+     * Records the operand of the predicate if it wraps a column.
+     */
+    private void check(QueryTreeNode predicate, ValueNode operand) {
+        if (operand instanceof ColumnReference) {
+            return;
+        }
+        final ColumnReference column = columnIn(operand);
+        if (column != null) {
+            findings.add(new Finding(predicate, operand, column, reasonFor(operand)));
+        }
+    }
+
+    private static Reason reasonFor(ValueNode operand) {
+        if (operand instanceof SimpleStringOperatorNode) {
+            return Reason.CASE_CONVERSION;
+        } else if (operand instanceof TrimOperatorNode) {
+            return Reason.TRIM;
+        } else if (operand instanceof CastNode) {
+            return Reason.CAST;
+        } else if (operand instanceof BinaryArithmeticOperatorNode) {
+            return Reason.ARITHMETIC;
+        } else if (operand instanceof UnaryArithmeticOperatorNode) {
+            // ABS and SQRT are parsed as unary arithmetic too
+            final String operator = ((UnaryArithmeticOperatorNode) operand).getOperator();
+            return "-".equals(operator) || "+".equals(operator) ? Reason.ARITHMETIC : Reason.FUNCTION;
+        }
+        return Reason.FUNCTION;
+    }
+
+    /**
+     * The first column the node is computed from, outside any subquery; null if none.
+     */
+    private static ColumnReference columnIn(QueryTreeNode node) {
+        if (node instanceof ColumnReference) {
+            return (ColumnReference) node;
+        }
+        if (node instanceof SubqueryNode) {
+            return null;
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            final ColumnReference column = columnIn(child);
+            if (column != null) {
+                return column;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * A predicate that can't use an index on a column: the predicate, the operand of it wrapping the column (the column itself
+     * for a LIKE with a leading wildcard), the column and why.
+     */
+    public static final class Finding {
+        private final QueryTreeNode predicate;
+        private final ValueNode operand;
+        private final ColumnReference column;
+        private final Reason reason;
+
+        Finding(QueryTreeNode predicate, ValueNode operand, ColumnReference column, Reason reason) {
+            this.predicate = predicate;
+            this.operand = operand;
+            this.column = column;
+            this.reason = reason;
+        }
+
+        public QueryTreeNode getPredicate() {
+            return predicate;
+        }
+
+        public ValueNode getOperand() {
+            return operand;
+        }
+
+        public ColumnReference getColumn() {
+            return column;
+        }
+
+        public Reason getReason() {
+            return reason;
+        }
+
+        @Override
+        public String toString() {
+            final String sql = MismatchRendering.sql(predicate);
+            return reason + " on " + column.getSQLColumnName() + (sql == null ? "" : " in " + sql);
+        }
+    }
+}
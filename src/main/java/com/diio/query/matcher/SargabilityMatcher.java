@@ -0,0 +1,73 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.List;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.QueryTreeNode;
+import com.diio.query.matcher.SargabilityAnalyzer.Finding;
+
+/**
+ * Matches a statement none of whose WHERE or ON predicates defeat an index on their column, for gating queries in CI. Meant to be
+ * applied to the statement itself rather than within hasInQuery.
+ *
+ * For example, assertThat(statement, noNonSargablePredicates());
+ *
+ * @see SargabilityAnalyzer
+ */
+public class SargabilityMatcher extends QueryTreeNodeMatcher {
+
+    private SargabilityMatcher() {
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[0];
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("no predicates defeating an index");
+    }
+
+    @Override
+    protected void describeNodeMismatch(QueryTreeNode item, Description mismatchDescription) {
+        final List<Finding> findings = SargabilityAnalyzer.analyze(item);
+        mismatchDescription.appendText("found " + findings.size() + ":");
+        for (Finding finding : findings) {
+            mismatchDescription.appendText("\n  ").appendText(finding.toString());
+        }
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        return SargabilityAnalyzer.analyze(item).isEmpty();
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(statement, noNonSargablePredicates());
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> noNonSargablePredicates() {
+        return new SargabilityMatcher();
+    }
+}
@@ -0,0 +1,174 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Properties;
+import java.util.Set;
+
+import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.ColumnDefinitionNode;
+import com.akiban.sql.parser.CreateTableNode;
+import com.akiban.sql.parser.FromBaseTable;
+import com.akiban.sql.parser.SQLParser;
+import com.akiban.sql.parser.StatementNode;
+import com.akiban.sql.parser.TableElementNode;
+import com.akiban.sql.parser.TableName;
+import com.google.common.collect.ImmutableSetMultimap;
+
+/**
+ * The columns of each table of a database, used to tell which table an unqualified column belongs to when a query block has
+ * more than one. Loaded once from CREATE TABLE statements or from properties naming each table's columns, e.g.
+ *
+ *   orders = id, customer_id, status
+ *   sales.refunds = id, order_id
+ *
+ * A Schema is immutable, so one instance can be shared by any number of threads and statements.
+ *
+ * For example, assertThat(query, hasInQuery(column("orders.status").using(schema)));
+ *
+ * @see SymbolTable
+ */
+public final class Schema {
+
+    private final ImmutableSetMultimap<String, String> columnsByTable;
+    private final ImmutableSetMultimap<String, String> tablesByColumn;
+
+    private Schema(ImmutableSetMultimap<String, String> columnsByTable, ImmutableSetMultimap<String, String> tablesByColumn) {
+        this.columnsByTable = columnsByTable;
+        this.tablesByColumn = tablesByColumn;
+    }
+
+    /**
+     * The schema described by the CREATE TABLE statements of the DDL. Other statements are ignored.
+     */
+    public static Schema fromDdl(String ddl) {
+        final Builder builder = new Builder();
+        try {
+            for (StatementNode statement : new SQLParser().parseStatements(ddl)) {
+                if (statement instanceof CreateTableNode && ((CreateTableNode) statement).getTableElementList() != null) {
+                    final CreateTableNode create = (CreateTableNode) statement;
+                    for (TableElementNode element : create.getTableElementList()) {
+                        if (element instanceof ColumnDefinitionNode) {
+                            builder.add(create.getObjectName(), ((ColumnDefinitionNode) element).getColumnName());
+                        }
+                    }
+                }
+            }
+        } catch (StandardException e) {
+            throw new IllegalArgumentException("invalid or unrecognized ddl:\n\n" + ddl, e);
+        }
+        return builder.build();
+    }
+
+    /**
+     * The schema described by properties whose keys are table names, optionally schema qualified, and whose values are the
+     * comma separated names of their columns.
+     */
+    public static Schema fromProperties(Properties properties) {
+        final Builder builder = new Builder();
+        for (String table : properties.stringPropertyNames()) {
+            for (String column : properties.getProperty(table).split(",")) {
+                if (!column.trim().isEmpty()) {
+                    builder.add(table.trim(), column.trim());
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * Loads a schema from a file, of DDL if its name ends in ".sql" and of properties otherwise.
+     */
+    public static Schema load(Path file) throws IOException {
+        final String text = new String(Files.readAllBytes(file), StandardCharsets.UTF_8);
+        if (SymbolTable.normalize(file.getFileName().toString()).endsWith(".sql")) {
+            return fromDdl(text);
+        }
+        final Properties properties = new Properties();
+        properties.load(new StringReader(text));
+        return fromProperties(properties);
+    }
+
+    /**
+     * Whether the table has the column. A schema qualified table is looked for by its qualified name first, so tables of the
+     * same name in different schemas can be told apart.
+     */
+    public boolean hasColumn(String table, String column) {
+        return columnsByTable.containsEntry(SymbolTable.normalize(table), SymbolTable.normalize(column));
+    }
+
+    boolean hasColumn(FromBaseTable table, String column) {
+        final String columnKey = SymbolTable.normalize(column);
+        final TableName name = table.getOrigTableName();
+        if (name.getSchemaName() != null) {
+            final String qualified = SymbolTable.normalize(name.getSchemaName() + "." + name.getTableName());
+            if (columnsByTable.containsKey(qualified)) {
+                return columnsByTable.containsEntry(qualified, columnKey);
+            }
+        }
+        return columnsByTable.containsEntry(SymbolTable.normalize(name.getTableName()), columnKey);
+    }
+
+    boolean describes(FromBaseTable table) {
+        final TableName name = table.getOrigTableName();
+        return columnsByTable.containsKey(SymbolTable.normalize(name.getTableName())) || name.getSchemaName() != null
+                && columnsByTable.containsKey(SymbolTable.normalize(name.getSchemaName() + "." + name.getTableName()));
+    }
+
+    /**
+     * The names of the tables having the column, schema qualified where they were described so.
+     */
+    public Set<String> tablesWithColumn(String column) {
+        return tablesByColumn.get(SymbolTable.normalize(column));
+    }
+
+    @Override
+    public String toString() {
+        return "Schema" + columnsByTable;
+    }
+
+    private static final class Builder {
+        private final ImmutableSetMultimap.Builder<String, String> columnsByTable = ImmutableSetMultimap.builder();
+        private final ImmutableSetMultimap.Builder<String, String> tablesByColumn = ImmutableSetMultimap.builder();
+
+        void add(TableName table, String column) {
+            add(table.getSchemaName() == null ? table.getTableName() : table.getSchemaName() + "." + table.getTableName(), column);
+        }
+
+        /**
+         * Adds the column under the table's name as given and, if that is schema qualified, under its unqualified name too.
+         */
+        void add(String table, String column) {
+            final String tableKey = SymbolTable.normalize(table);
+            final String columnKey = SymbolTable.normalize(column);
+            columnsByTable.put(tableKey, columnKey);
+            final int period = tableKey.lastIndexOf('.');
+            if (period >= 0) {
+                columnsByTable.put(tableKey.substring(period + 1), columnKey);
+            }
+            tablesByColumn.put(columnKey, tableKey);
+        }
+
+        Schema build() {
+            return new Schema(columnsByTable.build(), tablesByColumn.build());
+        }
+    }
+}
@@ -0,0 +1,134 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.Predicate;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.QueryTreeNode;
+
+/**
+ * Matches a statement whose QueryShape satisfies all the given conditions. The shape is computed once per statement, so each
+ * condition is a field lookup. Meant to be applied to the statement itself rather than within hasInQuery, which would compute
+ * a shape for every subtree.
+ *
+ * For example, assertThat(statement, shape(hasGroupBy(), joinCountAtMost(4)));
+ *
+ * @see QueryShape
+ */
+public class ShapeMatcher extends QueryTreeNodeMatcher {
+
+    private final List<Matcher<QueryShape>> conditions;
+
+    public ShapeMatcher(List<Matcher<QueryShape>> conditions) {
+        this.conditions = new ArrayList<Matcher<QueryShape>>(conditions);
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { conditions };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText("a statement shaped with ");
+        for (int i = 0; i < conditions.size(); i++) {
+            if (i > 0) {
+                description.appendText(" and ");
+            }
+            description.appendText(descriptionOf(conditions.get(i)));
+        }
+    }
+
+    @Override
+    protected void describeNodeMismatch(QueryTreeNode item, Description mismatchDescription) {
+        mismatchDescription.appendText("was shaped ").appendText(QueryShape.of(item).toString());
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        final QueryShape shape = QueryShape.of(item);
+        for (Matcher<QueryShape> condition : conditions) {
+            if (!condition.matches(shape)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(query, shape(hasGroupBy(), joinCountAtMost(4)));
+     */
+    @Factory
+    @SafeVarargs
+    public static Matcher<QueryTreeNode> shape(Matcher<QueryShape>... conditions) {
+        final List<Matcher<QueryShape>> copy = new ArrayList<Matcher<QueryShape>>(conditions.length);
+        for (Matcher<QueryShape> condition : conditions) {
+            copy.add(condition);
+        }
+        return new ShapeMatcher(copy);
+    }
+
+    public static Matcher<QueryShape> hasGroupBy() {
+        return feature("a GROUP BY", QueryShape::hasGroupBy);
+    }
+
+    public static Matcher<QueryShape> hasHaving() {
+        return feature("a HAVING clause", QueryShape::hasHaving);
+    }
+
+    public static Matcher<QueryShape> hasOrderBy() {
+        return feature("an ORDER BY", QueryShape::hasOrderBy);
+    }
+
+    public static Matcher<QueryShape> hasDistinct() {
+        return feature("a DISTINCT", QueryShape::hasDistinct);
+    }
+
+    /**
+     * A FETCH FIRST, LIMIT or OFFSET.
+     */
+    public static Matcher<QueryShape> hasFetchFirst() {
+        return feature("a row limit", QueryShape::hasFetchFirst);
+    }
+
+    public static Matcher<QueryShape> tableCountAtMost(int count) {
+        return feature("at most " + count + " tables", shape -> shape.getTableCount() <= count);
+    }
+
+    public static Matcher<QueryShape> joinCountAtMost(int count) {
+        return feature("at most " + count + " joins", shape -> shape.getJoinCount() <= count);
+    }
+
+    public static Matcher<QueryShape> resultColumnCountAtMost(int count) {
+        return feature("at most " + count + " result columns", shape -> shape.getResultColumnCount() <= count);
+    }
+
+    public static Matcher<QueryShape> subqueryDepthAtMost(int depth) {
+        return feature("subqueries nested at most " + depth + " deep", shape -> shape.getSubqueryDepth() <= depth);
+    }
+
+    private static Matcher<QueryShape> feature(String descr, Predicate<QueryShape> test) {
+        return new Condition<QueryShape>(QueryShape.class, descr, test);
+    }
+}
@@ -0,0 +1,511 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import com.akiban.sql.parser.AggregateNode;
+import com.akiban.sql.parser.CastNode;
+import com.akiban.sql.parser.CoalesceFunctionNode;
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.ConditionalNode;
+import com.akiban.sql.parser.ConstantNode;
+import com.akiban.sql.parser.ExtractOperatorNode;
+import com.akiban.sql.parser.IsNullNode;
+import com.akiban.sql.parser.NotNode;
+import com.akiban.sql.parser.ParameterNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.SimpleCaseNode;
+import com.akiban.sql.parser.SimpleStringOperatorNode;
+import com.akiban.sql.parser.StaticMethodCallNode;
+import com.akiban.sql.parser.TernaryOperatorNode;
+import com.akiban.sql.parser.TrimOperatorNode;
+import com.akiban.sql.parser.UnaryArithmeticOperatorNode;
+import com.akiban.sql.parser.UntypedNullConstantNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Locates the text of a parse tree node in the SQL it was parsed from.
+ *
+ * The parser only records positions on some nodes, chiefly column references and the heads of AND/OR chains, so the span of any
+ * other node is put together from the positioned nodes beneath it. It is then widened over the SQL tokens which have no node
+ * position of their own: literals before the first or after the last positioned node, a column's qualifiers, the name and
+ * parentheses of function-like nodes, CASE ... END, IS NULL and NOT, and any parentheses left unbalanced. Nodes with nothing
+ * positioned beneath them, such as a bare literal, COUNT(*) or a table in the FROM list, have no span.
+ *
+ * Spans are kept per node, and the tokens of the most recently sliced SQL texts by value, so slicing many matches out of one
+ * statement tokenizes it once, however many copies of its text the caller passes.
+ */
+final class SourceSpans {
+
+    private static final Set<String> CLAUSE_KEYWORDS = new HashSet<String>(Arrays.asList("SELECT", "FROM", "WHERE", "GROUP", "HAVING",
+            "ORDER", "UNION", "EXCEPT", "INTERSECT", "FETCH", "OFFSET", "LIMIT", "VALUES", "SET"));
+
+    private static final Set<String> NOT_FUNCTION_NAMES = new HashSet<String>(Arrays.asList("IN", "AND", "OR", "NOT", "ON", "WHERE",
+            "HAVING", "WHEN", "THEN", "ELSE", "SELECT", "EXISTS", "BETWEEN", "LIKE", "IS", "AS", "FROM", "JOIN", "BY", "VALUES", "CASE",
+            "ALL", "ANY", "SOME", "DISTINCT"));
+
+    private static final Cache<String, Token[]> TOKENS = CacheBuilder.newBuilder().maximumSize(100).build();
+
+    private static final Cache<QueryTreeNode, Span> SPANS = CacheBuilder.newBuilder().weakKeys().build();
+
+    private SourceSpans() {
+    }
+
+    /**
+     * Returns {begin, end} character offsets of the node in the SQL, end inclusive, or null if the node can't be located.
+     */
+    static int[] of(QueryTreeNode node, String sql) {
+        final Token[] tokens = tokens(sql);
+        final Span span = span(node, sql, tokens);
+        if (span.first < 0) {
+            return null;
+        }
+        return new int[] { tokens[span.first].begin, tokens[span.last].end };
+    }
+
+    private static Token[] tokens(String sql) {
+        Token[] tokens = TOKENS.getIfPresent(sql);
+        if (tokens == null) {
+            tokens = tokenize(sql);
+            TOKENS.put(sql, tokens);
+        }
+        return tokens;
+    }
+
+    private static Span span(QueryTreeNode node, String sql, Token[] tokens) {
+        Span span = SPANS.getIfPresent(node);
+        if (span == null || span.sql != sql && !span.sql.equals(sql)) {
+            span = compute(node, sql, tokens);
+            SPANS.put(node, span);
+        }
+        return span;
+    }
+
+    private static Span compute(QueryTreeNode node, String sql, Token[] tokens) {
+        int first = -1;
+        int last = -1;
+        int leading = 0;
+        int trailing = 0;
+        if (node.getBeginOffset() >= 0 && node.getEndOffset() >= node.getBeginOffset()) {
+            first = tokenAt(tokens, node.getBeginOffset());
+            last = tokenAt(tokens, node.getEndOffset());
+            if (last >= tokens.length || tokens[last].begin > node.getEndOffset()) {
+                last--;
+            }
+            if (first > last) {
+                first = -1;
+                last = -1;
+            }
+        }
+        if (first < 0) {
+            if (isLiteral(node)) {
+                leading = 1;
+            }
+            for (QueryTreeNode child : QueryTrees.children(node)) {
+                final Span childSpan = span(child, sql, tokens);
+                if (childSpan.first < 0) {
+                    if (first < 0) {
+                        leading += childSpan.literals;
+                    } else {
+                        trailing += childSpan.literals;
+                    }
+                } else {
+                    first = first < 0 ? childSpan.first : Math.min(first, childSpan.first);
+                    last = Math.max(last, childSpan.last);
+                    trailing = 0;
+                }
+            }
+            if (first < 0) {
+                return new Span(sql, -1, -1, leading);
+            }
+            final int start = first;
+            first = extendBackward(tokens, first, last, leading);
+            last = extendForward(tokens, start, last, trailing);
+        }
+        if (node instanceof ColumnReference) {
+            while (first >= 2 && tokens[first - 1].is(".") && tokens[first - 2].isName()) {
+                first -= 2;
+            }
+        }
+        if (node instanceof IsNullNode) {
+            while (last + 1 < tokens.length && (tokens[last + 1].is("IS") || tokens[last + 1].is("NOT") || tokens[last + 1].is("NULL"))) {
+                last++;
+            }
+        }
+        if (node instanceof NotNode && first > 0 && tokens[first - 1].is("NOT")) {
+            first--;
+        }
+        if (node instanceof UnaryArithmeticOperatorNode && first > 0 && (tokens[first - 1].is("-") || tokens[first - 1].is("+"))) {
+            first--;
+        }
+        if (isCase(node)) {
+            first = enclosingCase(tokens, first);
+        }
+        if (node instanceof SelectNode) {
+            while (first > 0 && (tokens[first - 1].is("DISTINCT") || tokens[first - 1].is("ALL"))) {
+                first--;
+            }
+            if (first > 0 && tokens[first - 1].is("SELECT")) {
+                first--;
+            }
+        }
+        final int[] balanced = balance(tokens, first, last);
+        first = balanced[0];
+        last = balanced[1];
+        if (isFunctionLike(node)) {
+            final int open = enclosingOpen(tokens, first);
+            if (open >= 1 && tokens[open - 1].isName() && !NOT_FUNCTION_NAMES.contains(tokens[open - 1].upper)) {
+                final int close = matchingClose(tokens, open);
+                if (close >= last) {
+                    first = open - 1;
+                    last = close;
+                }
+            }
+        }
+        return new Span(sql, first, last, 0);
+    }
+
+    private static boolean isLiteral(QueryTreeNode node) {
+        return (node instanceof ConstantNode && !(node instanceof UntypedNullConstantNode)) || node instanceof ParameterNode;
+    }
+
+    private static boolean isCase(QueryTreeNode node) {
+        return node instanceof SimpleCaseNode || (node instanceof ConditionalNode && !((ConditionalNode) node).isNullIfNode());
+    }
+
+    /**
+     * Whether the node is written as a name followed by its arguments in parentheses. The arguments may be separated by commas or
+     * keywords, so the span of the node is that of the whole call rather than what its arguments add up to.
+     */
+    private static boolean isFunctionLike(QueryTreeNode node) {
+        return node instanceof AggregateNode || node instanceof CastNode || node instanceof CoalesceFunctionNode
+                || node instanceof SimpleStringOperatorNode || node instanceof TrimOperatorNode || node instanceof ExtractOperatorNode
+                || node instanceof StaticMethodCallNode || (node instanceof ConditionalNode && ((ConditionalNode) node).isNullIfNode())
+                || (node instanceof TernaryOperatorNode && !"like".equalsIgnoreCase(((TernaryOperatorNode) node).getOperator()));
+    }
+
+    /**
+     * Moves the end forward over the given number of literal tokens, without leaving the enclosing parentheses or clause. A
+     * closing parenthesis is passed over if it only wraps the start of the span, as in (a + 1) * 2.
+     */
+    private static int extendForward(Token[] tokens, int first, int last, int literals) {
+        int depth = 0;
+        for (int i = last + 1; i < tokens.length && literals > 0; i++) {
+            final Token token = tokens[i];
+            if (token.is("(") || token.is("CASE")) {
+                depth++;
+            } else if (token.is(")") || token.is("END")) {
+                if (depth == 0) {
+                    final int open = token.is(")") ? matchingOpen(tokens, i) : -1;
+                    if (open < 0 || open >= first || !all(tokens, open + 1, first - 1, "(")) {
+                        break;
+                    }
+                } else {
+                    depth--;
+                }
+            } else if (depth == 0 && (token.is(",") || token.is(";") || CLAUSE_KEYWORDS.contains(token.upper))) {
+                break;
+            }
+            if (token.isLiteral()) {
+                literals--;
+                last = i;
+            }
+        }
+        return last;
+    }
+
+    /**
+     * Moves the start back over the given number of literal tokens, the mirror image of extendForward, as in 2 * (a + 1).
+     */
+    private static int extendBackward(Token[] tokens, int first, int last, int literals) {
+        int depth = 0;
+        for (int i = first - 1; i >= 0 && literals > 0; i--) {
+            final Token token = tokens[i];
+            if (token.is(")") || token.is("END")) {
+                depth++;
+            } else if (token.is("(") || token.is("CASE")) {
+                if (depth == 0) {
+                    final int close = token.is("(") ? matchingClose(tokens, i) : -1;
+                    if (close <= last || !all(tokens, last + 1, close - 1, ")")) {
+                        break;
+                    }
+                } else {
+                    depth--;
+                }
+            } else if (depth == 0 && (token.is(",") || token.is(";") || CLAUSE_KEYWORDS.contains(token.upper))) {
+                break;
+            }
+            if (token.isLiteral()) {
+                literals--;
+                first = i;
+            }
+        }
+        return first;
+    }
+
+    private static int enclosingCase(Token[] tokens, int first) {
+        int depth = 0;
+        for (int i = first - 1; i >= 0; i--) {
+            if (tokens[i].is("END")) {
+                depth++;
+            } else if (tokens[i].is("CASE")) {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return first;
+    }
+
+    /**
+     * Widens the range until its parentheses and CASE ... END pairs are balanced.
+     */
+    private static int[] balance(Token[] tokens, int first, int last) {
+        int parens = 0;
+        int cases = 0;
+        int missingOpen = 0;
+        int missingCase = 0;
+        for (int i = first; i <= last; i++) {
+            if (tokens[i].is("(")) {
+                parens++;
+            } else if (tokens[i].is(")")) {
+                if (parens == 0) {
+                    missingOpen++;
+                } else {
+                    parens--;
+                }
+            } else if (tokens[i].is("CASE")) {
+                cases++;
+            } else if (tokens[i].is("END")) {
+                if (cases == 0) {
+                    missingCase++;
+                } else {
+                    cases--;
+                }
+            }
+        }
+        while ((missingOpen > 0 || missingCase > 0) && first > 0) {
+            first--;
+            if (tokens[first].is(")")) {
+                missingOpen++;
+            } else if (tokens[first].is("(")) {
+                missingOpen--;
+            } else if (tokens[first].is("END")) {
+                missingCase++;
+            } else if (tokens[first].is("CASE")) {
+                missingCase--;
+            }
+        }
+        while ((parens > 0 || cases > 0) && last + 1 < tokens.length) {
+            last++;
+            if (tokens[last].is("(")) {
+                parens++;
+            } else if (tokens[last].is(")")) {
+                parens--;
+            } else if (tokens[last].is("CASE")) {
+                cases++;
+            } else if (tokens[last].is("END")) {
+                cases--;
+            }
+        }
+        return new int[] { first, last };
+    }
+
+    /**
+     * Whether every token from first to last inclusive is the given one; true if there are none.
+     */
+    private static boolean all(Token[] tokens, int first, int last, String text) {
+        for (int i = first; i <= last; i++) {
+            if (!tokens[i].is(text)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The innermost opening parenthesis left unclosed before the token, or -1.
+     */
+    private static int enclosingOpen(Token[] tokens, int first) {
+        int depth = 0;
+        for (int i = first - 1; i >= 0; i--) {
+            if (tokens[i].is(")")) {
+                depth++;
+            } else if (tokens[i].is("(")) {
+                if (depth == 0) {
+                    return i;
+                }
+                depth--;
+            }
+        }
+        return -1;
+    }
+
+    private static int matchingOpen(Token[] tokens, int close) {
+        int depth = 0;
+        for (int i = close; i >= 0; i--) {
+            if (tokens[i].is(")")) {
+                depth++;
+            } else if (tokens[i].is("(") && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static int matchingClose(Token[] tokens, int open) {
+        int depth = 0;
+        for (int i = open; i < tokens.length; i++) {
+            if (tokens[i].is("(")) {
+                depth++;
+            } else if (tokens[i].is(")") && --depth == 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * The index of the first token which ends at or after the offset.
+     */
+    private static int tokenAt(Token[] tokens, int offset) {
+        int low = 0;
+        int high = tokens.length;
+        while (low < high) {
+            final int middle = (low + high) >>> 1;
+            if (tokens[middle].end < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    static Token[] tokenize(String sql) {
+        final List<Token> tokens = new ArrayList<Token>();
+        int i = 0;
+        final int length = sql.length();
+        while (i < length) {
+            final char c = sql.charAt(i);
+            final int start = i;
+            if (Character.isWhitespace(c)) {
+                i++;
+                continue;
+            }
+            if (c == '-' && i + 1 < length && sql.charAt(i + 1) == '-') {
+                while (i < length && sql.charAt(i) != '\n') {
+                    i++;
+                }
+                continue;
+            }
+            if (c == '/' && i + 1 < length && sql.charAt(i + 1) == '*') {
+                final int close = sql.indexOf("*/", i + 2);
+                i = close < 0 ? length : close + 2;
+                continue;
+            }
+            Kind kind;
+            if (c == '\'' || c == '"' || c == '`') {
+                i++;
+                while (i < length) {
+                    if (sql.charAt(i) == c) {
+                        if (i + 1 < length && sql.charAt(i + 1) == c) {
+                            i += 2;
+                            continue;
+                        }
+                        break;
+                    }
+                    i++;
+                }
+                i = Math.min(i + 1, length);
+                kind = c == '\'' ? Kind.STRING : Kind.NAME;
+            } else if (Character.isDigit(c) || (c == '.' && i + 1 < length && Character.isDigit(sql.charAt(i + 1)))) {
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '.')) {
+                    i++;
+                }
+                kind = Kind.NUMBER;
+            } else if (Character.isLetter(c) || c == '_' || c == '$') {
+                while (i < length && (Character.isLetterOrDigit(sql.charAt(i)) || sql.charAt(i) == '_' || sql.charAt(i) == '$')) {
+                    i++;
+                }
+                kind = Kind.NAME;
+            } else {
+                i++;
+                if (i < length && "<>=!|".indexOf(c) >= 0 && "<>=|".indexOf(sql.charAt(i)) >= 0) {
+                    i++;
+                }
+                kind = c == '?' ? Kind.PARAMETER : Kind.PUNCTUATION;
+            }
+            tokens.add(new Token(kind, sql.substring(start, i), start, i - 1));
+        }
+        return tokens.toArray(new Token[tokens.size()]);
+    }
+
+    private enum Kind {
+        NAME, NUMBER, STRING, PARAMETER, PUNCTUATION
+    }
+
+    private static class Token {
+        private final Kind kind;
+        private final String upper;
+        private final int begin;
+        private final int end;
+
+        Token(Kind kind, String text, int begin, int end) {
+            this.kind = kind;
+            this.upper = text.toUpperCase();
+            this.begin = begin;
+            this.end = end;
+        }
+
+        boolean is(String text) {
+            return upper.equals(text);
+        }
+
+        boolean isName() {
+            return kind == Kind.NAME;
+        }
+
+        boolean isLiteral() {
+            return kind == Kind.NUMBER || kind == Kind.STRING || kind == Kind.PARAMETER || is("TRUE") || is("FALSE");
+        }
+    }
+
+    /**
+     * A node's first and last token, or -1 with the number of literals beneath it if nothing beneath it is positioned.
+     */
+    private static class Span {
+        private final String sql;
+        private final int first;
+        private final int last;
+        private final int literals;
+
+        Span(String sql, int first, int last, int literals) {
+            this.sql = sql;
+            this.first = first;
+            this.last = last;
+            this.literals = literals;
+        }
+    }
+}
@@ -0,0 +1,182 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SQLParser;
+
+/**
+ * Fluent soft assertions about a single statement. Expectations are collected first and then checked together, in one walk over
+ * the statement which tries every unresolved expectation at each node, rather than one walk per assertThat. Every expectation
+ * that fails is reported, not just the first.
+ *
+ * For example,
+ *
+ * assertThatSql(sql).has(column("my_id")).doesNotHave(table("audit")).where(column("status").equalToLiteral("A")).verify();
+ *
+ * has and doesNotHave have the meaning of hasInQuery and not(hasInQuery(...)), and captures work as they do there.
+ */
+public final class SqlAssert {
+
+    private final QueryTreeNode statement;
+    private final String sql;
+    private final List<Expectation> expectations = new ArrayList<Expectation>();
+
+    private SqlAssert(QueryTreeNode statement, String sql) {
+        this.statement = statement;
+        this.sql = sql;
+    }
+
+    /**
+     * Parses the SQL once for all the expectations to follow.
+     */
+    public static SqlAssert assertThatSql(String sql) {
+        try {
+            return new SqlAssert(new SQLParser().parseStatement(sql), sql);
+        } catch (StandardException e) {
+            throw new IllegalArgumentException("invalid or unrecognized sql:\n\n" + sql, e);
+        }
+    }
+
+    public static SqlAssert assertThatSql(QueryTreeNode statement) {
+        return new SqlAssert(statement, null);
+    }
+
+    /**
+     * Expects some subtree of the statement to match.
+     */
+    public SqlAssert has(Matcher<QueryTreeNode> matcher) {
+        expectations.add(new Expectation(matcher, true));
+        return this;
+    }
+
+    /**
+     * Expects no subtree of the statement to match.
+     */
+    public SqlAssert doesNotHave(Matcher<QueryTreeNode> matcher) {
+        expectations.add(new Expectation(matcher, false));
+        return this;
+    }
+
+    /**
+     * Expects a WHERE clause of the statement to contain a match.
+     */
+    public SqlAssert where(Matcher<QueryTreeNode> matcher) {
+        return has(WhereClauseMatcher.where(matcher));
+    }
+
+    /**
+     * Checks all the expectations so far and throws an AssertionError describing every one that failed.
+     */
+    public void verify() {
+        final List<String> failures = failures();
+        if (!failures.isEmpty()) {
+            final StringBuilder message = new StringBuilder();
+            message.append(failures.size()).append(" of ").append(expectations.size()).append(" expectations failed for ")
+                    .append(sql != null ? sql : MismatchRendering.sql(statement));
+            for (String failure : failures) {
+                message.append("\n  - ").append(failure);
+            }
+            throw new AssertionError(message.toString());
+        }
+    }
+
+    /**
+     * Checks all the expectations so far and describes the ones that failed, in the order they were added.
+     */
+    public List<String> failures() {
+        evaluate();
+        final List<String> failures = new ArrayList<String>();
+        for (Expectation expectation : expectations) {
+            if (expectation.present && expectation.witness == null) {
+                failures.add("expected to have " + QueryTreeNodeMatcher.descriptionOf(expectation.matcher));
+            } else if (!expectation.present && expectation.witness != null) {
+                failures.add("expected not to have " + QueryTreeNodeMatcher.descriptionOf(expectation.matcher) + " but found "
+                        + fragment(expectation.witness));
+            }
+        }
+        return failures;
+    }
+
+    private String fragment(QueryTreeNode node) {
+        if (sql != null) {
+            final int[] span = SourceSpans.of(node, sql);
+            if (span != null) {
+                return sql.substring(span[0], span[1] + 1);
+            }
+        }
+        return MismatchRendering.sql(node);
+    }
+
+    private void evaluate() {
+        for (Expectation expectation : expectations) {
+            expectation.witness = null;
+        }
+        if (EvaluationContext.current() != null) {
+            throw new IllegalStateException("SqlAssert can't be verified from within a matcher");
+        }
+        final EvaluationContext context = EvaluationContext.open(0);
+        final boolean entered = EvaluationContext.enter(statement);
+        try {
+            walk(statement, null, context, expectations.size());
+        } finally {
+            if (entered) {
+                EvaluationContext.leave();
+            }
+            EvaluationContext.close();
+        }
+    }
+
+    /**
+     * Tries each unresolved expectation at the node, then carries on below it. An expectation is resolved by its first match,
+     * which settles it either way, and the walk stops once every expectation is resolved.
+     *
+     * @return how many expectations are still unresolved
+     */
+    private int walk(QueryTreeNode node, QueryTreeNode parent, EvaluationContext context, int unresolved) {
+        context.visit();
+        for (Expectation expectation : expectations) {
+            if (expectation.witness == null && QueryHasMatcher.matchesAt(expectation.matcher, node, parent, context)) {
+                expectation.witness = node;
+                unresolved--;
+            }
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            if (unresolved == 0) {
+                break;
+            }
+            unresolved = walk(child, node, context, unresolved);
+        }
+        return unresolved;
+    }
+
+    private static class Expectation {
+        private final Matcher<QueryTreeNode> matcher;
+        private final boolean present;
+        private QueryTreeNode witness;
+
+        Expectation(Matcher<QueryTreeNode> matcher, boolean present) {
+            this.matcher = matcher;
+            this.present = present;
+        }
+    }
+}
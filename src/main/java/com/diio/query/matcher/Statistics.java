@@ -0,0 +1,176 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Properties;
+import java.util.concurrent.ExecutionException;
+
+import com.akiban.sql.parser.FromBaseTable;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.TableName;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * Table statistics for estimating the cost of statements without a database: row counts, the number of distinct values of
+ * columns and the columns of indexes. Loaded from properties such as
+ *
+ *   orders.rows = 1000000
+ *   orders.customer_id.distinct = 50000
+ *   orders.index.by_customer = customer_id, created_at
+ *
+ * Tables may be schema qualified. Tables without a row count are assumed to have DEFAULT_ROWS rows, and columns without a
+ * distinct count DEFAULT_DISTINCT values. Statistics are immutable, and remember the CostEstimate of each statement they
+ * have estimated.
+ *
+ * @see CostEstimate
+ */
+public final class Statistics {
+
+    public static final long DEFAULT_ROWS = 1000;
+    public static final long DEFAULT_DISTINCT = 10;
+
+    private final Map<String, Long> rows;
+    private final Map<String, Long> distinct;
+    private final IndexCatalog indexes;
+    private final Cache<QueryTreeNode, CostEstimate> estimates = CacheBuilder.newBuilder().weakKeys().build();
+
+    private Statistics(Map<String, Long> rows, Map<String, Long> distinct, IndexCatalog indexes) {
+        this.rows = rows;
+        this.distinct = distinct;
+        this.indexes = indexes;
+    }
+
+    public static Statistics fromProperties(Properties properties) {
+        final Map<String, Long> rows = new HashMap<String, Long>();
+        final Map<String, Long> distinct = new HashMap<String, Long>();
+        for (String name : properties.stringPropertyNames()) {
+            final String key = SymbolTable.normalize(name.trim());
+            final String value = properties.getProperty(name).trim();
+            if (key.endsWith(".rows")) {
+                rows.put(key.substring(0, key.length() - ".rows".length()), Long.parseLong(value));
+            } else if (key.endsWith(".distinct")) {
+                distinct.put(key.substring(0, key.length() - ".distinct".length()), Long.parseLong(value));
+            } else if (!IndexCatalog.isIndexKey(key)) {
+                throw new IllegalArgumentException("unrecognized statistic " + name);
+            }
+        }
+        return new Statistics(rows, distinct, IndexCatalog.fromProperties(properties));
+    }
+
+    public static Statistics load(Path file) throws IOException {
+        final Properties properties = new Properties();
+        try (Reader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            properties.load(reader);
+        }
+        return fromProperties(properties);
+    }
+
+    /**
+     * The estimate for the statement, worked out on first use.
+     */
+    public CostEstimate estimate(final QueryTreeNode statement) {
+        try {
+            return estimates.get(statement, () -> new CostEstimate(statement, this));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * The number of rows of the table, by its schema qualified name if there is a count for that, or else by its name.
+     */
+    public long getRows(String table) {
+        final Long count = rows.get(SymbolTable.normalize(table));
+        if (count == null && table.indexOf('.') >= 0) {
+            return getRows(table.substring(table.lastIndexOf('.') + 1));
+        }
+        return count == null ? DEFAULT_ROWS : count;
+    }
+
+    long getRows(FromBaseTable table) {
+        return getRows(qualifiedName(table));
+    }
+
+    /**
+     * The number of distinct values of the column, never more than the rows of the table.
+     */
+    public long getDistinct(String table, String column) {
+        final Long count = distinct.get(SymbolTable.normalize(table + "." + column));
+        if (count == null && table.indexOf('.') >= 0) {
+            return getDistinct(table.substring(table.lastIndexOf('.') + 1), column);
+        }
+        return Math.max(1, Math.min(count == null ? DEFAULT_DISTINCT : count, getRows(table)));
+    }
+
+    long getDistinct(FromBaseTable table, String column) {
+        return getDistinct(qualifiedName(table), column);
+    }
+
+    /**
+     * The indexes of the table, by its schema qualified name if it has any by that, or else by its name.
+     */
+    public List<Index> getIndexes(String table) {
+        return indexes.getIndexes(table);
+    }
+
+    /**
+     * The indexes of the statistics as a catalog, for analyzing index usage.
+     */
+    public IndexCatalog getIndexCatalog() {
+        return indexes;
+    }
+
+    static String qualifiedName(FromBaseTable table) {
+        final TableName name = table.getOrigTableName();
+        return name.getSchemaName() == null ? name.getTableName() : name.getSchemaName() + "." + name.getTableName();
+    }
+
+    /**
+     * An index: its name and its columns, in order.
+     */
+    public static final class Index {
+        private final String name;
+        private final List<String> columns;
+
+        Index(String name, List<String> columns) {
+            this.name = name;
+            this.columns = Collections.unmodifiableList(columns);
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public List<String> getColumns() {
+            return columns;
+        }
+
+        @Override
+        public String toString() {
+            return name + columns;
+        }
+    }
+}
@@ -0,0 +1,229 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.AggregateNode;
+import com.akiban.sql.parser.BinaryOperatorNode;
+import com.akiban.sql.parser.CastNode;
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.ConstantNode;
+import com.akiban.sql.parser.FromTable;
+import com.akiban.sql.parser.MethodCallNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.TernaryOperatorNode;
+import com.akiban.sql.parser.UnaryOperatorNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.collect.ImmutableMap;
+import com.google.common.collect.ImmutableSet;
+
+/**
+ * Canonical structural (Merkle) hashes of parse subtrees. Two subtrees which are equivalent up to identifier case, the order of
+ * commutative operands, the grouping of associative operators, mirrored comparisons (a &gt; b versus b &lt; a) and the spelling of
+ * numeric literals get the same hash.
+ *
+ * Hashes are computed bottom-up and remembered per node (by identity, for as long as the node is reachable), so hashing a statement
+ * hashes each of its nodes once and later lookups of any subtree are constant time. Since hashes can collide, equivalent() confirms an
+ * equal hash by walking both subtrees.
+ */
+final class StructuralHash {
+
+    private static final Cache<QueryTreeNode, Integer> HASHES = CacheBuilder.newBuilder().weakKeys().build();
+
+    private static final ImmutableSet<String> ASSOCIATIVE = ImmutableSet.of("and", "or", "+", "*", "||");
+
+    private static final ImmutableSet<String> COMMUTATIVE = ImmutableSet.of("and", "or", "+", "*", "=", "<>");
+
+    private static final ImmutableMap<String, String> MIRRORED = ImmutableMap.of(">", "<", ">=", "<=");
+
+    private StructuralHash() {
+    }
+
+    /**
+     * Returns the canonical hash of the subtree rooted at the given node.
+     */
+    static int of(QueryTreeNode node) {
+        if (node == null) {
+            return 0;
+        }
+        Integer hash = HASHES.getIfPresent(node);
+        if (hash == null) {
+            final Shape shape = Shape.of(node);
+            final int[] childHashes = new int[shape.children.size()];
+            for (int i = 0; i < childHashes.length; i++) {
+                childHashes[i] = of(shape.children.get(i));
+            }
+            if (shape.commutative) {
+                Arrays.sort(childHashes);
+            }
+            int h = shape.label.hashCode();
+            for (int childHash : childHashes) {
+                h = 31 * h + childHash;
+            }
+            hash = h;
+            HASHES.put(node, hash);
+        }
+        return hash;
+    }
+
+    /**
+     * Whether chains of the binary operator mean the same however they are grouped.
+     */
+    static boolean isAssociative(String operator) {
+        return ASSOCIATIVE.contains(fold(operator));
+    }
+
+    /**
+     * Whether the operands of the binary operator may be swapped.
+     */
+    static boolean isCommutative(String operator) {
+        return COMMUTATIVE.contains(fold(operator));
+    }
+
+    /**
+     * Whether two subtrees are structurally equivalent in the canonical sense described above.
+     */
+    static boolean equivalent(QueryTreeNode left, QueryTreeNode right) {
+        if (left == right) {
+            return true;
+        }
+        if (left == null || right == null || of(left) != of(right)) {
+            return false;
+        }
+        final Shape leftShape = Shape.of(left);
+        final Shape rightShape = Shape.of(right);
+        if (!leftShape.label.equals(rightShape.label) || leftShape.children.size() != rightShape.children.size()) {
+            return false;
+        }
+        if (!leftShape.commutative) {
+            for (int i = 0; i < leftShape.children.size(); i++) {
+                if (!equivalent(leftShape.children.get(i), rightShape.children.get(i))) {
+                    return false;
+                }
+            }
+            return true;
+        }
+        return equivalentInAnyOrder(leftShape.children, rightShape.children);
+    }
+
+    /**
+     * Equivalence is transitive, so greedily pairing each operand with any unused equivalent operand of the same hash can't go wrong.
+     */
+    private static boolean equivalentInAnyOrder(List<QueryTreeNode> left, List<QueryTreeNode> right) {
+        final List<QueryTreeNode> unused = new ArrayList<QueryTreeNode>(right);
+        for (QueryTreeNode operand : left) {
+            boolean paired = false;
+            for (int i = 0; i < unused.size(); i++) {
+                if (equivalent(operand, unused.get(i))) {
+                    unused.remove(i);
+                    paired = true;
+                    break;
+                }
+            }
+            if (!paired) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The canonical form of a single node: a label covering everything but its children, plus its children in canonical order.
+     */
+    private static class Shape {
+        private final String label;
+        private final List<QueryTreeNode> children;
+        private final boolean commutative;
+
+        private Shape(String label, List<QueryTreeNode> children, boolean commutative) {
+            this.label = label;
+            this.children = children;
+            this.commutative = commutative;
+        }
+
+        static Shape of(QueryTreeNode node) {
+            if (node instanceof BinaryOperatorNode) {
+                final BinaryOperatorNode binary = (BinaryOperatorNode) node;
+                final String operator = fold(binary.getOperator());
+                final String label = node.getClass().getSimpleName() + ":";
+                if (MIRRORED.containsKey(operator)) {
+                    return new Shape(label + MIRRORED.get(operator),
+                            Arrays.<QueryTreeNode>asList(binary.getRightOperand(), binary.getLeftOperand()), false);
+                }
+                final List<QueryTreeNode> operands = ASSOCIATIVE.contains(operator)
+                        ? Arrays.asList(OperandChainMatcher.flatten(node, operator))
+                        : Arrays.<QueryTreeNode>asList(binary.getLeftOperand(), binary.getRightOperand());
+                return new Shape(label + operator, operands, COMMUTATIVE.contains(operator));
+            }
+            return new Shape(label(node), QueryTrees.children(node), false);
+        }
+
+        private static String label(QueryTreeNode node) {
+            final StringBuilder label = new StringBuilder(node.getClass().getSimpleName()).append(':');
+            if (node instanceof ColumnReference) {
+                final ColumnReference column = (ColumnReference) node;
+                label.append(fold(column.getSchemaName())).append('.').
+                    append(fold(column.getTableName())).append('.').
+                    append(fold(column.getColumnName()));
+            } else if (node instanceof ConstantNode) {
+                label.append(normalize(((ConstantNode) node).getValue()));
+            } else if (node instanceof AggregateNode) {
+                final AggregateNode aggregate = (AggregateNode) node;
+                label.append(fold(aggregate.getAggregateName())).append(aggregate.isDistinct() ? " distinct" : "");
+            } else if (node instanceof UnaryOperatorNode) {
+                label.append(fold(((UnaryOperatorNode) node).getOperator()));
+            } else if (node instanceof TernaryOperatorNode) {
+                label.append(fold(((TernaryOperatorNode) node).getOperator()));
+            } else if (node instanceof MethodCallNode) {
+                label.append(fold(((MethodCallNode) node).getMethodName()));
+            } else if (node instanceof CastNode) {
+                try {
+                    label.append(((CastNode) node).getTypeId());
+                } catch (StandardException e) {
+                    throw new RuntimeException(e);
+                }
+            } else if (node instanceof FromTable) {
+                final FromTable table = (FromTable) node;
+                label.append(table.getOrigTableName() == null ? "" : fold(table.getOrigTableName().getFullTableName())).
+                    append(' ').append(fold(table.getCorrelationName()));
+            }
+            return label.toString();
+        }
+    }
+
+    private static String fold(String identifier) {
+        return identifier == null ? "" : identifier.toLowerCase(Locale.ROOT);
+    }
+
+    private static String normalize(Object value) {
+        if (value instanceof Number) {
+            try {
+                final BigDecimal number = new BigDecimal(value.toString());
+                return number.signum() == 0 ? "0" : number.stripTrailingZeros().toPlainString();
+            } catch (NumberFormatException e) {
+                return value.toString();
+            }
+        }
+        return String.valueOf(value);
+    }
+}
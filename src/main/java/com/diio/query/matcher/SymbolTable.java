@@ -0,0 +1,198 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutionException;
+
+import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.FromBaseTable;
+import com.akiban.sql.parser.FromSubquery;
+import com.akiban.sql.parser.FromTable;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+
+/**
+ * The tables in scope in each query block of a statement, by the name they are exposed under: their alias, or their table name
+ * if they have none. Derived tables are in scope under their alias. Every column of the statement is resolved when the table is
+ * built, looking in its own block and then the enclosing ones the way SQL resolves correlation names, so that matchers resolve a
+ * column with a single hash probe. The table is built once per statement and remembered.
+ *
+ * A qualified column resolves to the table its qualifier names. An unqualified column resolves to the only table of its block;
+ * with more than one table there it can't be told which one it belongs to without knowing their columns, which a Schema
+ * supplies.
+ *
+ * @see QueryBlocks
+ */
+final class SymbolTable {
+    private static final Cache<QueryTreeNode, SymbolTable> TABLES = CacheBuilder.newBuilder().weakKeys().build();
+
+    private final QueryBlocks blocks;
+    private final List<Map<String, FromTable>> exposed = new ArrayList<Map<String, FromTable>>();
+    private final List<List<FromTable>> tables = new ArrayList<List<FromTable>>();
+    private final Map<ColumnReference, FromTable> resolved = new IdentityHashMap<ColumnReference, FromTable>();
+
+    private SymbolTable(QueryTreeNode statement) {
+        blocks = QueryBlocks.of(statement);
+        for (int i = 0; i < blocks.size(); i++) {
+            exposed.add(new HashMap<String, FromTable>());
+            tables.add(new ArrayList<FromTable>());
+        }
+        final List<ColumnReference> columns = new ArrayList<ColumnReference>();
+        collect(statement, columns);
+        for (ColumnReference column : columns) {
+            final FromTable table = lookUp(column);
+            if (table != null) {
+                resolved.put(column, table);
+            }
+        }
+    }
+
+    /**
+     * The table of the statement, remembered unless the statement is a FROM list item: that would be part of its own table and
+     * so keep its cache entry from ever being evicted.
+     */
+    static SymbolTable of(final QueryTreeNode statement) {
+        if (statement instanceof FromTable) {
+            return new SymbolTable(statement);
+        }
+        try {
+            return TABLES.get(statement, () -> new SymbolTable(statement));
+        } catch (ExecutionException e) {
+            throw new RuntimeException(e.getCause());
+        }
+    }
+
+    /**
+     * The symbol table of the statement being evaluated, or null if the node is not part of a larger statement and so has
+     * nothing to be resolved against.
+     */
+    static SymbolTable containing(QueryTreeNode node) {
+        final QueryTreeNode root = EvaluationContext.statement();
+        if (root == null || root == node) {
+            return null;
+        }
+        final SymbolTable statement = of(root);
+        return statement.blocks.blockOf(node) >= 0 ? statement : null;
+    }
+
+    private void collect(QueryTreeNode node, List<ColumnReference> columns) {
+        if (node instanceof ColumnReference) {
+            columns.add((ColumnReference) node);
+        } else if (node instanceof FromBaseTable || node instanceof FromSubquery) {
+            final int block = blocks.blockOf(node);
+            final String name = exposedName((FromTable) node);
+            if (name != null) {
+                exposed.get(block).put(normalize(name), (FromTable) node);
+            }
+            tables.get(block).add((FromTable) node);
+        }
+        for (QueryTreeNode child : QueryTrees.children(node)) {
+            collect(child, columns);
+        }
+    }
+
+    private static String exposedName(FromTable table) {
+        try {
+            return table.getExposedName();
+        } catch (StandardException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    /**
+     * The base table or derived table the column belongs to, or null if that can't be told.
+     */
+    FromTable resolve(ColumnReference column) {
+        return resolved.get(column);
+    }
+
+    /**
+     * The table the column belongs to, using the schema to attribute unqualified columns in blocks with several tables: the
+     * column belongs to the only table of the innermost block that has it. Null if that can't be told, or if the block has a
+     * table the schema doesn't describe.
+     */
+    FromTable resolve(ColumnReference column, Schema schema) {
+        final FromTable table = resolved.get(column);
+        if (table != null || schema == null || column.getTableName() != null) {
+            return table;
+        }
+        for (int block = blocks.blockOf(column); block >= 0; block = blocks.parentOf(block)) {
+            FromTable owner = null;
+            for (FromTable candidate : tables.get(block)) {
+                if (!(candidate instanceof FromBaseTable) || !schema.describes((FromBaseTable) candidate)) {
+                    return null;
+                }
+                if (schema.hasColumn((FromBaseTable) candidate, column.getColumnName())) {
+                    if (owner != null) {
+                        return null;
+                    }
+                    owner = candidate;
+                }
+            }
+            if (owner != null) {
+                return owner;
+            }
+        }
+        return null;
+    }
+
+    private FromTable lookUp(ColumnReference column) {
+        final String qualifier = column.getTableName();
+        for (int block = blocks.blockOf(column); block >= 0; block = blocks.parentOf(block)) {
+            if (qualifier == null) {
+                final List<FromTable> inBlock = tables.get(block);
+                if (!inBlock.isEmpty()) {
+                    return inBlock.size() == 1 ? inBlock.get(0) : null;
+                }
+                continue;
+            }
+            final FromTable table = exposed.get(block).get(normalize(qualifier));
+            if (table != null && (column.getSchemaName() == null || column.getSchemaName().equalsIgnoreCase(schemaOf(table)))) {
+                return table;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * The name of the table itself, not its alias; the alias for derived tables.
+     */
+    static String baseNameOf(FromTable table) {
+        if (table instanceof FromBaseTable) {
+            return ((FromBaseTable) table).getOrigTableName().getTableName();
+        }
+        return exposedName(table);
+    }
+
+    /**
+     * The schema the table was qualified with, or null.
+     */
+    static String schemaOf(FromTable table) {
+        return table instanceof FromBaseTable ? ((FromBaseTable) table).getOrigTableName().getSchemaName() : null;
+    }
+
+    static String normalize(String name) {
+        return name.toLowerCase(Locale.ROOT);
+    }
+}
@@ -20,11 +20,13 @@ import org.hamcrest.Factory;
 import org.hamcrest.Matcher;
 
 import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.FromBaseTable;
 import com.akiban.sql.parser.FromTable;
 import com.akiban.sql.parser.QueryTreeNode;
 
 /**
- * Matches a single table name.
+ * Matches a single table name, optionally qualified by a schema. A table matches both by its own name and by its alias, so
+ * table("orders") matches "orders o" as well as "orders", and table("s.orders") only a reference to orders in schema s.
  * 
  * @author kkoster
  *
@@ -32,22 +34,38 @@ import com.akiban.sql.parser.QueryTreeNode;
 public class TableMatcher extends QueryTreeNodeMatcher {
 
     private final String tableName;
+    private final String schemaName;
 
     public TableMatcher(String name) {
-        tableName = name;
+        final int period = name.indexOf('.');
+        tableName = period < 0 ? name : name.substring(period + 1);
+        schemaName = period < 0 ? null : name.substring(0, period);
     }
     
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { tableName, schemaName };
+    }
+
     @Override
     public void describeTo(Description description) {
-        description.appendText("a table with name ").appendText(tableName);
+        description.appendText("a table with name ");
+        if (schemaName != null) {
+            description.appendText(schemaName).appendText(".");
+        }
+        description.appendText(tableName);
     }
 
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof FromTable) {
             FromTable col = (FromTable) item;
+            if (schemaName != null && !schemaName.equalsIgnoreCase(SymbolTable.schemaOf(col))) {
+                return false;
+            }
             try {
-                return tableName.equalsIgnoreCase(col.getExposedName());
+                return tableName.equalsIgnoreCase(col.getExposedName())
+                        || col instanceof FromBaseTable && tableName.equalsIgnoreCase(SymbolTable.baseNameOf(col));
             } catch (StandardException e) {
                 throw new RuntimeException(e);
             }
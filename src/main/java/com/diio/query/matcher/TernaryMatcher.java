@@ -52,24 +52,29 @@ public class TernaryMatcher extends QueryTreeNodeMatcher {
         this.right = rightMatcher;
     }
     
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { operation, receiver, left, right };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("a ternary expression of ").
-            appendDescriptionOf(receiver).
+            appendText(descriptionOf(receiver)).
             appendText(operation + " ").
-            appendDescriptionOf(left).
-            appendDescriptionOf(right);
+            appendText(descriptionOf(left)).
+            appendText(descriptionOf(right));
     }
     
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof TernaryOperatorNode) {
             TernaryOperatorNode node = (TernaryOperatorNode) item;
 
             if (operation.equalsIgnoreCase(node.getOperator())) {
-                return receiver.matches(node.getReceiver()) &&
-                        left.matches(node.getLeftOperand()) &&
-                        right.matches(node.getRightOperand());
+                return evaluate(receiver, node.getReceiver()) &&
+                        evaluate(left, node.getLeftOperand()) &&
+                        evaluate(right, node.getRightOperand());
             }
         }
 
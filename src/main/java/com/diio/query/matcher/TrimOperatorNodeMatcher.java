@@ -43,15 +43,20 @@ public class TrimOperatorNodeMatcher extends QueryTreeNodeMatcher {
         this.trimChar = trimChar;
     }
 
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { trimSourceMatcher, trimQualifier, trimChar };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("TRIM ");
         description.appendText(trimQualifier + " " + trimChar + " ");
-        description.appendDescriptionOf(trimSourceMatcher);
+        description.appendText(descriptionOf(trimSourceMatcher));
     }
 
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof TrimOperatorNode) {
             TrimOperatorNode node = (TrimOperatorNode) item;
 
@@ -65,7 +70,7 @@ public class TrimOperatorNodeMatcher extends QueryTreeNodeMatcher {
 
             return trimQualifier.getOperator().equals(node.getOperator())
                     && String.valueOf(trimChar).equals(nodeTrimChar)
-                    && trimSourceMatcher.matches(node.getLeftOperand());
+                    && evaluate(trimSourceMatcher, node.getLeftOperand());
         }
 
         return false;
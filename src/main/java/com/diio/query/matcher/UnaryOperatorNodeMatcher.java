@@ -43,18 +43,23 @@ public class UnaryOperatorNodeMatcher extends QueryTreeNodeMatcher {
         this.subMatcher = subMatcher;
     }
 
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { operation, subMatcher };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText(operation + " ").
-            appendDescriptionOf(subMatcher);
+            appendText(descriptionOf(subMatcher));
     }
 
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof UnaryOperatorNode) {
             UnaryOperatorNode node = (UnaryOperatorNode) item;
             if (operation.equalsIgnoreCase(node.getOperator())) {
-                return subMatcher.matches(node.getOperand());
+                return evaluate(subMatcher, node.getOperand());
             }
         }
         return false;
@@ -46,16 +46,21 @@ public class UnderNodeMatcher<T extends QueryTreeNode> extends QueryTreeNodeMatc
         this.descrPrefix = describeToPrefix;
     }
     
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { submatcher, nodeClass, descrPrefix };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText(descrPrefix).
-            appendDescriptionOf(submatcher);
+            appendText(descriptionOf(submatcher));
     }
 
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (nodeClass.isAssignableFrom(item.getClass())) {
-            return QueryHasMatcher.hasInQuery(this.submatcher).matches(item);
+            return evaluate(QueryHasMatcher.hasInQuery(this.submatcher), item);
         }
         return false;
     }
@@ -38,22 +38,27 @@ public class UpperLowerFunctionMatcher extends QueryTreeNodeMatcher {
         this.argumentMatcher = argumentMatcher;
     }
     
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { functionName, argumentMatcher };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("function ").
             appendText(functionName);
         if (argumentMatcher != null) {
             description.appendText(" called with arguments ");
-            description.appendDescriptionOf(argumentMatcher);
+            description.appendText(descriptionOf(argumentMatcher));
         }
     }
     
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof SimpleStringOperatorNode) {
             SimpleStringOperatorNode node = (SimpleStringOperatorNode) item;
             if (functionName.equalsIgnoreCase(node.getMethodName())) {
-                return argumentMatcher.matches(node.getOperand());
+                return evaluate(argumentMatcher, node.getOperand());
             }
         }
         return false;
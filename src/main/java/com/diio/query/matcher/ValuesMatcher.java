@@ -0,0 +1,147 @@
+/*
+   Copyright (c) 2022 Cirium
+
+   Licensed under the Apache License, Version 2.0 (the "License");
+   you may not use this file except in compliance with the License.
+   You may obtain a copy of the License at
+
+       http://www.apache.org/licenses/LICENSE-2.0
+
+   Unless required by applicable law or agreed to in writing, software
+   distributed under the License is distributed on an "AS IS" BASIS,
+   WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+   See the License for the specific language governing permissions and
+   limitations under the License.
+ */
+package com.diio.query.matcher;
+
+import java.util.Collections;
+import java.util.List;
+
+import org.hamcrest.Description;
+import org.hamcrest.Factory;
+import org.hamcrest.Matcher;
+
+import com.akiban.sql.parser.InsertNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.RowResultSetNode;
+import com.akiban.sql.parser.RowsResultSetNode;
+
+/**
+ * Matches the VALUES rows of an INSERT: how many there are, or whether every one of them matches a row matcher, which is given
+ * each RowResultSetNode. The rows are read from the InsertNode directly, and their contents are only visited by a row matcher.
+ * An INSERT from a SELECT has no VALUES rows, and doesn't match.
+ *
+ * everyRowInParallel() splits the rows of large inserts between the threads of the common fork-join pool, the calling thread
+ * among them. Every row is then matched outside the evaluation in progress, whichever thread it falls to, so the row matcher
+ * must not capture or bind nodes, and is rejected if it does. The rows still count against the Budget of the evaluation.
+ *
+ * @see InsertMatcher
+ */
+public class ValuesMatcher extends QueryTreeNodeMatcher {
+
+    /** Fewer rows than this are matched on the calling thread even when parallel matching is asked for. */
+    static final int PARALLEL_THRESHOLD = 1024;
+
+    private enum Kind {
+        ROW_COUNT("a values list with a row count of "),
+        EVERY_ROW("a values list with every row "),
+        EVERY_ROW_IN_PARALLEL("a values list with every row ");
+
+        private final String descr;
+
+        Kind(String descr) {
+            this.descr = descr;
+        }
+    }
+
+    private final Kind kind;
+    private final Matcher<?> submatcher;
+
+    private ValuesMatcher(Kind kind, Matcher<?> submatcher) {
+        this.kind = kind;
+        this.submatcher = submatcher;
+    }
+
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { kind, submatcher };
+    }
+
+    @Override
+    public void describeTo(Description description) {
+        description.appendText(kind.descr).appendText(descriptionOf(submatcher));
+    }
+
+    @Override
+    protected boolean matchesNode(QueryTreeNode item) {
+        if (!(item instanceof InsertNode)) {
+            return false;
+        }
+        final InsertNode insert = (InsertNode) item;
+        if (!(insert.getResultSetNode() instanceof RowsResultSetNode || insert.getResultSetNode() instanceof RowResultSetNode)) {
+            return false;
+        }
+        final List<RowResultSetNode> rows = rowsOf(insert);
+        switch (kind) {
+        case ROW_COUNT:
+            return submatcher.matches(rows.size());
+        case EVERY_ROW_IN_PARALLEL:
+            if (rows.size() >= PARALLEL_THRESHOLD) {
+                return EvaluationContext.allMatchInParallel(submatcher, rows);
+            }
+            return matchesEveryRow(rows);
+        default:
+            return matchesEveryRow(rows);
+        }
+    }
+
+    private boolean matchesEveryRow(List<RowResultSetNode> rows) {
+        for (RowResultSetNode row : rows) {
+            if (!evaluate(submatcher, row)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static List<RowResultSetNode> rowsOf(InsertNode insert) {
+        if (insert.getResultSetNode() instanceof RowsResultSetNode) {
+            return ((RowsResultSetNode) insert.getResultSetNode()).getRows();
+        }
+        return Collections.singletonList((RowResultSetNode) insert.getResultSetNode());
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(statement, valuesRowCount(lessThanOrEqualTo(1000)));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> valuesRowCount(Matcher<? super Integer> count) {
+        return new ValuesMatcher(Kind.ROW_COUNT, count);
+    }
+
+    /**
+     * Syntactic sugar!
+     *
+     * For example, assertThat(statement, everyRow(hasInQuery(literal("EUR"))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> everyRow(Matcher<QueryTreeNode> row) {
+        return new ValuesMatcher(Kind.EVERY_ROW, row);
+    }
+
+    /**
+     * Syntactic sugar! Like everyRow(), matching the rows of large inserts in parallel.
+     *
+     * For example, assertThat(statement, everyRowInParallel(not(hasInQuery(literal("XXX")))));
+     */
+    @Factory
+    public static Matcher<QueryTreeNode> everyRowInParallel(Matcher<QueryTreeNode> row) {
+        if (CaptureMatcher.within(row)) {
+            throw new IllegalArgumentException("Rows matched in parallel can't capture nodes, but " + descriptionOf(row) + " does");
+        }
+        return new ValuesMatcher(Kind.EVERY_ROW_IN_PARALLEL, row);
+    }
+}
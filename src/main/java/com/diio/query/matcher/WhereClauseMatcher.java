@@ -37,17 +37,22 @@ public class WhereClauseMatcher extends QueryTreeNodeMatcher {
         this.submatcher = subMatcher;
     }
     
+    @Override
+    protected Object[] valueComponents() {
+        return new Object[] { submatcher };
+    }
+
     @Override
     public void describeTo(Description description) {
         description.appendText("a where clause of ").
-            appendDescriptionOf(submatcher);
+            appendText(descriptionOf(submatcher));
     }
     
     @Override
-    protected boolean matchesSafely(QueryTreeNode item) {
+    protected boolean matchesNode(QueryTreeNode item) {
         if (item instanceof SelectNode) {
             SelectNode select = (SelectNode) item;
-            return QueryHasMatcher.hasInQuery(this.submatcher).matches(select.getWhereClause());
+            return evaluate(QueryHasMatcher.hasInQuery(this.submatcher), select.getWhereClause());
         }
         return false;
     }
@@ -0,0 +1,100 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.AdaptiveMatcher.allOf;
+import static com.diio.query.matcher.AdaptiveMatcher.anyOf;
+import static com.diio.query.matcher.CaptureMatcher.capture;
+import static com.diio.query.matcher.CaptureMatcher.sameAs;
+import static com.diio.query.matcher.ColumnMatcher.anyColumn;
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.UnderNodeMatcher.groupBy;
+import static com.diio.query.matcher.WhereClauseMatcher.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.TypeSafeMatcher;
+import org.junit.Test;
+
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.StatementNode;
+
+public class AdaptiveMatcherTest {
+
+    /**
+     * Always matches, slowly.
+     */
+    private static class SlowMatcher extends TypeSafeMatcher<QueryTreeNode> {
+        private int calls;
+        private long sink;
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendText("anything, slowly");
+        }
+
+        @Override
+        protected boolean matchesSafely(QueryTreeNode item) {
+            calls++;
+            for (int i = 0; i < 20000; i++) {
+                sink += i ^ sink;
+            }
+            return true;
+        }
+    }
+
+    @Test
+    public void matchesLikeHamcrestCombinators() {
+        StatementNode statement = getParseTree("SELECT a, COUNT(*) FROM t WHERE b = 1 GROUP BY a");
+
+        assertThat(statement, hasInQuery(allOf(where(column("b").equalToLiteral(1)), hasInQuery(groupBy(column("a"))))));
+        assertThat(statement, not(hasInQuery(allOf(where(column("b").equalToLiteral(1)), hasInQuery(groupBy(column("b")))))));
+        assertThat(statement, hasInQuery(anyOf(column("z"), column("a"))));
+        assertThat(statement, not(hasInQuery(anyOf(column("y"), column("z")))));
+    }
+
+    @Test
+    public void movesCheapSelectiveMatcherFirst() {
+        StatementNode statement = getParseTree("SELECT a FROM t WHERE b = 1");
+        SlowMatcher slow = new SlowMatcher();
+        AdaptiveMatcher matcher = (AdaptiveMatcher) allOf(slow, column("never"));
+
+        for (int i = 0; i < 1000; i++) {
+            assertThat(statement, not(matcher));
+        }
+
+        assertEquals(1, matcher.getOrder().currentOrder()[0]);
+        assertTrue(slow.calls < 500);
+    }
+
+    @Test
+    public void keepsOneOrderAcrossReplays() {
+        StatementNode statement = getParseTree("SELECT g, h FROM t WHERE a = 1 AND b = 2 AND c = 3 AND g = 4 AND d = e GROUP BY g, h");
+        final AdaptiveMatcher[] matcher = new AdaptiveMatcher[1];
+        Matcher<QueryTreeNode> reversing = new TypeSafeMatcher<QueryTreeNode>() {
+            @Override
+            public void describeTo(Description description) {
+                description.appendText("anything, reversing the order");
+            }
+
+            @Override
+            protected boolean matchesSafely(QueryTreeNode item) {
+                int[] order = matcher[0].getOrder().currentOrder();
+                for (int i = 0; i < order.length / 2; i++) {
+                    int swapped = order[i];
+                    order[i] = order[order.length - 1 - i];
+                    order[order.length - 1 - i] = swapped;
+                }
+                matcher[0].getOrder().setOrder(order);
+                return true;
+            }
+        };
+        matcher[0] = (AdaptiveMatcher) allOf(where(capture("c", anyColumn())), reversing, hasInQuery(groupBy(sameAs("c"))));
+
+        assertThat(statement, hasInQuery(matcher[0]));
+    }
+}
@@ -0,0 +1,98 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+import static org.hamcrest.core.StringContains.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.akiban.sql.parser.StatementNode;
+
+public class BudgetTest {
+
+    private static StatementNode longStatement() {
+        StringBuilder sql = new StringBuilder("SELECT a FROM t WHERE b = 0");
+        for (int i = 1; i < 2000; i++) {
+            sql.append(" OR b = ").append(i);
+        }
+        return getParseTree(sql.toString());
+    }
+
+    @Test
+    public void runsOutOfNodeVisits() {
+        StatementNode statement = longStatement();
+        QueryHasMatcher matcher = hasInQuery(column("missing")).withBudget(Budget.nodeVisits(100));
+
+        MatchResult result = matcher.evaluate(statement);
+        assertTrue(result.isUndecided());
+        assertEquals(Outcome.UNDECIDED, result.getOutcome());
+        assertThat(result.getExhaustedBy(), containsString("missing"));
+
+        StringDescription mismatch = new StringDescription();
+        matcher.describeMismatch(statement, mismatch);
+        assertThat(mismatch.toString(), containsString("undecided, having run out of a budget of 100 node visits"));
+
+        assertEquals(Outcome.NO_MATCH, hasInQuery(column("missing")).evaluate(statement).getOutcome());
+    }
+
+    @Test
+    public void refusesToMatchOrNotMatchWhenUndecided() {
+        StatementNode statement = longStatement();
+        QueryHasMatcher matcher = hasInQuery(column("missing")).withBudget(Budget.nodeVisits(100));
+
+        try {
+            assertThat(statement, not(matcher));
+            fail("not() passed on an undecided evaluation");
+        } catch (IllegalStateException e) {
+            assertThat(e.getMessage(), containsString("a budget of 100 node visits"));
+            assertThat(e.getMessage(), containsString("missing"));
+        }
+    }
+
+    @Test
+    public void decidesWithinBudget() {
+        StatementNode statement = longStatement();
+
+        assertEquals(Outcome.MATCHED, hasInQuery(column("a")).withBudget(Budget.nodeVisits(100)).evaluate(statement).getOutcome());
+        MatchResult result = hasInQuery(column("missing")).withBudget(Budget.nodeVisits(1000000)).evaluate(statement);
+        assertEquals(Outcome.NO_MATCH, result.getOutcome());
+        assertNull(result.getExhaustedBy());
+    }
+
+    @Test
+    public void runsOutOfTime() {
+        MatchResult result = hasInQuery(column("missing")).withBudget(Budget.time(1, TimeUnit.NANOSECONDS))
+                .evaluate(longStatement());
+
+        assertTrue(result.isUndecided());
+    }
+
+    @Test
+    public void recordsWhichRuleRanOut() {
+        RuleSet rules = RuleSet.builder()
+                .rule("selects a", column("a"))
+                .rule("uses missing", column("missing"))
+                .build();
+
+        RuleSet.Result result = rules.evaluate(longStatement(), Budget.nodeVisits(200));
+        assertFalse(result.isComplete());
+        assertEquals(Outcome.MATCHED, result.getOutcome("selects a"));
+        assertEquals(Outcome.UNDECIDED, result.getOutcome("uses missing"));
+        assertEquals("uses missing", result.getExhaustedBy());
+
+        result = rules.evaluate(getParseTree("SELECT a FROM t"), Budget.nodeVisits(200));
+        assertTrue(result.isComplete());
+        assertEquals(Outcome.NO_MATCH, result.getOutcome("uses missing"));
+    }
+}
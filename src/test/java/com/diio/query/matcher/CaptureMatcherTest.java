@@ -0,0 +1,72 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.BinaryOperatorNodeMatcher.equalTo;
+import static com.diio.query.matcher.BinaryOperatorNodeMatcher.plus;
+import static com.diio.query.matcher.CaptureMatcher.capture;
+import static com.diio.query.matcher.CaptureMatcher.sameAs;
+import static com.diio.query.matcher.ColumnMatcher.anyColumn;
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.UnderNodeMatcher.groupBy;
+import static com.diio.query.matcher.UnderNodeMatcher.result;
+import static com.diio.query.matcher.WhereClauseMatcher.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.AllOf.allOf;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.hamcrest.Matcher;
+import org.junit.Test;
+
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.StatementNode;
+
+public class CaptureMatcherTest {
+
+    @Test
+    public void backtracksToColumnFilteredAndGrouped() {
+        StatementNode statement = getParseTree("SELECT c, COUNT(*) FROM t WHERE a = 1 AND b > 2 AND c < 3 GROUP BY c");
+
+        MatchResult result = hasInQuery(allOf(where(capture("col", anyColumn())), hasInQuery(groupBy(sameAs("col"))))).evaluate(statement);
+
+        assertTrue(result.matches());
+        assertEquals("c", ((ColumnReference) result.getBinding("col")).getColumnName());
+    }
+
+    @Test
+    public void failsWhenNoBindingIsConsistent() {
+        StatementNode statement = getParseTree("SELECT d, COUNT(*) FROM t WHERE a = 1 AND b > 2 GROUP BY d");
+
+        assertThat(statement, not(hasInQuery(allOf(where(capture("col", anyColumn())), hasInQuery(groupBy(sameAs("col")))))));
+    }
+
+    @Test
+    public void unifiesWhicheverSideIsSeenFirst() {
+        Matcher<QueryTreeNode> pattern = allOf(hasInQuery(result(sameAs("sum"))),
+                where(capture("sum", plus(column("a"), column("b")))));
+
+        assertThat(getParseTree("SELECT b + a FROM t WHERE a + b > 10"), hasInQuery(pattern));
+        assertThat(getParseTree("SELECT a + c FROM t WHERE a + b > 10"), not(hasInQuery(pattern)));
+    }
+
+    @Test(timeout = 10000)
+    public void backtracksOnlyOverLiveBindings() {
+        StringBuilder sql = new StringBuilder("SELECT * FROM t WHERE c0 = 0");
+        for (int i = 1; i < 40; i++) {
+            sql.append(" AND c").append(i).append(" = ").append(i);
+        }
+        StatementNode statement = getParseTree(sql.toString());
+
+        assertThat(statement, not(hasInQuery(equalTo(capture("c", anyColumn()), sameAs("c")))));
+        assertThat(statement, not(hasInQuery(where(equalTo(capture("c", anyColumn()), sameAs("c"))))));
+        assertThat(getParseTree(sql + " AND c7 = c7"), hasInQuery(where(equalTo(capture("c", anyColumn()), sameAs("c")))));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void requiresEnclosingHasInQuery() {
+        capture("c", anyColumn()).matches(getParseTree("SELECT a FROM t"));
+    }
+}
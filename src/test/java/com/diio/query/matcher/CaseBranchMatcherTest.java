@@ -0,0 +1,69 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.CaseBranchMatcher.branch;
+import static com.diio.query.matcher.CaseBranchMatcher.caseBranches;
+import static com.diio.query.matcher.CaseBranchMatcher.caseElse;
+import static com.diio.query.matcher.CaseBranchMatcher.caseHasBranch;
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.LiteralMatcher.literal;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.UnderNodeMatcher.result;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.StatementNode;
+
+public class CaseBranchMatcherTest {
+
+    @Test
+    public void matchesAnyBranchOfSearchedCase() {
+        StatementNode statement = getParseTree("SELECT CASE WHEN fare_class = 'F' THEN 3 WHEN fare_class = 'J' THEN 2 "
+                + "WHEN miles > 100 THEN 5 ELSE 1 END FROM fares");
+
+        assertThat(statement, hasInQuery(result(caseHasBranch(column("fare_class").equalToLiteral("J"), literal(2)))));
+        assertThat(statement, hasInQuery(result(caseHasBranch(column("miles").greaterThan(100), literal(5)))));
+        assertThat(statement, not(hasInQuery(caseHasBranch(column("fare_class").equalToLiteral("J"), literal(3)))));
+        assertThat(statement, not(hasInQuery(caseHasBranch(column("fare_class").equalToLiteral("Y"), literal(2)))));
+    }
+
+    @Test
+    public void matchesAllBranchesAndElse() {
+        StatementNode statement = getParseTree("SELECT CASE WHEN c = 'F' THEN 3 WHEN c = 'J' THEN 2 ELSE 1 END FROM fares");
+
+        assertThat(statement, hasInQuery(caseBranches(
+                branch(column("c").equalToLiteral("F"), literal(3)),
+                branch(column("c").equalToLiteral("J"), literal(2)))));
+        assertThat(statement, not(hasInQuery(caseBranches(
+                branch(column("c").equalToLiteral("J"), literal(2)),
+                branch(column("c").equalToLiteral("F"), literal(3))))));
+        assertThat(statement, hasInQuery(caseElse(literal(1))));
+        assertThat(statement, not(hasInQuery(caseElse(literal(2)))));
+    }
+
+    @Test
+    public void matchesBranchesOfSimpleCase() {
+        StatementNode statement = getParseTree("SELECT CASE fare_class WHEN 'F' THEN 3 WHEN 'J' THEN 2 ELSE 1 END FROM fares");
+
+        assertThat(statement, hasInQuery(caseHasBranch(literal("J"), literal(2))));
+        assertThat(statement, hasInQuery(caseElse(literal(1))));
+        assertThat(statement, not(hasInQuery(caseHasBranch(literal("J"), literal(3)))));
+    }
+
+    @Test
+    public void looksUpBranchInLongCase() {
+        StringBuilder sql = new StringBuilder("SELECT CASE");
+        for (int i = 0; i < 200; i++) {
+            sql.append(" WHEN fare_id = ").append(i).append(" THEN ").append(i * 10);
+        }
+        sql.append(" ELSE -1 END FROM fares");
+        StatementNode statement = getParseTree(sql.toString());
+
+        assertThat(statement, hasInQuery(caseHasBranch(column("fare_id").equalToLiteral(199), literal(1990))));
+        assertThat(statement, hasInQuery(caseHasBranch(column("fare_id").equalToLiteral(0), literal(0))));
+        assertThat(statement, not(hasInQuery(caseHasBranch(column("fare_id").equalToLiteral(200), literal(2000)))));
+        assertThat(statement, not(hasInQuery(caseHasBranch(column("fare_id").equalToLiteral(5), literal(60)))));
+    }
+}
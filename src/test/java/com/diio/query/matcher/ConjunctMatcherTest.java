@@ -0,0 +1,50 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.ConjunctMatcher.whereHasConjunct;
+import static com.diio.query.matcher.LiteralMatcher.literal;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static org.hamcrest.CoreMatchers.any;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.StatementNode;
+
+public class ConjunctMatcherTest {
+
+    @Test
+    public void matchesTopLevelConjuncts() {
+        StatementNode statement = getParseTree("SELECT * FROM orders WHERE tenant_id = 7 AND (status = 1 OR urgent = 1) "
+                + "AND qty != 0");
+
+        assertThat(statement, hasInQuery(whereHasConjunct(column("tenant_id"), "=", any(QueryTreeNode.class))));
+        assertThat(statement, hasInQuery(whereHasConjunct(column("tenant_id"), "=", literal(7))));
+        assertThat(statement, hasInQuery(whereHasConjunct(column("qty"), "<>", literal(0))));
+        assertThat(statement, not(hasInQuery(whereHasConjunct(column("status"), "=", literal(1)))));
+        assertThat(statement, not(hasInQuery(whereHasConjunct(column("tenant_id"), "<>", any(QueryTreeNode.class)))));
+    }
+
+    @Test
+    public void normalizesOperandOrderAndNegation() {
+        StatementNode statement = getParseTree("SELECT * FROM orders WHERE 5 < qty AND NOT (price <= 10) "
+                + "AND NOT (deleted_at IS NULL OR region <> 'EU')");
+
+        assertThat(statement, hasInQuery(whereHasConjunct(column("qty"), ">", literal(5))));
+        assertThat(statement, hasInQuery(whereHasConjunct(column("price"), ">", literal(10))));
+        assertThat(statement, hasInQuery(whereHasConjunct(column("deleted_at"), "is not null")));
+        assertThat(statement, hasInQuery(whereHasConjunct(column("region"), "=", literal("EU"))));
+        assertThat(statement, not(hasInQuery(whereHasConjunct(column("qty"), "<", any(QueryTreeNode.class)))));
+    }
+
+    @Test
+    public void indexesColumnComparisonsBothWays() {
+        StatementNode statement = getParseTree("SELECT * FROM orders o, customers c WHERE o.customer_id = c.id");
+
+        assertThat(statement, hasInQuery(whereHasConjunct(column("c.id"), "=", column("o.customer_id"))));
+        assertThat(statement, hasInQuery(whereHasConjunct(column("customer_id"), "=", column("id"))));
+    }
+}
@@ -0,0 +1,73 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.CostMatcher.estimatedJoinFanoutAtMost;
+import static com.diio.query.matcher.CostMatcher.estimatedRowsAtMost;
+import static com.diio.query.matcher.CostMatcher.estimatedRowsScannedAtMost;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.StatementNode;
+
+public class CostMatcherTest {
+
+    private static Statistics statistics() throws IOException {
+        Properties properties = new Properties();
+        properties.load(new StringReader("orders.rows = 1000000\n"
+                + "orders.customer_id.distinct = 50000\n"
+                + "orders.status.distinct = 4\n"
+                + "customers.rows = 50000\n"
+                + "customers.id.distinct = 50000\n"
+                + "orders.index.by_customer = customer_id, created_at\n"));
+        return Statistics.fromProperties(properties);
+    }
+
+    @Test
+    public void estimatesSelectivityOfPredicates() throws StandardException, IOException {
+        Statistics statistics = statistics();
+
+        assertEquals(250000, statistics.estimate(getParseTree("SELECT * FROM orders WHERE status = 1")).getEstimatedRows(), 0.01);
+        assertEquals(20, statistics.estimate(getParseTree("SELECT * FROM orders WHERE customer_id = 7"))
+                .getEstimatedRows(), 0.01);
+        assertEquals(40, statistics.estimate(getParseTree("SELECT * FROM orders WHERE customer_id IN (7, 8)"))
+                .getEstimatedRows(), 0.01);
+        assertEquals(250000, statistics.estimate(getParseTree("SELECT * FROM orders WHERE created_at BETWEEN 1 AND 2"))
+                .getEstimatedRows(), 0.01);
+        assertEquals(1, statistics.estimate(getParseTree("SELECT * FROM orders WHERE customer_id = 7 FETCH FIRST 1 ROWS ONLY"))
+                .getEstimatedRows(), 0.01);
+        assertEquals("by_customer", statistics.getIndexes("orders").get(0).getName());
+    }
+
+    @Test
+    public void estimatesJoins() throws StandardException, IOException {
+        Statistics statistics = statistics();
+        StatementNode joined = getParseTree("SELECT * FROM orders o JOIN customers c ON o.customer_id = c.id WHERE c.id = 5");
+        StatementNode cartesian = getParseTree("SELECT * FROM orders o, customers c WHERE o.status = 1");
+
+        assertEquals(20, statistics.estimate(joined).getEstimatedRows(), 0.01);
+        assertEquals(20, statistics.estimate(joined).getJoinFanout(), 0.01);
+        assertThat(joined, estimatedJoinFanoutAtMost(20, statistics));
+        assertThat(cartesian, not(estimatedJoinFanoutAtMost(20, statistics)));
+        assertThat(cartesian, not(estimatedRowsAtMost(1000000, statistics)));
+    }
+
+    @Test
+    public void countsRowsScannedBySubqueries() throws StandardException, IOException {
+        Statistics statistics = statistics();
+        StatementNode statement = getParseTree("SELECT * FROM customers c WHERE EXISTS "
+                + "(SELECT 1 FROM orders o WHERE o.customer_id = c.id)");
+
+        assertEquals(1050000, statistics.estimate(statement).getRowsScanned(), 0.01);
+        assertThat(statement, estimatedRowsScannedAtMost(1050000, statistics));
+        assertThat(statement, not(estimatedRowsScannedAtMost(100000, statistics)));
+        assertThat(getParseTree("SELECT * FROM unknown_table"), estimatedRowsScannedAtMost(Statistics.DEFAULT_ROWS, statistics));
+    }
+}
@@ -0,0 +1,57 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.EquivalenceMatcher.equivalentTo;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.UnderNodeMatcher.result;
+import static com.diio.query.matcher.WhereClauseMatcher.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.StatementNode;
+
+public class EquivalenceMatcherTest {
+
+    @Test
+    public void matchesReorderedAndRegroupedExpression() {
+        StatementNode statement = getParseTree("SELECT x FROM t WHERE T.B IN (1, 2) AND 3.0 = T.A");
+
+        assertThat(statement, hasInQuery(where(equivalentTo("t.a = 3 AND t.b IN (1,2)"))));
+    }
+
+    @Test
+    public void matchesMirroredComparisonAndAssociativeRegrouping() {
+        StatementNode statement = getParseTree("SELECT a + (b + c) FROM t WHERE 10 > price AND (x = 1 AND y = 2)");
+
+        assertThat(statement, hasInQuery(where(equivalentTo("(y = 2 AND price < 10) AND x = 1"))));
+        assertThat(statement, hasInQuery(result(equivalentTo("(c + a) + b"))));
+    }
+
+    @Test
+    public void doesNotMatchDifferentExpression() {
+        StatementNode statement = getParseTree("SELECT x FROM t WHERE t.a = 3 AND t.b IN (1, 2)");
+
+        assertThat(statement, not(hasInQuery(equivalentTo("t.a = 4 AND t.b IN (1,2)"))));
+        assertThat(statement, not(hasInQuery(equivalentTo("t.a = 3 AND t.b IN (2,1)"))));
+        assertThat(statement, not(hasInQuery(equivalentTo("t.a < 3"))));
+        assertThat(statement, not(hasInQuery(equivalentTo("a = 3"))));
+    }
+
+    @Test
+    public void distinguishesNonCommutativeOperands() {
+        StatementNode statement = getParseTree("SELECT a - b, c / d FROM t WHERE a < b");
+
+        assertThat(statement, hasInQuery(equivalentTo("a - b")));
+        assertThat(statement, not(hasInQuery(equivalentTo("b - a"))));
+        assertThat(statement, not(hasInQuery(equivalentTo("d / c"))));
+        assertThat(statement, hasInQuery(equivalentTo("b > a")));
+        assertThat(statement, not(hasInQuery(equivalentTo("b < a"))));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnparseableExpression() {
+        equivalentTo("a = = 3");
+    }
+}
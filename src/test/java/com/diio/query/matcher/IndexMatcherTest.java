@@ -0,0 +1,82 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.IndexMatcher.hasFullScanOf;
+import static com.diio.query.matcher.IndexMatcher.usesIndexPrefix;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.StatementNode;
+
+public class IndexMatcherTest {
+
+    private static final IndexCatalog CATALOG = catalog();
+
+    private static IndexCatalog catalog() {
+        Properties properties = new Properties();
+        try {
+            properties.load(new StringReader("bookings.index.ix_booking_date = booking_date\n"
+                    + "bookings.index.ix_customer_date = customer_id, booking_date\n"
+                    + "bookings.index.ix_customer_status = customer_id, status\n"
+                    + "bookings.rows = 1000000\n"
+                    + "customers.index.pk_customers = id\n"));
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+        return IndexCatalog.fromProperties(properties);
+    }
+
+
+    @Test
+    public void findsUsableIndexPrefixes() {
+        StatementNode statement = getParseTree("SELECT * FROM bookings b WHERE b.customer_id IN (1, 2) "
+                + "AND booking_date > '2024-01-01'");
+
+        assertEquals(new HashSet<String>(Arrays.asList("ix_booking_date", "ix_customer_date", "ix_customer_status")),
+                CATALOG.analyze(statement).getAccesses().get(0).getUsableIndexes());
+        assertThat(statement, usesIndexPrefix("bookings", "ix_customer_date", CATALOG));
+        assertThat(statement, usesIndexPrefix("b", "ix_booking_date", CATALOG));
+        assertThat(statement, not(hasFullScanOf("bookings", CATALOG)));
+    }
+
+    @Test
+    public void requiresLeadingKeyColumns() {
+        StatementNode statement = getParseTree("SELECT * FROM bookings WHERE status = 1 AND customer_id <> 3");
+
+        assertThat(statement, not(usesIndexPrefix("bookings", "ix_customer_status", CATALOG)));
+        assertThat(statement, hasFullScanOf("bookings", CATALOG));
+        assertThat(getParseTree("SELECT * FROM bookings WHERE UPPER(status) = 'X' OR booking_date > '2024-01-01'"),
+                hasFullScanOf("bookings", CATALOG));
+    }
+
+    @Test
+    public void usesJoinPredicatesOfTheBlock() {
+        StatementNode statement = getParseTree("SELECT * FROM customers c JOIN bookings b ON b.customer_id = c.id "
+                + "WHERE c.id = 7 AND EXISTS (SELECT 1 FROM bookings x WHERE x.status = 2)");
+
+        assertThat(statement, usesIndexPrefix("customers", "pk_customers", CATALOG));
+        assertThat(statement, usesIndexPrefix("b", "ix_customer_status", CATALOG));
+        assertThat(statement, hasFullScanOf("x", CATALOG));
+        assertThat(statement, not(hasFullScanOf("b", CATALOG)));
+    }
+
+    @Test
+    public void sharesIndexesWithStatistics() {
+        Properties properties = new Properties();
+        properties.setProperty("bookings.rows", "10");
+        properties.setProperty("bookings.index.ix_booking_date", "booking_date");
+        Statistics statistics = Statistics.fromProperties(properties);
+
+        assertThat(getParseTree("SELECT * FROM bookings WHERE booking_date BETWEEN 1 AND 2"),
+                usesIndexPrefix("bookings", "ix_booking_date", statistics.getIndexCatalog()));
+    }
+}
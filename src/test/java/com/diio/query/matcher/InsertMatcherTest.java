@@ -0,0 +1,123 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.CaptureMatcher.capture;
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.ColumnMatcher.columns;
+import static com.diio.query.matcher.InsertMatcher.insertInto;
+import static com.diio.query.matcher.LiteralMatcher.literal;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.ValuesMatcher.everyRow;
+import static com.diio.query.matcher.ValuesMatcher.everyRowInParallel;
+import static com.diio.query.matcher.ValuesMatcher.valuesRowCount;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.anyOf;
+import static org.hamcrest.Matchers.equalTo;
+import static org.hamcrest.Matchers.greaterThan;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import org.hamcrest.Description;
+import org.hamcrest.Matcher;
+import org.hamcrest.TypeSafeMatcher;
+import org.junit.Test;
+
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.StatementNode;
+
+public class InsertMatcherTest {
+
+    private static StatementNode bulkInsert(int rows) {
+        StringBuilder sql = new StringBuilder("INSERT INTO sales.bookings (id, currency) VALUES ");
+        for (int i = 0; i < rows; i++) {
+            sql.append(i > 0 ? ", " : "").append("(").append(i).append(", 'EUR')");
+        }
+        return getParseTree(sql.toString());
+    }
+
+    @Test
+    public void matchesTargetAndColumns() {
+        StatementNode statement = bulkInsert(3);
+
+        assertThat(statement, insertInto("bookings"));
+        assertThat(statement, insertInto("sales.bookings", columns("id", "currency")));
+        assertThat(statement, insertInto("bookings", column("id"), column("currency")));
+        assertThat(statement, not(insertInto("bookings", columns("currency", "id"))));
+        assertThat(statement, not(insertInto("bookings", columns("id"))));
+        assertThat(statement, not(insertInto("archive.bookings")));
+        assertThat(getParseTree("SELECT * FROM bookings"), not(insertInto("bookings")));
+    }
+
+    @Test
+    public void countsRows() {
+        assertThat(bulkInsert(3), valuesRowCount(equalTo(3)));
+        assertThat(getParseTree("INSERT INTO bookings VALUES (1, 'EUR')"), valuesRowCount(equalTo(1)));
+        assertThat(getParseTree("INSERT INTO bookings SELECT * FROM staged"), not(valuesRowCount(greaterThan(-1))));
+    }
+
+    @Test
+    public void matchesEveryRow() {
+        StatementNode statement = getParseTree("INSERT INTO bookings (id, currency) VALUES (1, 'EUR'), (2, 'USD')");
+
+        assertThat(statement, not(everyRow(hasInQuery(literal("EUR")))));
+        assertThat(statement, everyRow(anyOf(hasInQuery(literal("EUR")), hasInQuery(literal("USD")))));
+    }
+
+    @Test
+    public void matchesLargeInsertsInParallel() {
+        StatementNode statement = bulkInsert(ValuesMatcher.PARALLEL_THRESHOLD * 2);
+
+        assertThat(statement, valuesRowCount(equalTo(ValuesMatcher.PARALLEL_THRESHOLD * 2)));
+        assertThat(statement, everyRowInParallel(hasInQuery(literal("EUR"))));
+        assertThat(statement, not(everyRowInParallel(hasInQuery(literal("USD")))));
+    }
+
+    @Test
+    public void matchesParallelRowsOutsideTheEnclosingEvaluation() {
+        StatementNode statement = bulkInsert(ValuesMatcher.PARALLEL_THRESHOLD * 2);
+        Set<Object> seen = Collections.newSetFromMap(new ConcurrentHashMap<Object, Boolean>());
+        EvaluationContext enclosing = EvaluationContext.open(0);
+        Matcher<QueryTreeNode> recording = new TypeSafeMatcher<QueryTreeNode>() {
+            @Override
+            protected boolean matchesSafely(QueryTreeNode row) {
+                EvaluationContext current = EvaluationContext.current();
+                seen.add(current == null ? "none" : current == enclosing ? "enclosing" : "own");
+                seen.add(EvaluationContext.statement());
+                return true;
+            }
+
+            @Override
+            public void describeTo(Description description) {
+            }
+        };
+
+        try {
+            assertThat(statement, everyRowInParallel(recording));
+        } finally {
+            EvaluationContext.close();
+        }
+        assertEquals(new HashSet<Object>(Arrays.asList("own", statement)), seen);
+    }
+
+    @Test
+    public void chargesParallelRowsToTheBudget() {
+        StatementNode statement = bulkInsert(ValuesMatcher.PARALLEL_THRESHOLD * 2);
+
+        MatchResult result = hasInQuery(everyRowInParallel(hasInQuery(literal("EUR")))).withBudget(Budget.nodeVisits(1000))
+                .evaluate(statement);
+        assertEquals(Outcome.UNDECIDED, result.getOutcome());
+        assertEquals(Outcome.MATCHED, hasInQuery(everyRowInParallel(hasInQuery(literal("EUR"))))
+                .withBudget(Budget.nodeVisits(1000000)).evaluate(statement).getOutcome());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsCapturesInRowsMatchedInParallel() {
+        everyRowInParallel(hasInQuery(capture("currency", literal("EUR"))));
+    }
+}
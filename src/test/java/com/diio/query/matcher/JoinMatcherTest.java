@@ -0,0 +1,76 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.JoinMatcher.joinPathExists;
+import static com.diio.query.matcher.JoinMatcher.joinType;
+import static com.diio.query.matcher.JoinMatcher.joins;
+import static com.diio.query.matcher.JoinMatcher.on;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.StatementNode;
+import com.diio.query.matcher.JoinMatcher.JoinType;
+
+public class JoinMatcherTest {
+
+    @Test
+    public void buildsEdgesFromOnClausesAndWhereEqualities() {
+        StatementNode statement = getParseTree("SELECT o.id FROM orders o JOIN customers c ON o.customer_id = c.id "
+                + "AND c.active = 1, regions r WHERE c.region_id = r.id AND o.total > 10");
+
+        assertEquals(2, JoinGraph.of(statement).getEdges().size());
+        assertThat(statement, joins("orders", "customers"));
+        assertThat(statement, joins("c", "o", on(column("customer_id"))));
+        assertThat(statement, not(joins("orders", "customers", on(column("region_id")))));
+        assertThat(statement, joins("customers", "regions"));
+        assertThat(statement, not(joins("orders", "regions")));
+    }
+
+    @Test
+    public void matchesJoinTypes() {
+        StatementNode statement = getParseTree("SELECT * FROM orders o LEFT JOIN refunds r ON r.order_id = o.id "
+                + "INNER JOIN customers c ON c.id = o.customer_id");
+
+        assertThat(statement, joins("orders", "refunds", JoinType.LEFT));
+        assertThat(statement, not(joins("orders", "customers", JoinType.LEFT)));
+        assertThat(statement, hasInQuery(joinType(JoinType.LEFT)));
+        assertThat(statement, hasInQuery(joinType(JoinType.INNER)));
+        assertThat(statement, not(hasInQuery(joinType(JoinType.FULL))));
+    }
+
+    @Test
+    public void chainsJoinsWithoutPredicates() {
+        for (String sql : new String[] { "SELECT * FROM a JOIN b USING (id) JOIN c USING (id)", "SELECT * FROM a CROSS JOIN b CROSS JOIN c",
+                "SELECT * FROM a NATURAL JOIN b NATURAL JOIN c" }) {
+            StatementNode statement = getParseTree(sql);
+
+            assertEquals(sql, 2, JoinGraph.of(statement).getEdges().size());
+            assertThat(sql, statement, joins("a", "b"));
+            assertThat(sql, statement, joins("b", "c"));
+            assertThat(sql, statement, joinPathExists("a", "c"));
+        }
+        assertThat(getParseTree("SELECT * FROM a CROSS JOIN (b CROSS JOIN c)"), joins("a", "b"));
+    }
+
+    @Test
+    public void findsJoinPaths() {
+        StatementNode statement = getParseTree("SELECT * FROM orders o, customers c, regions r, audit a "
+                + "WHERE o.customer_id = c.id AND c.region_id = r.id");
+
+        assertThat(statement, joinPathExists("orders", "regions"));
+        assertThat(statement, not(joinPathExists("orders", "audit")));
+    }
+
+    @Test
+    public void joinsCorrelatedSubqueriesToOuterTables() {
+        StatementNode statement = getParseTree("SELECT * FROM orders o "
+                + "WHERE EXISTS (SELECT 1 FROM lines l WHERE l.order_id = o.id)");
+
+        assertThat(statement, joins("lines", "orders"));
+    }
+}
@@ -0,0 +1,138 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.CaseStatementMatcher.cased;
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.ListOfNodeMatcher.ordered;
+import static com.diio.query.matcher.LiteralMatcher.literal;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.UpperLowerFunctionMatcher.upper;
+import static com.diio.query.matcher.WhereClauseMatcher.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import org.hamcrest.Matchers;
+import org.hamcrest.core.IsAnything;
+import org.junit.Test;
+
+import com.akiban.sql.parser.AndNode;
+import com.akiban.sql.parser.BinaryArithmeticOperatorNode;
+import com.akiban.sql.parser.BinaryRelationalOperatorNode;
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.CursorNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.StatementNode;
+import com.akiban.sql.parser.StaticMethodCallNode;
+import com.akiban.sql.parser.TernaryOperatorNode;
+
+public class MatchResultTest {
+
+    @Test
+    public void reportsMatchWithWitnessPath() {
+        StatementNode statement = getParseTree("SELECT a FROM t WHERE b = 1");
+
+        MatchResult result = hasInQuery(column("b")).evaluate(statement);
+
+        assertTrue(result.matches());
+        assertThat(result.getMatch(), instanceOf(ColumnReference.class));
+        List<QueryTreeNode> path = result.getPath();
+        assertThat(path.get(0), sameInstance((QueryTreeNode) statement));
+        assertThat(path.get(0), instanceOf(CursorNode.class));
+        assertThat(path.get(path.size() - 2), instanceOf(BinaryRelationalOperatorNode.class));
+        assertThat(path.get(path.size() - 1), sameInstance(result.getMatch()));
+    }
+
+    @Test
+    public void reportsMatchBelowRoot() {
+        StatementNode statement = getParseTree("SELECT a FROM t WHERE b = 1");
+
+        MatchResult result = hasInQuery(where(column("b").equalToLiteral(1))).evaluate(statement);
+
+        assertTrue(result.matches());
+        assertEquals(2, result.getPath().size());
+        assertThat(result.getMatch(), instanceOf(SelectNode.class));
+    }
+
+    @Test
+    public void reportsNoMatch() {
+        MatchResult result = hasInQuery(column("c")).evaluate(getParseTree("SELECT a FROM t WHERE b = 1"));
+
+        assertFalse(result.matches());
+        assertNull(result.getMatch());
+        assertTrue(result.getPath().isEmpty());
+    }
+
+    @Test
+    public void slicesMatchFromSource() {
+        String sql = "SELECT a\n  FROM t\n WHERE b   =   1 AND  c IN (1,2) AND (CASE WHEN x.d = 'F' THEN 2 END) > 1 AND UPPER(e) LIKE 'X%'";
+        StatementNode statement = getParseTree(sql);
+
+        MatchResult result = hasInQuery(column("b").equalToLiteral(1)).evaluate(statement);
+
+        assertEquals("b   =   1", result.sourceText(sql));
+        assertEquals(sql.indexOf("b   ="), result.getBeginOffset(sql));
+        assertEquals("c IN (1,2)", hasInQuery(column("c").in(ordered(literal(1), literal(2)))).evaluate(statement).sourceText(sql));
+        assertEquals("CASE WHEN x.d = 'F' THEN 2 END", hasInQuery(cased(column("x.d").equalToLiteral("F"), literal(2), new IsAnything<QueryTreeNode>()))
+                .evaluate(statement).sourceText(sql));
+        assertEquals("UPPER(e)", hasInQuery(upper(column("e"))).evaluate(statement).sourceText(sql));
+    }
+
+    @Test
+    public void slicesParenthesizedArithmetic() {
+        String sql = "SELECT x FROM t WHERE 1 = b AND (a + 1) * 2 > 3 AND c = -5 AND 2 * (d + 1) < (e * (f + 1)) * 2";
+
+        assertEquals(Arrays.asList("1 = b", "(a + 1) * 2 > 3", "c = -5", "2 * (d + 1) < (e * (f + 1)) * 2"),
+                slices(sql, BinaryRelationalOperatorNode.class));
+        assertEquals(Arrays.asList("(a + 1) * 2", "a + 1", "2 * (d + 1)", "d + 1", "(e * (f + 1)) * 2", "e * (f + 1)", "f + 1"),
+                slices(sql, BinaryArithmeticOperatorNode.class));
+        assertEquals("1 = b AND (a + 1) * 2 > 3", slices(sql, AndNode.class).get(2));
+    }
+
+    @Test
+    public void slicesFunctionCalls() {
+        String sql = "SELECT f(a,'z'), f(1, a), SUBSTR(name, 1, 3) FROM t";
+
+        assertEquals(Arrays.asList("f(a,'z')", "f(1, a)"), slices(sql, StaticMethodCallNode.class));
+        assertEquals(Arrays.asList("SUBSTR(name, 1, 3)"), slices(sql, TernaryOperatorNode.class));
+    }
+
+    @Test
+    public void slicesWholeStatements() {
+        String sql = "SELECT DISTINCT a FROM t WHERE b IN (SELECT c FROM u WHERE c > 2)";
+
+        assertEquals(Arrays.asList(sql), slices(sql, CursorNode.class));
+        assertEquals(Arrays.asList(sql, "SELECT c FROM u WHERE c > 2"), slices(sql, SelectNode.class));
+    }
+
+    @Test
+    public void findsEveryMatch() {
+        String sql = "SELECT a, b FROM t WHERE a = 1 OR (b > 2 AND t.a < 5)";
+
+        List<MatchResult> results = hasInQuery(column("a")).findAll(getParseTree(sql));
+
+        assertEquals(3, results.size());
+        assertEquals("a", results.get(0).sourceText(sql));
+        assertEquals("a", results.get(1).sourceText(sql));
+        assertEquals("t.a", results.get(2).sourceText(sql));
+        assertTrue(results.get(0).getBeginOffset(sql) < results.get(1).getBeginOffset(sql));
+        assertTrue(hasInQuery(column("z")).findAll(getParseTree(sql)).isEmpty());
+    }
+
+    private static List<String> slices(String sql, Class<? extends QueryTreeNode> type) {
+        List<String> slices = new ArrayList<String>();
+        for (MatchResult result : hasInQuery(Matchers.<QueryTreeNode> instanceOf(type)).findAll(getParseTree(sql))) {
+            slices.add(result.sourceText(sql));
+        }
+        return slices;
+    }
+}
@@ -0,0 +1,78 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.WhereClauseMatcher.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.endsWith;
+import static org.hamcrest.Matchers.lessThan;
+import static org.hamcrest.Matchers.sameInstance;
+import static org.junit.Assert.assertEquals;
+
+import org.hamcrest.StringDescription;
+import org.junit.After;
+import org.junit.Test;
+
+import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.StatementNode;
+import com.akiban.sql.unparser.NodeToString;
+
+public class MismatchRenderingTest {
+
+    @After
+    public void restoreDefault() {
+        QueryTreeNodeMatcher.setMaxMismatchLength(4096);
+    }
+
+    @Test
+    public void capsMismatchDescription() {
+        StringBuilder sql = new StringBuilder("SELECT a FROM t WHERE a = 0");
+        for (int i = 1; i < 200; i++) {
+            sql.append(" OR a = ").append(i);
+        }
+        StatementNode statement = getParseTree(sql.toString());
+        QueryTreeNodeMatcher.setMaxMismatchLength(500);
+
+        StringDescription mismatch = new StringDescription();
+        hasInQuery(column("missing")).describeMismatch(statement, mismatch);
+
+        assertThat(mismatch.toString(), containsString("(truncated)"));
+        assertThat(mismatch.toString().length(), lessThan(1100));
+    }
+
+    @Test
+    public void capsUnparsedSql() throws StandardException {
+        StringBuilder sql = new StringBuilder("SELECT a, (SELECT MAX(b) FROM u) FROM t WHERE a = 0");
+        for (int i = 1; i < 300; i++) {
+            sql.append(" OR a = ").append(i);
+        }
+        StatementNode statement = getParseTree(sql.toString());
+        String full = new NodeToString().toString(statement);
+
+        for (int cap : new int[] { 10, 50, 500, 2000 }) {
+            QueryTreeNodeMatcher.setMaxMismatchLength(cap);
+
+            assertEquals(full.substring(0, cap) + "... (truncated)", MismatchRendering.sql(statement));
+        }
+        QueryTreeNodeMatcher.setMaxMismatchLength(full.length());
+        assertEquals(full, MismatchRendering.sql(statement));
+    }
+
+    @Test
+    public void reusesRenderingOfSameNode() {
+        StatementNode statement = getParseTree("SELECT a FROM t WHERE b = 1");
+
+        assertThat(MismatchRendering.tree(statement), sameInstance(MismatchRendering.tree(statement)));
+        assertThat(MismatchRendering.sql(statement), endsWith("b = 1"));
+    }
+
+    @Test
+    public void cachesDescriptionOfMatcher() {
+        QueryHasMatcher matcher = hasInQuery(where(column("b").equalToLiteral(1)));
+
+        assertThat(matcher.toString(), sameInstance(matcher.toString()));
+        assertThat(StringDescription.toString(matcher), containsString("Query that has "));
+    }
+}
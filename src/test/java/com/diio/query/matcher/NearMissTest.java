@@ -0,0 +1,78 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.BetweenMatcher.between;
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.FunctionMatcher.function;
+import static com.diio.query.matcher.LiteralMatcher.literal;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.hamcrest.Matchers.instanceOf;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import java.util.List;
+
+import org.hamcrest.StringDescription;
+import org.junit.Test;
+
+import com.akiban.sql.parser.BetweenOperatorNode;
+import com.akiban.sql.parser.BinaryRelationalOperatorNode;
+import com.akiban.sql.parser.StatementNode;
+
+public class NearMissTest {
+
+    @Test
+    public void reportsClosestCandidatesFirst() {
+        StatementNode statement = getParseTree("SELECT a FROM t WHERE fare_class = 'J' AND miles = 100 "
+                + "AND price BETWEEN 1 AND 9");
+
+        MatchResult result = hasInQuery(column("fare_class").equalToLiteral("F")).withNearMisses(2).evaluate(statement);
+
+        assertFalse(result.matches());
+        List<NearMiss> nearMisses = result.getNearMisses();
+        assertEquals(2, nearMisses.size());
+        assertThat(nearMisses.get(0).getNode(), instanceOf(BinaryRelationalOperatorNode.class));
+        assertEquals(2, nearMisses.get(0).getMatchedParts());
+        assertEquals(3, nearMisses.get(0).getTotalParts());
+        assertThat(nearMisses.get(0).toString(), containsString("'J'"));
+        assertEquals(1, nearMisses.get(1).getMatchedParts());
+    }
+
+    @Test
+    public void scoresBetweenAndFunctions() {
+        StatementNode statement = getParseTree("SELECT ROUND(price, 2) FROM t WHERE price BETWEEN 1 AND 9");
+
+        MatchResult between = hasInQuery(between(column("price"), literal(1), literal(10))).withNearMisses(1).evaluate(statement);
+        assertThat(between.getNearMisses().get(0).getNode(), instanceOf(BetweenOperatorNode.class));
+        assertEquals(2, between.getNearMisses().get(0).getMatchedParts());
+
+        MatchResult round = hasInQuery(function("ROUND", column("price"), literal(0))).withNearMisses(1).evaluate(statement);
+        assertEquals(2, round.getNearMisses().get(0).getMatchedParts());
+        assertEquals(3, round.getNearMisses().get(0).getTotalParts());
+    }
+
+    @Test
+    public void describesNearMissesWithoutAnotherPass() {
+        StatementNode statement = getParseTree("SELECT a FROM t WHERE miles = 100");
+        QueryHasMatcher matcher = hasInQuery(column("miles").equalToLiteral(200)).withNearMisses(3);
+
+        assertFalse(matcher.matches(statement));
+        StringDescription mismatch = new StringDescription();
+        matcher.describeMismatch(statement, mismatch);
+
+        assertThat(mismatch.toString(), containsString("closest were"));
+        assertThat(mismatch.toString(), containsString("miles = 100 matched 2 of 3 parts"));
+    }
+
+    @Test
+    public void doesNotScoreByDefault() {
+        StatementNode statement = getParseTree("SELECT a FROM t WHERE miles = 100");
+
+        MatchResult result = hasInQuery(column("miles").equalToLiteral(200)).evaluate(statement);
+
+        assertTrue(result.getNearMisses().isEmpty());
+    }
+}
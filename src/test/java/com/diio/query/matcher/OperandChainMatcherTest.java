@@ -0,0 +1,116 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.BinaryOperatorNodeMatcher.plus;
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.LiteralMatcher.literal;
+import static com.diio.query.matcher.OperandChainMatcher.allConjuncts;
+import static com.diio.query.matcher.OperandChainMatcher.allDisjuncts;
+import static com.diio.query.matcher.OperandChainMatcher.allOperands;
+import static com.diio.query.matcher.OperandChainMatcher.anyDisjunct;
+import static com.diio.query.matcher.OperandChainMatcher.containsConjuncts;
+import static com.diio.query.matcher.OperandChainMatcher.containsOperands;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.WhereClauseMatcher.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+
+import org.hamcrest.core.IsAnything;
+import org.junit.Test;
+
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.StatementNode;
+
+public class OperandChainMatcherTest {
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void allConjunctsIgnoresGroupingAndOrder() {
+        StatementNode leftDeep = getParseTree("SELECT x FROM t WHERE (a = 1 AND b = 2) AND c = 3");
+        StatementNode rightDeep = getParseTree("SELECT x FROM t WHERE c = 3 AND (b = 2 AND a = 1)");
+
+        for (StatementNode statement : new StatementNode[] {leftDeep, rightDeep}) {
+            assertThat(statement, hasInQuery(where(allConjuncts(
+                    column("a").equalToLiteral(1),
+                    column("b").equalToLiteral(2),
+                    column("c").equalToLiteral(3)))));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void allConjunctsRequiresOneOperandPerMatcher() {
+        StatementNode statement = getParseTree("SELECT x FROM t WHERE a = 1 AND a = 2");
+
+        assertThat(statement, not(hasInQuery(where(allConjuncts(column("a").equalToLiteral(1), column("a").equalToLiteral(1))))));
+        assertThat(statement, not(hasInQuery(where(allConjuncts(column("a").equalToLiteral(1), column("b").equalToLiteral(2))))));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void assignmentBacktracksOverOverlappingMatchers() {
+        StatementNode statement = getParseTree("SELECT x FROM t WHERE a = 1 AND b = 2");
+
+        // the first matcher accepts both operands; it must give up a = 1 to the second matcher
+        assertThat(statement, hasInQuery(where(allConjuncts(
+                new IsAnything<QueryTreeNode>(),
+                column("a").equalToLiteral(1)))));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void containsConjunctsOnLongChain() {
+        StringBuilder sql = new StringBuilder("SELECT x FROM t WHERE c0 = 0");
+        for (int i = 1; i < 60; i++) {
+            sql.append(" AND c").append(i).append(" = ").append(i);
+        }
+        StatementNode statement = getParseTree(sql.toString());
+
+        assertThat(statement, hasInQuery(where(containsConjuncts(column("c42").equalToLiteral(42), column("c7").equalToLiteral(7)))));
+        assertThat(statement, not(hasInQuery(where(containsConjuncts(column("c42").equalToLiteral(7))))));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void disjunctsAndArithmetic() {
+        StatementNode statement = getParseTree("SELECT a + (b + 1) FROM t WHERE (a = 1 OR b = 2) OR c = 3");
+
+        assertThat(statement, hasInQuery(where(anyDisjunct(column("b").equalToLiteral(2)))));
+        assertThat(statement, hasInQuery(where(allDisjuncts(column("c").equalToLiteral(3), column("b").equalToLiteral(2),
+                column("a").equalToLiteral(1)))));
+        assertThat(statement, hasInQuery(allOperands("+", literal(1), column("a"), column("b"))));
+        assertThat(statement, not(hasInQuery(plus(plus(column("a"), column("b")), literal(1)))));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void matchesOnlyWholeChains() {
+        StatementNode leftDeep = getParseTree("SELECT x FROM t WHERE a = 1 AND b = 2 AND c = 3");
+        StatementNode reordered = getParseTree("SELECT x FROM t WHERE c = 3 AND a = 1 AND b = 2");
+
+        for (StatementNode statement : new StatementNode[] {leftDeep, reordered}) {
+            assertThat(statement, not(hasInQuery(allConjuncts(column("a").equalToLiteral(1), column("b").equalToLiteral(2)))));
+            assertThat(statement, hasInQuery(allConjuncts(
+                    column("a").equalToLiteral(1),
+                    column("b").equalToLiteral(2),
+                    column("c").equalToLiteral(3))));
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void matchesConcatenationsInOrder() {
+        StatementNode statement = getParseTree("SELECT first_name || ' ' || last_name FROM t");
+
+        assertThat(statement, hasInQuery(allOperands("||", column("first_name"), literal(" "), column("last_name"))));
+        assertThat(statement, not(hasInQuery(allOperands("||", column("last_name"), literal(" "), column("first_name")))));
+        assertThat(statement, hasInQuery(containsOperands("||", column("first_name"), column("last_name"))));
+        assertThat(statement, not(hasInQuery(containsOperands("||", column("last_name"), column("first_name")))));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsOperatorsWhoseChainsDependOnGrouping() {
+        allOperands("-", column("c"), column("b"), column("a"));
+    }
+}
@@ -0,0 +1,62 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.PathMatcher.path;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+
+import java.util.List;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.StatementNode;
+
+public class PathMatcherTest {
+
+    @Test
+    public void matchesColumnInWhereOfAliasedSubquery() {
+        StatementNode statement = getParseTree("SELECT t.a FROM (SELECT a, x FROM inner_table WHERE x = 1) t, u WHERE u.y = 2");
+
+        assertThat(statement, path("//FromSubquery[@alias='t']//Select/where//ColumnReference[@name='x']"));
+        assertThat(statement, path("//FromSubquery[@alias='T']//where//ColumnReference[@name='X']"));
+        assertThat(statement, not(path("//FromSubquery[@alias='u']//where//ColumnReference[@name='x']")));
+        assertThat(statement, not(path("//FromSubquery[@alias='t']//where//ColumnReference[@name='y']")));
+        assertThat(statement, not(path("//FromSubquery[@alias='t']/where")));
+    }
+
+    @Test
+    public void distinguishesChildFromDescendant() {
+        StatementNode statement = getParseTree("SELECT a FROM t WHERE a = 1 AND b > 2 ORDER BY c");
+
+        assertThat(statement, path("/Cursor/Select/where/BinaryRelationalOperator[@operator='>']"));
+        assertThat(statement, not(path("/Select")));
+        assertThat(statement, not(path("/Cursor/where")));
+        assertThat(statement, path("/Cursor/orderBy//ColumnReference[@name='c']"));
+        assertThat(statement, path("//BinaryOperator[@operator='=']/*[@value='1']"));
+        assertThat(statement, not(path("//BinaryOperator[@operator='=']/*[@value='2']")));
+    }
+
+    @Test
+    public void selectsEveryMatchingNode() {
+        StatementNode statement = getParseTree("SELECT a, b FROM t WHERE a = 1 OR (b = 2 AND c = 3) GROUP BY a, b");
+
+        List<QueryTreeNode> selected = path("//where//ColumnReference").select(statement);
+
+        assertEquals(3, selected.size());
+        assertEquals("c", ((ColumnReference) selected.get(2)).getColumnName());
+        assertEquals(2, path("//groupBy//ColumnReference").select(statement).size());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsUnknownAttribute() {
+        path("//ColumnReference[@colour='red']");
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void rejectsRelativePath() {
+        path("ColumnReference");
+    }
+}
@@ -0,0 +1,117 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.QueryBlockMatcher.inAnySubquery;
+import static com.diio.query.matcher.QueryBlockMatcher.inOuterBlock;
+import static com.diio.query.matcher.QueryBlockMatcher.inThisBlock;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.RangeMatcher.lowerBoundAtLeast;
+import static com.diio.query.matcher.RangeMatcher.rangeOf;
+import static com.diio.query.matcher.TableMatcher.table;
+import static com.diio.query.matcher.WhereClauseMatcher.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.AllOf.allOf;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.CursorNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.StatementNode;
+
+public class QueryBlockMatcherTest {
+
+    @Test
+    public void partitionsStatementIntoBlocks() {
+        StatementNode statement = getParseTree("SELECT a FROM (SELECT b FROM t) d WHERE a IN (SELECT c FROM u WHERE c = a)");
+
+        assertEquals(3, QueryBlocks.of(statement).size());
+    }
+
+    @Test
+    public void inThisBlockStaysOutOfSubqueries() {
+        StatementNode statement = getParseTree("SELECT a FROM t WHERE a IN (SELECT x FROM u WHERE tenant_id = 7)");
+
+        assertThat(statement, hasInQuery(where(column("tenant_id"))));
+        assertThat(statement, not(inThisBlock(where(column("tenant_id")))));
+        assertThat(statement, inThisBlock(where(column("a"))));
+        assertThat(statement, inThisBlock(where(inAnySubquery(column("tenant_id")))));
+        assertThat(statement, not(inThisBlock(where(inAnySubquery(column("a"))))));
+    }
+
+    @Test
+    public void inThisBlockStaysOutOfDerivedTables() {
+        StatementNode statement = getParseTree("SELECT a FROM (SELECT a, tenant_id FROM t WHERE tenant_id = 7) d");
+
+        assertThat(statement, not(inThisBlock(table("t"))));
+        assertThat(statement, inAnySubquery(table("t")));
+        assertThat(statement, hasInQuery(inThisBlock(table("t"))));
+    }
+
+    @Test
+    public void inOuterBlockLooksAtTheEnclosingQuery() {
+        StatementNode statement = getParseTree("SELECT a FROM orders "
+                + "WHERE EXISTS (SELECT 1 FROM lines WHERE lines.order_id = orders.id)");
+
+        assertThat(statement, hasInQuery(allOf(table("lines"), inOuterBlock(table("orders")))));
+        assertThat(statement, not(hasInQuery(allOf(table("orders"), inOuterBlock(table("lines"))))));
+    }
+
+    @Test
+    public void cachedAnalysesLetStatementsGo() throws Exception {
+        Statistics statistics = Statistics.fromProperties(new Properties());
+        IndexCatalog catalog = IndexCatalog.fromProperties(new Properties());
+        List<WeakReference<QueryTreeNode>> nodes = analyze(20, statistics, catalog);
+
+        for (int i = 0; i < 100 && !allCleared(nodes); i++) {
+            System.gc();
+            Thread.sleep(10);
+            // the caches only drop the entries of collected statements as they are written to
+            analyze(1, statistics, catalog);
+        }
+        for (WeakReference<QueryTreeNode> node : nodes) {
+            assertNull(node.get());
+        }
+    }
+
+    /**
+     * Runs the cached analyses over statements, returning weak references to each statement and its SELECT.
+     */
+    private static List<WeakReference<QueryTreeNode>> analyze(int count, Statistics statistics, IndexCatalog catalog)
+            {
+        List<WeakReference<QueryTreeNode>> nodes = new ArrayList<WeakReference<QueryTreeNode>>();
+        for (int i = 0; i < count; i++) {
+            StatementNode statement = getParseTree("SELECT o.id FROM orders o JOIN customers c ON o.customer_id = c.id "
+                    + "WHERE o.id > " + i + " AND o.total > (SELECT MAX(total) FROM refunds r WHERE r.order_id = o.id)");
+            assertThat(statement, hasInQuery(inThisBlock(where(column("o.total")))));
+            QueryBlocks.of(statement);
+            SymbolTable.of(statement);
+            JoinGraph.of(statement);
+            RangeIndex.of((SelectNode) ((CursorNode) statement).getResultSetNode());
+            assertThat(statement, hasInQuery(rangeOf(column("o.id"), lowerBoundAtLeast(0))));
+            statistics.estimate(statement);
+            catalog.analyze(statement);
+            nodes.add(new WeakReference<QueryTreeNode>(statement));
+            nodes.add(new WeakReference<QueryTreeNode>(((CursorNode) statement).getResultSetNode()));
+        }
+        return nodes;
+    }
+
+    private static boolean allCleared(List<WeakReference<QueryTreeNode>> nodes) {
+        for (WeakReference<QueryTreeNode> node : nodes) {
+            if (node.get() != null) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -36,6 +36,7 @@ import static org.junit.Assert.assertNotNull;
 import static org.junit.Assert.assertNull;
 import static org.junit.Assert.assertTrue;
 
+import org.hamcrest.Description;
 import org.hamcrest.Matcher;
 import org.hamcrest.StringDescription;
 import org.hamcrest.core.IsAnything;
@@ -43,6 +44,7 @@ import org.junit.Before;
 import org.junit.Test;
 
 import com.akiban.sql.StandardException;
+import com.akiban.sql.parser.ColumnReference;
 import com.akiban.sql.parser.QueryTreeNode;
 import com.akiban.sql.parser.SQLParser;
 import com.akiban.sql.parser.StatementNode;
@@ -64,7 +66,10 @@ public class QueryMatcherTest {
     private StatementNode inTwoItemListStatement;
     private StatementNode orWithMultipleElementsStatement;
 
-    private static StatementNode getParseTree(String rawSQL) {
+    /**
+     * Parses the statement, for this and the other matcher tests.
+     */
+    static StatementNode getParseTree(String rawSQL) {
         SQLParser sqlParser = new SQLParser();
         try {
             return sqlParser.parseStatement(rawSQL);
@@ -323,6 +328,33 @@ public class QueryMatcherTest {
                 column("nested_table.col2"))));
     }    
     
+    @Test
+    public void subsequenceRetriesNodeAfterFailedPrefix() {
+        final StatementNode repeatedColumns = getParseTree("SELECT a, a, b FROM MyTable");
+        assertThat(repeatedColumns, hasInQuery(result(subsequence(columns("a", "b")))));
+        assertThat(repeatedColumns, hasInQuery(result(subsequence(columns("a", "a", "b")))));
+    }
+
+    @Test
+    public void subsequenceFindsOverlappingPrefix() {
+        final StatementNode overlapping = getParseTree("SELECT a, b, a, b, c FROM MyTable");
+        assertThat(overlapping, hasInQuery(result(subsequence(columns("a", "b", "c")))));
+        assertThat(overlapping, hasInQuery(result(subsequence(columns("a", "b", "a", "b", "c")))));
+        assertFalse(hasInQuery(result(subsequence(columns("a", "b", "b")))).matches(overlapping));
+    }
+
+    @Test
+    public void subsequenceOnLongResultList() {
+        final StringBuilder sql = new StringBuilder("SELECT ");
+        for (int i = 0; i < 500; i++) {
+            sql.append("c, ");
+        }
+        sql.append("c, d FROM MyTable");
+        final StatementNode longList = getParseTree(sql.toString());
+        assertThat(longList, hasInQuery(result(subsequence(columns("c", "c", "c", "d")))));
+        assertFalse(hasInQuery(result(subsequence(columns("c", "d", "c")))).matches(longList));
+    }
+
     @Test
     public void subsequenceSuccessWithColumnsSyntacticSugar() {
         assertThat(subqueryTopStatement, hasInQuery(subsequence(
@@ -530,4 +562,23 @@ public class QueryMatcherTest {
         ColumnMatcher colMatcher = column("my_col");
         assertThat(sumStatement, hasInQuery(result(sum(colMatcher))));
     }
+
+    @Test
+    public void subclassesOverridingMatchesSafelyStillMatch() {
+        StatementNode statement = getParseTree("SELECT my_col FROM MyTable");
+        Matcher<QueryTreeNode> anyColumnReference = new QueryTreeNodeMatcher() {
+            @Override
+            protected boolean matchesSafely(QueryTreeNode item) {
+                return item instanceof ColumnReference;
+            }
+
+            @Override
+            public void describeTo(Description description) {
+                description.appendText("a column reference");
+            }
+        };
+
+        assertThat(statement, hasInQuery(anyColumnReference));
+        assertThat(statement, not(anyColumnReference));
+    }
 }
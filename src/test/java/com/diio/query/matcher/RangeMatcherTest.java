@@ -0,0 +1,73 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.RangeMatcher.bounded;
+import static com.diio.query.matcher.RangeMatcher.lowerBoundAtLeast;
+import static com.diio.query.matcher.RangeMatcher.rangeOf;
+import static com.diio.query.matcher.RangeMatcher.spanAtMost;
+import static com.diio.query.matcher.RangeMatcher.upperBoundAtMost;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertSame;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.CursorNode;
+import com.akiban.sql.parser.SelectNode;
+import com.akiban.sql.parser.StatementNode;
+
+public class RangeMatcherTest {
+
+    @Test
+    public void boundsDateRanges() {
+        StatementNode month = getParseTree("SELECT * FROM bookings WHERE booking_date >= DATE '2024-01-01' "
+                + "AND booking_date < DATE '2024-02-01' AND status = 1");
+        StatementNode quarter = getParseTree("SELECT * FROM bookings WHERE booking_date BETWEEN '2024-01-01' AND '2024-03-31'");
+        StatementNode open = getParseTree("SELECT * FROM bookings WHERE booking_date > '2024-01-01'");
+
+        assertThat(month, hasInQuery(rangeOf(column("booking_date"), spanAtMost(Duration.ofDays(31)))));
+        assertThat(quarter, not(hasInQuery(rangeOf(column("booking_date"), spanAtMost(Duration.ofDays(31))))));
+        assertThat(open, not(hasInQuery(rangeOf(column("booking_date"), bounded()))));
+        assertThat(getParseTree("SELECT * FROM bookings"), not(hasInQuery(rangeOf(column("booking_date"), bounded()))));
+    }
+
+    @Test
+    public void intersectsNumericRangesAcrossConjuncts() {
+        StatementNode statement = getParseTree("SELECT * FROM fares WHERE fare_id > 10 AND NOT (fare_id > 100) AND fare_id >= 20 "
+                + "AND class_id IN (3, 1, 2)");
+
+        Interval fareIds = RangeIndex.of((SelectNode) ((CursorNode) statement).getResultSetNode())
+                .lookUp("fare_id").get(0).getInterval();
+        assertEquals(new BigDecimal("20"), fareIds.getLower());
+        assertEquals(new BigDecimal("100"), fareIds.getUpper());
+        assertThat(statement, hasInQuery(rangeOf(column("fare_id"), lowerBoundAtLeast(0))));
+        assertThat(statement, hasInQuery(rangeOf(column("fare_id"), spanAtMost(80))));
+        assertThat(statement, hasInQuery(rangeOf(column("class_id"), upperBoundAtMost(3))));
+        assertThat(statement, not(hasInQuery(rangeOf(column("class_id"), upperBoundAtMost(2)))));
+    }
+
+    @Test
+    public void keepsColumnsOfDifferentTablesApart() {
+        StatementNode statement = getParseTree("SELECT * FROM fares f, refunds r WHERE f.amount >= 0 AND r.amount < 0");
+
+        assertThat(statement, hasInQuery(rangeOf(column("fares.amount"), lowerBoundAtLeast(0))));
+        assertThat(statement, not(hasInQuery(rangeOf(column("refunds.amount"), lowerBoundAtLeast(0)))));
+        assertThat(statement, not(hasInQuery(rangeOf(column("amount"), lowerBoundAtLeast(0)))));
+    }
+
+    @Test
+    public void keepsOneIndexPerSymbolTable() {
+        StatementNode statement = getParseTree("SELECT * FROM fares WHERE fare_id > 10");
+        SelectNode select = (SelectNode) ((CursorNode) statement).getResultSetNode();
+        RangeIndex alone = RangeIndex.of(select);
+
+        assertThat(statement, hasInQuery(rangeOf(column("fares.fare_id"), lowerBoundAtLeast(10))));
+        assertSame(alone, RangeIndex.of(select));
+    }
+}
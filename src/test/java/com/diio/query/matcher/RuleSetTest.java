@@ -0,0 +1,128 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.BinaryOperatorNodeMatcher.equalTo;
+import static com.diio.query.matcher.BinaryOperatorNodeMatcher.greaterThan;
+import static com.diio.query.matcher.CaptureMatcher.capture;
+import static com.diio.query.matcher.CaptureMatcher.sameAs;
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.LiteralMatcher.literal;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.WhereClauseMatcher.where;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.hamcrest.Description;
+import org.junit.Test;
+
+import com.akiban.sql.parser.ColumnReference;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.StatementNode;
+
+public class RuleSetTest {
+
+    /**
+     * Matches a column by name and counts how often it is evaluated.
+     */
+    private static class CountingColumn extends QueryTreeNodeMatcher {
+        private final String name;
+        private final List<QueryTreeNode> evaluatedAt = new ArrayList<QueryTreeNode>();
+
+        CountingColumn(String name) {
+            this.name = name;
+        }
+
+        @Override
+        protected Object[] valueComponents() {
+            return new Object[] { name };
+        }
+
+        @Override
+        public void describeTo(Description description) {
+            description.appendText("counted column " + name);
+        }
+
+        @Override
+        protected boolean matchesNode(QueryTreeNode item) {
+            evaluatedAt.add(item);
+            return item instanceof ColumnReference && name.equalsIgnoreCase(((ColumnReference) item).getColumnName());
+        }
+    }
+
+    @Test
+    public void matchersBuiltFromEqualValuesAreEqual() {
+        assertEquals(column("tenant_id").equalToLiteral(7), column("tenant_id").equalToLiteral(7));
+        assertEquals(column("tenant_id").equalToLiteral(7).hashCode(), column("tenant_id").equalToLiteral(7).hashCode());
+        assertEquals(where(column("status").equalToLiteral("A")), where(column("status").equalToLiteral("A")));
+        assertEquals(hasInQuery(column("a")), hasInQuery(column("a")));
+
+        assertNotEquals(column("tenant_id").equalToLiteral(7), column("tenant_id").equalToLiteral(8));
+        assertNotEquals(column("tenant_id").equalToLiteral(7), column("tenant_id").greaterThan(7));
+        assertNotEquals(hasInQuery(column("a")), hasInQuery(column("a")).withNearMisses(3));
+    }
+
+    @Test
+    public void evaluatesEqualRulesOnce() {
+        RuleSet rules = RuleSet.builder()
+                .rule("tenant", where(column("tenant_id").equalToLiteral(7)))
+                .rule("tenant again", where(column("tenant_id").equalToLiteral(7)))
+                .rule("other tenant", where(column("tenant_id").equalToLiteral(8)))
+                .build();
+
+        assertEquals(2, rules.getDistinctRuleCount());
+        Map<String, Boolean> results = rules.evaluate(getParseTree("SELECT a FROM t WHERE tenant_id = 7"));
+        assertTrue(results.get("tenant"));
+        assertTrue(results.get("tenant again"));
+        assertFalse(results.get("other tenant"));
+    }
+
+    @Test
+    public void sharesSubPatternsAcrossRules() {
+        CountingColumn first = new CountingColumn("tenant_id");
+        CountingColumn second = new CountingColumn("tenant_id");
+        CountingColumn third = new CountingColumn("tenant_id");
+        RuleSet rules = RuleSet.builder()
+                .rule("equal", equalTo(first, literal(7)))
+                .rule("greater", greaterThan(second, literal(7)))
+                .rule("used", third)
+                .build();
+
+        // the counting columns, which "used" is one of, literal(7), and the two relations
+        assertEquals(4, rules.getSharedSubPatternCount());
+        StatementNode statement = getParseTree("SELECT a FROM t WHERE tenant_id = 7 AND b > 7 AND c > 7");
+        Map<String, Boolean> results = rules.evaluate(statement);
+        assertTrue(results.get("equal"));
+        assertFalse(results.get("greater"));
+        assertTrue(results.get("used"));
+
+        List<QueryTreeNode> evaluatedAt = new ArrayList<QueryTreeNode>(first.evaluatedAt);
+        evaluatedAt.addAll(second.evaluatedAt);
+        evaluatedAt.addAll(third.evaluatedAt);
+        Set<QueryTreeNode> distinct = Collections.newSetFromMap(new IdentityHashMap<QueryTreeNode, Boolean>());
+        distinct.addAll(evaluatedAt);
+        assertFalse(evaluatedAt.isEmpty());
+        assertEquals(distinct.size(), evaluatedAt.size());
+    }
+
+    @Test
+    public void doesNotShareCaptures() {
+        RuleSet rules = RuleSet.builder()
+                .rule("self comparison", equalTo(capture("c", column("a")), sameAs("c")))
+                .rule("plain", equalTo(column("a"), column("a")))
+                .build();
+
+        Map<String, Boolean> results = rules.evaluate(getParseTree("SELECT x FROM t WHERE a = a"));
+        assertTrue(results.get("self comparison"));
+        assertTrue(results.get("plain"));
+        assertFalse(rules.evaluate(getParseTree("SELECT x FROM t WHERE a = b")).get("self comparison"));
+    }
+}
@@ -0,0 +1,61 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.SargabilityMatcher.noNonSargablePredicates;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.StatementNode;
+import com.diio.query.matcher.SargabilityAnalyzer.Finding;
+import com.diio.query.matcher.SargabilityAnalyzer.Reason;
+
+public class SargabilityMatcherTest {
+
+    private static List<Reason> reasons(String sql) {
+        final List<Reason> reasons = new ArrayList<Reason>();
+        for (Finding finding : SargabilityAnalyzer.analyze(getParseTree(sql))) {
+            reasons.add(finding.getReason());
+        }
+        return reasons;
+    }
+
+    @Test
+    public void findsWrappedColumns() {
+        List<Reason> reasons = reasons("SELECT * FROM t WHERE UPPER(code) = 'X' AND TRIM(name) = 'a' "
+                + "AND CAST(created AS DATE) = DATE '2024-01-01' AND (qty + 1 = 5 OR ABS(delta) > 3) AND -qty < 0");
+
+        assertEquals(6, reasons.size());
+        assertTrue(reasons.contains(Reason.CASE_CONVERSION));
+        assertTrue(reasons.contains(Reason.TRIM));
+        assertTrue(reasons.contains(Reason.CAST));
+        assertTrue(reasons.contains(Reason.ARITHMETIC));
+        assertTrue(reasons.contains(Reason.FUNCTION));
+    }
+
+    @Test
+    public void findsLeadingWildcardsInOnClausesAndSubqueries() {
+        StatementNode statement = getParseTree("SELECT * FROM a JOIN b ON b.id = a.id AND b.name LIKE '%x' "
+                + "WHERE a.id IN (SELECT id FROM c WHERE LOWER(c.tag) = 'y')");
+
+        List<Finding> findings = SargabilityAnalyzer.analyze(statement);
+        assertEquals(2, findings.size());
+        assertEquals(Reason.LEADING_WILDCARD, findings.get(0).getReason());
+        assertEquals("name", findings.get(0).getColumn().getColumnName());
+        assertEquals(Reason.CASE_CONVERSION, findings.get(1).getReason());
+        assertThat(statement, not(noNonSargablePredicates()));
+    }
+
+    @Test
+    public void acceptsSargablePredicates() {
+        assertThat(getParseTree("SELECT UPPER(code) FROM t WHERE code = UPPER('x') AND name LIKE 'x%' "
+                + "AND created >= CURRENT_DATE - 7 AND qty BETWEEN 1 AND 5 AND id IN (1, 2) AND note IS NULL"),
+                noNonSargablePredicates());
+    }
+}
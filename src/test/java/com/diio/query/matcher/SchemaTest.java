@@ -0,0 +1,63 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.Properties;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.StatementNode;
+
+public class SchemaTest {
+
+    private static final Schema SCHEMA = Schema.fromDdl("CREATE TABLE orders (id INT, customer_id INT, status INT);"
+            + "CREATE TABLE customers (id INT, name VARCHAR(40));"
+            + "CREATE TABLE archive.orders (id INT, archived_at TIMESTAMP)");
+
+
+    @Test
+    public void loadsDdl() {
+        assertTrue(SCHEMA.hasColumn("orders", "STATUS"));
+        assertTrue(SCHEMA.hasColumn("archive.orders", "archived_at"));
+        assertEquals(new HashSet<String>(Arrays.asList("orders", "customers", "archive.orders")), SCHEMA.tablesWithColumn("id"));
+    }
+
+    @Test
+    public void loadsProperties() throws IOException {
+        Properties properties = new Properties();
+        properties.load(new StringReader("orders = id, status\nsales.refunds = id, order_id\n"));
+        Schema schema = Schema.fromProperties(properties);
+
+        assertTrue(schema.hasColumn("refunds", "order_id"));
+        assertEquals(new HashSet<String>(Arrays.asList("sales.refunds")), schema.tablesWithColumn("order_id"));
+    }
+
+    @Test
+    public void attributesUnqualifiedColumnsToTheTableHavingThem() {
+        StatementNode statement = getParseTree("SELECT name FROM orders o JOIN customers c ON o.customer_id = c.id "
+                + "WHERE status = 1");
+
+        assertThat(statement, not(hasInQuery(column("orders.status"))));
+        assertThat(statement, hasInQuery(column("orders.status").using(SCHEMA)));
+        assertThat(statement, hasInQuery(column("customers.name").using(SCHEMA)));
+        assertThat(statement, not(hasInQuery(column("customers.status").using(SCHEMA))));
+    }
+
+    @Test
+    public void leavesAmbiguousAndUndescribedColumnsUnresolved() {
+        assertThat(getParseTree("SELECT id FROM orders, customers"), not(hasInQuery(column("orders.id").using(SCHEMA))));
+        assertThat(getParseTree("SELECT status FROM orders, audit"), not(hasInQuery(column("orders.status").using(SCHEMA))));
+        assertThat(getParseTree("SELECT archived_at FROM archive.orders, customers"),
+                hasInQuery(column("archive.orders.archived_at").using(SCHEMA)));
+    }
+}
@@ -0,0 +1,55 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.ShapeMatcher.hasDistinct;
+import static com.diio.query.matcher.ShapeMatcher.hasFetchFirst;
+import static com.diio.query.matcher.ShapeMatcher.hasGroupBy;
+import static com.diio.query.matcher.ShapeMatcher.hasOrderBy;
+import static com.diio.query.matcher.ShapeMatcher.joinCountAtMost;
+import static com.diio.query.matcher.ShapeMatcher.resultColumnCountAtMost;
+import static com.diio.query.matcher.ShapeMatcher.shape;
+import static com.diio.query.matcher.ShapeMatcher.subqueryDepthAtMost;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.StatementNode;
+
+public class ShapeMatcherTest {
+
+    @Test
+    public void summarizesStatementInOneWalk() {
+        StatementNode statement = getParseTree("SELECT DISTINCT a, COUNT(*) FROM t JOIN u ON t.id = u.id, v "
+                + "WHERE a IN (SELECT b FROM w WHERE b > (SELECT MAX(c) FROM x)) GROUP BY a ORDER BY a FETCH FIRST 10 ROWS ONLY");
+        QueryShape shape = QueryShape.of(statement);
+
+        assertTrue(shape.hasGroupBy());
+        assertFalse(shape.hasHaving());
+        assertTrue(shape.hasOrderBy());
+        assertTrue(shape.hasDistinct());
+        assertTrue(shape.hasFetchFirst());
+        assertEquals(5, shape.getTableCount());
+        assertEquals(2, shape.getJoinCount());
+        assertEquals(2, shape.getResultColumnCount());
+        assertEquals(2, shape.getSubqueryCount());
+        assertEquals(2, shape.getSubqueryDepth());
+        assertSame(shape, QueryShape.of(statement));
+    }
+
+    @Test
+    public void matchesShapeConditions() {
+        StatementNode statement = getParseTree("SELECT a, b FROM t JOIN u ON t.id = u.id GROUP BY a, b");
+
+        assertThat(statement, shape(hasGroupBy(), joinCountAtMost(1), resultColumnCountAtMost(2), subqueryDepthAtMost(0)));
+        assertThat(statement, not(shape(hasGroupBy(), hasOrderBy())));
+        assertThat(statement, not(shape(hasDistinct())));
+        assertThat(statement, not(shape(hasFetchFirst())));
+        assertThat(statement, not(shape(joinCountAtMost(0))));
+        assertEquals(shape(hasGroupBy(), joinCountAtMost(4)), shape(hasGroupBy(), joinCountAtMost(4)));
+    }
+}
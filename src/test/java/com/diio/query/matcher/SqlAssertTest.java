@@ -0,0 +1,51 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.SqlAssert.assertThatSql;
+import static com.diio.query.matcher.TableMatcher.table;
+import static com.diio.query.matcher.UnderNodeMatcher.groupBy;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.Matchers.containsString;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import java.util.List;
+
+import org.junit.Test;
+
+public class SqlAssertTest {
+
+    private static final String SQL = "SELECT fare_class, SUM(miles) FROM fares WHERE status = 'A' AND miles > 100 GROUP BY fare_class";
+
+    @Test
+    public void passesWhenAllExpectationsHold() {
+        assertThatSql(SQL)
+                .has(column("fare_class"))
+                .has(groupBy(column("fare_class")))
+                .where(column("status").equalToLiteral("A"))
+                .doesNotHave(table("audit"))
+                .doesNotHave(column("price"))
+                .verify();
+    }
+
+    @Test
+    public void reportsEveryFailingExpectation() {
+        SqlAssert assertion = assertThatSql(SQL)
+                .has(column("fare_class"))
+                .has(column("price"))
+                .where(column("status").equalToLiteral("B"))
+                .doesNotHave(column("miles").greaterThan(100));
+
+        List<String> failures = assertion.failures();
+        assertEquals(3, failures.size());
+        assertThat(failures.get(0), containsString("price"));
+        assertThat(failures.get(2), containsString("but found miles > 100"));
+
+        try {
+            assertion.verify();
+            fail();
+        } catch (AssertionError e) {
+            assertThat(e.getMessage(), containsString("3 of 4 expectations failed"));
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.diio.query.matcher;
+
+import static com.diio.query.matcher.ColumnMatcher.column;
+import static com.diio.query.matcher.QueryHasMatcher.hasInQuery;
+import static com.diio.query.matcher.QueryMatcherTest.getParseTree;
+import static com.diio.query.matcher.TableMatcher.table;
+import static com.diio.query.matcher.WhereClauseMatcher.where;
+import static org.hamcrest.MatcherAssert.assertThat;
+import static org.hamcrest.core.IsNot.not;
+
+import org.junit.Test;
+
+import com.akiban.sql.parser.CursorNode;
+import com.akiban.sql.parser.QueryTreeNode;
+import com.akiban.sql.parser.StatementNode;
+
+public class SymbolTableTest {
+
+    @Test
+    public void resolvesAliasesToBaseTables() {
+        StatementNode statement = getParseTree("SELECT o.id FROM orders o JOIN customers c ON o.customer_id = c.id "
+                + "WHERE c.active = 1");
+
+        assertThat(statement, hasInQuery(column("orders.customer_id")));
+        assertThat(statement, hasInQuery(column("o.customer_id")));
+        assertThat(statement, hasInQuery(column("customers.active")));
+        assertThat(statement, not(hasInQuery(column("orders.active"))));
+        assertThat(statement, hasInQuery(table("orders")));
+        assertThat(statement, hasInQuery(table("o")));
+    }
+
+    @Test
+    public void resolvesSchemas() {
+        StatementNode statement = getParseTree("SELECT o.id FROM sales.orders o WHERE sales.o.total > 10");
+
+        assertThat(statement, hasInQuery(column("sales.orders.id")));
+        assertThat(statement, hasInQuery(column("sales.o.total")));
+        assertThat(statement, not(hasInQuery(column("archive.orders.id"))));
+        assertThat(statement, hasInQuery(table("sales.orders")));
+        assertThat(statement, not(hasInQuery(table("archive.orders"))));
+    }
+
+    @Test
+    public void resolvesUnqualifiedColumnsOfTheOnlyTableInScope() {
+        assertThat(getParseTree("SELECT id FROM orders o"), hasInQuery(column("orders.id")));
+        assertThat(getParseTree("SELECT id FROM orders o, customers c"), not(hasInQuery(column("orders.id"))));
+    }
+
+    @Test
+    public void resolvesCorrelatedColumnsToTheEnclosingBlock() {
+        StatementNode statement = getParseTree("SELECT * FROM orders o WHERE EXISTS "
+                + "(SELECT 1 FROM lines l WHERE l.order_id = o.id AND total > 0)");
+
+        assertThat(statement, hasInQuery(column("orders.id")));
+        assertThat(statement, hasInQuery(column("lines.order_id")));
+        assertThat(statement, hasInQuery(column("lines.total")));
+        assertThat(statement, not(hasInQuery(column("orders.total"))));
+    }
+
+    @Test
+    public void resolvesAgainstTheNodeTheOutermostMatcherIsAppliedTo() {
+        QueryTreeNode select = ((CursorNode) getParseTree("SELECT o.id FROM orders o WHERE o.id = 1")).getResultSetNode();
+
+        assertThat(select, where(column("orders.id")));
+        assertThat(select, hasInQuery(where(column("orders.id"))));
+        assertThat(select, not(where(column("customers.id"))));
+        assertThat(((CursorNode) getParseTree("SELECT o.id FROM orders o "
+                + "WHERE EXISTS (SELECT 1 FROM lines l WHERE l.order_id = o.id)"))
+                .getResultSetNode(), where(hasInQuery(where(column("orders.id")))));
+    }
+}